@@ -0,0 +1,514 @@
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade over the DBProject operations.
+ *
+ * Every method queues the operation and returns at once with an Operation,
+ * a Future of its result, so a caller can issue many queries (say the
+ * availability of 20 hotels) and collect the results as they complete, by
+ * get() or by a callback. The operations run on dbproject.async.threads
+ * worker threads (default: the maximum size of the connection pool, so a
+ * worker never waits for a connection) with up to dbproject.async.queueSize
+ * operations queued; operations beyond that fail with a
+ * RejectedExecutionException instead of piling up.
+ *
+ * cancel() on an Operation stops it even while its statement runs on the
+ * server (see ConnectionPool.cancel). An Operation that has not completed
+ * within its timeout (dbproject.async.timeoutMs, 0 for none, or within()) is
+ * cancelled the same way and its get() fails with a TimeoutException.
+ *
+ * The results are disconnected: counts, ids and CachedRowSets that stay
+ * readable after the connection went back to the pool.
+ */
+public class AsyncDBProject {
+
+	/**
+	 * Receives the outcome of an operation, on the thread that completed it.
+	 */
+	public interface Callback<T> {
+		void succeeded(T result);
+
+		void failed(Throwable error);
+	}// end Callback
+
+	/**
+	 * A queued or running operation.
+	 */
+	public class Operation<T> extends FutureTask<T> {
+		private final String name;
+		private final List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>();
+		private volatile boolean timedOut = false;
+		private volatile boolean running = false;
+		// the caller's session, so that it reads back its own writes
+		private final ReplicaRouter.Session session = ReplicaRouter.currentSession();
+
+		Operation(String name, Callable<T> body) {
+			super(body);
+			this.name = name;
+		}
+
+		public void run() {
+			ConnectionPool.setOwner(this);
+			Metrics.setOperation(name);
+			ReplicaRouter.setSession(session);
+			running = true;
+			try {
+				super.run();
+			} finally {
+				running = false;
+				ReplicaRouter.setSession(null);
+				Metrics.setOperation(null);
+				ConnectionPool.setOwner(null);
+			}
+		}
+
+		/**
+		 * Cancels the operation, stopping the statement it is running. The
+		 * worker thread is never interrupted, so mayInterruptIfRunning is
+		 * ignored.
+		 */
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!super.cancel(false)) {
+				return false;
+			}
+			if (running) {
+				cancelStatements(this);
+			}
+			return true;
+		}
+
+		/**
+		 * Cancels the operation if it has not completed within the given time
+		 * from now.
+		 *
+		 * @return this operation
+		 */
+		public Operation<T> within(long timeout, TimeUnit unit) {
+			timer.schedule(new Runnable() {
+				public void run() {
+					if (!isDone()) {
+						timedOut = true;
+						cancel(false);
+					}
+				}
+			}, timeout, unit);
+			return this;
+		}
+
+		/**
+		 * Registers a callback. It runs at once if the operation has already
+		 * completed.
+		 *
+		 * @return this operation
+		 */
+		public Operation<T> whenDone(Callback<? super T> callback) {
+			synchronized (callbacks) {
+				if (!isDone()) {
+					callbacks.add(callback);
+					return this;
+				}
+			}
+			deliver(callback);
+			return this;
+		}
+
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		public T get() throws InterruptedException, ExecutionException {
+			try {
+				return super.get();
+			} catch (CancellationException e) {
+				if (timedOut) {
+					throw timeout();
+				}
+				throw e;
+			}
+		}
+
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			try {
+				return super.get(timeout, unit);
+			} catch (CancellationException e) {
+				if (timedOut) {
+					throw timeout();
+				}
+				throw e;
+			}
+		}
+
+		protected void done() {
+			List<Callback<? super T>> pending;
+			synchronized (callbacks) {
+				pending = new ArrayList<Callback<? super T>>(callbacks);
+				callbacks.clear();
+			}
+			for (Callback<? super T> callback : pending) {
+				deliver(callback);
+			}
+		}
+
+		void reject(Throwable error) {
+			setException(error);
+		}
+
+		private ExecutionException timeout() {
+			return new ExecutionException(new TimeoutException(name + " timed out"));
+		}
+
+		private void deliver(Callback<? super T> callback) {
+			T result;
+			try {
+				result = get();
+			} catch (ExecutionException e) {
+				callback.failed(e.getCause());
+				return;
+			} catch (CancellationException e) {
+				callback.failed(e);
+				return;
+			} catch (InterruptedException e) {
+				// done, so get() does not block
+				Thread.currentThread().interrupt();
+				return;
+			}
+			callback.succeeded(result);
+		}
+	}// end Operation
+
+	private final DBProject esql;
+	private final ThreadPoolExecutor workers;
+	private final ScheduledExecutorService timer;
+	private final long defaultTimeoutMillis;
+
+	public AsyncDBProject(DBProject esql) {
+		this(esql, Integer.getInteger("dbproject.async.threads", esql.getPool().getMaxSize()),
+				Integer.getInteger("dbproject.async.queueSize", 1000),
+				Long.getLong("dbproject.async.timeoutMs", 0));
+	}// end AsyncDBProject
+
+	public AsyncDBProject(DBProject esql, int threads, int queueSize, long defaultTimeoutMillis) {
+		this.esql = esql;
+		this.defaultTimeoutMillis = defaultTimeoutMillis;
+		this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), daemonThreads("dbproject-async-"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("dbproject-async-timer-"));
+	}// end AsyncDBProject
+
+	/**
+	 * Stops accepting operations. Queued and running operations complete.
+	 */
+	public void shutdown() {
+		workers.shutdown();
+		timer.shutdown();
+	}// end shutdown
+
+	/**
+	 * Waits for every operation and returns their results in order.
+	 *
+	 * @throws java.util.concurrent.ExecutionException with the failure of the
+	 *                                                 first operation that
+	 *                                                 failed
+	 */
+	public static <T> List<T> getAll(List<Operation<T>> operations) throws InterruptedException,
+			ExecutionException {
+		List<T> results = new ArrayList<T>(operations.size());
+		for (Operation<T> op : operations) {
+			results.add(op.get());
+		}
+		return results;
+	}// end getAll
+
+	/**
+	 * Adds a customer.
+	 *
+	 * @return the new customerID
+	 */
+	public Operation<Long> addCustomer(final String firstName, final String lastName, final String address,
+			final BigDecimal phone, final java.sql.Date dob, final String gender) {
+		return submit("addCustomer", new Callable<Long>() {
+			public Long call() throws Exception {
+				long id = esql.nextId(IdAllocator.CUSTOMER);
+				esql.executeUpdate(DBProject.SQL_ADD_CUSTOMER, id, firstName, lastName, address, phone, dob, gender);
+				esql.getCustomers().add(firstName, lastName, id);
+				return id;
+			}
+		});
+	}// end addCustomer
+
+	/**
+	 * Adds a room.
+	 *
+	 * @return the roomNo
+	 */
+	public Operation<Long> addRoom(final long hotel, final long roomNo, final String type) {
+		return submit("addRoom", new Callable<Long>() {
+			public Long call() throws Exception {
+				esql.executeUpdate(DBProject.SQL_ADD_ROOM, hotel, roomNo, type);
+				esql.getOccupancy().recordRoom(hotel, roomNo);
+				return roomNo;
+			}
+		});
+	}// end addRoom
+
+	/**
+	 * Adds a maintenance company.
+	 *
+	 * @return the new cmpID
+	 */
+	public Operation<Long> addMaintenanceCompany(final String name, final String address, final boolean certified) {
+		return submit("addMaintenanceCompany", new Callable<Long>() {
+			public Long call() throws Exception {
+				long id = esql.nextId(IdAllocator.MAINTENANCE_COMPANY);
+				esql.executeUpdate(DBProject.SQL_ADD_COMPANY, id, name, address, Boolean.valueOf(certified));
+				esql.getLeaderboard().recordCompany(id, name);
+				return id;
+			}
+		});
+	}// end addMaintenanceCompany
+
+	/**
+	 * Adds a repair.
+	 *
+	 * @return the new rID
+	 */
+	public Operation<Long> addRepair(final long hotel, final long roomNo, final long company,
+			final java.sql.Date date, final String description, final String type) {
+		return submit("addRepair", new Callable<Long>() {
+			public Long call() throws Exception {
+				long id = esql.nextId(IdAllocator.REPAIR);
+				DBProject.repair(esql, id, hotel, roomNo, company, date, description, type);
+				return id;
+			}
+		});
+	}// end addRepair
+
+	/**
+	 * Books a room for one night.
+	 *
+	 * @return the new bID, or null when the room is taken that night
+	 */
+	public Operation<Long> bookRoom(final long customer, final long hotel, final long roomNo,
+			final java.sql.Date night, final long people, final BigDecimal price) {
+		return submit("bookRoom", new Callable<Long>() {
+			public Long call() throws Exception {
+				long id = esql.nextId(IdAllocator.BOOKING);
+				return DBProject.book(esql, id, customer, hotel, roomNo, night, people, price) ? Long.valueOf(id)
+						: null;
+			}
+		});
+	}// end bookRoom
+
+	/**
+	 * Assigns a housekeeper to a room.
+	 *
+	 * @return the new assignment id
+	 */
+	public Operation<Long> assignHouseCleaningToRoom(final long staff, final long hotel, final long roomNo) {
+		return submit("assignHouseCleaningToRoom", new Callable<Long>() {
+			public Long call() throws Exception {
+				long id = esql.nextId(IdAllocator.ASSIGNED);
+				esql.executeInsert(DBProject.SQL_ASSIGN_STAFF, id, staff, hotel, roomNo);
+				return id;
+			}
+		});
+	}// end assignHouseCleaningToRoom
+
+	/**
+	 * Files a repair request.
+	 *
+	 * @return the new request id
+	 */
+	public Operation<Long> repairRequest(final long manager, final long repair, final java.sql.Date date,
+			final String description) {
+		return submit("repairRequest", new Callable<Long>() {
+			public Long call() throws Exception {
+				long id = esql.nextId(IdAllocator.REQUEST);
+				esql.executeInsert(DBProject.SQL_REPAIR_REQUEST, id, manager, repair, date, description);
+				return id;
+			}
+		});
+	}// end repairRequest
+
+	/**
+	 * Returns the number of rooms of the hotel that are free on the day.
+	 */
+	public Operation<Long> numberOfAvailableRooms(final long hotel, final java.sql.Date day) {
+		return submit("numberOfAvailableRooms", new Callable<Long>() {
+			public Long call() throws Exception {
+				return DBProject.countAvailableRooms(esql, hotel, day,
+						new java.sql.Date(DBProject.addDays(day, 1).getTime()));
+			}
+		});
+	}// end numberOfAvailableRooms
+
+	/**
+	 * Returns the number of bookings of the hotel.
+	 */
+	public Operation<Long> numberOfBookedRooms(final long hotel) {
+		return submit("numberOfBookedRooms", new Callable<Long>() {
+			public Long call() throws Exception {
+				return DBProject.bookedRooms(esql, hotel);
+			}
+		});
+	}// end numberOfBookedRooms
+
+	/**
+	 * Returns the rooms of the hotel that are free for the whole week starting
+	 * on the day.
+	 */
+	public Operation<long[]> listHotelRoomBookingsForAWeek(final long hotel, final java.sql.Date from) {
+		return submit("listHotelRoomBookingsForAWeek", new Callable<long[]>() {
+			public long[] call() throws Exception {
+				return DBProject.freeRooms(esql, hotel, from, new java.sql.Date(DBProject.addDays(from, 7).getTime()));
+			}
+		});
+	}// end listHotelRoomBookingsForAWeek
+
+	/**
+	 * Returns the k most expensive bookings with a booking date in [from, to].
+	 */
+	public Operation<ResultSet> topKHighestRoomPriceForADateRange(final java.sql.Date from, final java.sql.Date to,
+			final int k) {
+		return submit("topKHighestRoomPriceForADateRange", new Callable<ResultSet>() {
+			public ResultSet call() throws Exception {
+				return DBProject.topKBookings(esql, from, to, k);
+			}
+		});
+	}// end topKHighestRoomPriceForADateRange
+
+	/**
+	 * Returns the k-th highest booking price (0 being the highest) of every
+	 * customer with the name, null for the customers with fewer bookings.
+	 */
+	public Operation<List<BigDecimal>> topKHighestPriceBookingsForACustomer(final String firstName,
+			final String lastName, final int k) {
+		return submit("topKHighestPriceBookingsForACustomer", new Callable<List<BigDecimal>>() {
+			public List<BigDecimal> call() throws Exception {
+				List<BigDecimal> prices = new ArrayList<BigDecimal>();
+				for (long customer : esql.getCustomers().resolve(firstName, lastName)) {
+					prices.add(DBProject.kthPrice(esql, customer, k));
+				}
+				return prices;
+			}
+		});
+	}// end topKHighestPriceBookingsForACustomer
+
+	/**
+	 * Returns what every customer with the name spent at the hotel between
+	 * from and to, null for the customers without bookings.
+	 */
+	public Operation<List<BigDecimal>> totalCostForCustomer(final String firstName, final String lastName,
+			final long hotel, final java.sql.Date from, final java.sql.Date to) {
+		return submit("totalCostForCustomer", new Callable<List<BigDecimal>>() {
+			public List<BigDecimal> call() throws Exception {
+				List<BigDecimal> totals = new ArrayList<BigDecimal>();
+				for (long customer : esql.getCustomers().resolve(firstName, lastName)) {
+					totals.add(DBProject.totalCost(esql, customer, from, to, hotel));
+				}
+				return totals;
+			}
+		});
+	}// end totalCostForCustomer
+
+	/**
+	 * Returns the repairs made by the company.
+	 */
+	public Operation<ResultSet> listRepairsMade(final String company) {
+		return query("listRepairsMade", DBProject.SQL_REPAIRS_MADE, company);
+	}// end listRepairsMade
+
+	/**
+	 * Returns the names of the k companies with the most repairs.
+	 */
+	public Operation<List<String>> topKMaintenanceCompany(final int k) {
+		return submit("topKMaintenanceCompany", new Callable<List<String>>() {
+			public List<String> call() throws Exception {
+				return esql.getLeaderboard().topK(k);
+			}
+		});
+	}// end topKMaintenanceCompany
+
+	/**
+	 * Returns the number of repairs of the room per year.
+	 */
+	public Operation<ResultSet> numberOfRepairsForEachRoomPerYear(long hotel, long roomNo) {
+		return query("numberOfRepairsForEachRoomPerYear", DBProject.SQL_REPAIRS_PER_YEAR, hotel, roomNo);
+	}// end numberOfRepairsForEachRoomPerYear
+
+	/**
+	 * Runs any parameterized query.
+	 */
+	public Operation<ResultSet> query(String name, final String template, final Object... params) {
+		return submit(name, new Callable<ResultSet>() {
+			public ResultSet call() throws Exception {
+				return esql.executeQuery(template, params);
+			}
+		});
+	}// end query
+
+	private <T> Operation<T> submit(String name, Callable<T> body) {
+		Operation<T> op = new Operation<T>(name, body);
+		try {
+			workers.execute(op);
+		} catch (RejectedExecutionException e) {
+			op.reject(e);
+			return op;
+		}
+		if (defaultTimeoutMillis > 0) {
+			op.within(defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		return op;
+	}// end submit
+
+	/**
+	 * Sends the server-side cancel of a running operation from the timer
+	 * thread, so that cancel() does not wait for a connection.
+	 */
+	private void cancelStatements(final Operation<?> op) {
+		try {
+			timer.execute(new Runnable() {
+				public void run() {
+					try {
+						esql.cancel(op);
+					} catch (SQLException e) {
+						System.err.println("Unable to cancel " + op.name + ": " + e.getMessage());
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// shut down; the statement runs to completion
+		}
+	}// end cancelStatements
+
+	private static ThreadFactory daemonThreads(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}// end daemonThreads
+
+}// end AsyncDBProject
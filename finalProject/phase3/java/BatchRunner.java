@@ -0,0 +1,341 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-interactive batch mode of DBProject.
+ *
+ * Reads one operation record per line from a file or standard input and
+ * applies the writes as JDBC batches. The records mirror the prompts of the
+ * interactive menu, e.g.
+ *
+ * <pre>
+ * customer,&lt;fName&gt;,&lt;lName&gt;,&lt;address&gt;,&lt;phNo&gt;,&lt;dob&gt;,&lt;gender&gt;
+ * room,&lt;hotelID&gt;,&lt;roomNo&gt;,&lt;roomType&gt;
+ * company,&lt;name&gt;,&lt;address&gt;,&lt;certified Y/N&gt;
+ * repair,&lt;hotelID&gt;,&lt;roomNo&gt;,&lt;cmpID&gt;,&lt;date&gt;,&lt;description&gt;,&lt;repairType&gt;
+ * book,&lt;cID&gt;,&lt;hotelID&gt;,&lt;roomNo&gt;,&lt;date&gt;,&lt;people&gt;,&lt;price&gt;
+ * assign,&lt;staffID&gt;,&lt;hotelID&gt;,&lt;roomNo&gt;
+ * request,&lt;managerID&gt;,&lt;repairID&gt;,&lt;date&gt;,&lt;description&gt;
+ * </pre>
+ *
+ * Blank lines and lines starting with # are ignored. Every record is validated
+ * with the same rules as the menu. Consecutive records of the same kind are
+ * sent as one JDBC batch of up to dbproject.batch.size statements and the
+ * transaction is committed every dbproject.batch.commitInterval records. If a
+ * batch fails, the uncommitted records are rolled back and replayed one by
+ * one so that only the failing records are reported and skipped. A booking
+ * of a night the room is already booked for is reported as "room taken".
+ */
+public class BatchRunner {
+
+	/**
+	 * One kind of operation record.
+	 */
+	static abstract class RecordType {
+		final String name;
+		final int fields;
+		final String sql;
+
+		RecordType(String name, int fields, String sql) {
+			this.name = name;
+			this.fields = fields;
+			this.sql = sql;
+		}
+
+		/**
+		 * Returns whether the fields pass the validation of the menu operation.
+		 */
+		abstract boolean isValid(String[] f);
+
+		/**
+		 * Returns the statement parameters, allocating the id if the table has
+		 * one.
+		 */
+		abstract Object[] params(DBProject esql, String[] f) throws Exception;
+	}// end RecordType
+
+	static final Map<String, RecordType> TYPES = new HashMap<String, RecordType>();
+
+	static {
+		register(new RecordType("customer", 6, DBProject.SQL_ADD_CUSTOMER) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidString(f[0]) && DBProject.isValidString(f[1])
+						&& DBProject.isValidString(f[2]) && DBProject.isValidInt(f[3]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { esql.nextId(IdAllocator.CUSTOMER), f[0], f[1], f[2], new BigDecimal(f[3].trim()),
+						DBProject.parseDate(f[4]), f[5] };
+			}
+		});
+		register(new RecordType("room", 3, DBProject.SQL_ADD_ROOM) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidInt(f[0]) && DBProject.isValidInt(f[1]) && DBProject.isValidString(f[2]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { DBProject.parseId(f[0]), DBProject.parseId(f[1]), f[2] };
+			}
+		});
+		register(new RecordType("company", 3, DBProject.SQL_ADD_COMPANY) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidString(f[0]) && DBProject.isValidString(f[1]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { esql.nextId(IdAllocator.MAINTENANCE_COMPANY), f[0], f[1],
+						Boolean.valueOf("Y".equalsIgnoreCase(f[2].trim())) };
+			}
+		});
+		register(new RecordType("repair", 6, DBProject.SQL_ADD_REPAIR) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidInt(f[0]) && DBProject.isValidInt(f[1]) && DBProject.isValidInt(f[2])
+						&& DBProject.isValidString(f[4]) && DBProject.isValidString(f[5]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { esql.nextId(IdAllocator.REPAIR), DBProject.parseId(f[0]),
+						DBProject.parseId(f[1]), DBProject.parseId(f[2]), DBProject.parseDate(f[3]), f[4], f[5] };
+			}
+		});
+		register(new RecordType("book", 6, DBProject.SQL_BOOK_ROOM) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidInt(f[0]) && DBProject.isValidInt(f[1]) && DBProject.isValidInt(f[2])
+						&& DBProject.isValidInt(f[4]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { esql.nextId(IdAllocator.BOOKING), DBProject.parseId(f[0]),
+						DBProject.parseId(f[1]), DBProject.parseId(f[2]), DBProject.parseDate(f[3]),
+						DBProject.parseId(f[4]), Long.valueOf(PriceIndex.toCents(new BigDecimal(f[5].trim()))) };
+			}
+		});
+		register(new RecordType("assign", 3, DBProject.SQL_ASSIGN_STAFF) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidInt(f[0]) && DBProject.isValidInt(f[1]) && DBProject.isValidInt(f[2]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { esql.nextId(IdAllocator.ASSIGNED), DBProject.parseId(f[0]),
+						DBProject.parseId(f[1]), DBProject.parseId(f[2]) };
+			}
+		});
+		register(new RecordType("request", 4, DBProject.SQL_REPAIR_REQUEST) {
+			boolean isValid(String[] f) {
+				return DBProject.isValidInt(f[0]) && DBProject.isValidInt(f[1]) && DBProject.isValidString(f[3]);
+			}
+
+			Object[] params(DBProject esql, String[] f) throws Exception {
+				return new Object[] { esql.nextId(IdAllocator.REQUEST), DBProject.parseId(f[0]),
+						DBProject.parseId(f[1]), DBProject.parseDate(f[2]), f[3] };
+			}
+		});
+	}
+
+	private static void register(RecordType type) {
+		TYPES.put(type.name, type);
+	}// end register
+
+	/**
+	 * A validated record waiting to be written.
+	 */
+	static class Record {
+		final int line;
+		final String text;
+		final RecordType type;
+		final Object[] params;
+
+		Record(int line, String text, RecordType type, Object[] params) {
+			this.line = line;
+			this.text = text;
+			this.type = type;
+			this.params = params;
+		}
+	}// end Record
+
+	private final DBProject esql;
+	private final int batchSize;
+	private final int commitInterval;
+
+	private long read = 0;
+	private long written = 0;
+	private long failed = 0;
+
+	public BatchRunner(DBProject esql) {
+		this.esql = esql;
+		this.batchSize = Math.max(1, Integer.getInteger("dbproject.batch.size", 500));
+		this.commitInterval = Math.max(1, Integer.getInteger("dbproject.batch.commitInterval", 5000));
+	}// end BatchRunner
+
+	/**
+	 * Applies every record of the input and reports the failing ones on
+	 * standard error.
+	 *
+	 * @throws java.sql.SQLException when no connection can be obtained
+	 * @throws java.io.IOException   when the input cannot be read
+	 */
+	public void run(BufferedReader in) throws SQLException, IOException {
+		long start = System.nanoTime();
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		try {
+			conn.connection.setAutoCommit(false);
+			List<Record> window = new ArrayList<Record>();
+			String text;
+			int line = 0;
+			while ((text = in.readLine()) != null) {
+				line++;
+				String trimmed = text.trim();
+				if (trimmed.length() == 0 || trimmed.startsWith("#")) {
+					continue;
+				}
+				read++;
+				Record record = parse(line, text);
+				if (record == null) {
+					continue;
+				}
+				window.add(record);
+				if (window.size() >= commitInterval) {
+					flush(conn, window);
+				}
+			} // end while
+			flush(conn, window);
+		} finally {
+			esql.getPool().release(conn);
+			// repairs, companies and bookings were written in batches, not one by one
+			esql.getLeaderboard().invalidate();
+			esql.getPrices().invalidate();
+			esql.getColumns().invalidate();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Batch done: %d records, %d written, %d failed in %.2f s (%.0f records/s)",
+				read, written, failed, seconds, read / Math.max(seconds, 1e-9)));
+	}// end run
+
+	public long getWritten() {
+		return written;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Parses and validates one record, or reports it and returns null.
+	 */
+	private Record parse(int line, String text) {
+		String[] parts = text.split(",", -1);
+		RecordType type = TYPES.get(parts[0].trim().toLowerCase());
+		if (type == null) {
+			fail(line, text, "unknown record type '" + parts[0].trim() + "'");
+			return null;
+		}
+		if (parts.length - 1 != type.fields) {
+			fail(line, text, type.name + " expects " + type.fields + " fields but got " + (parts.length - 1));
+			return null;
+		}
+		String[] fields = new String[type.fields];
+		System.arraycopy(parts, 1, fields, 0, type.fields);
+		if (!type.isValid(fields)) {
+			fail(line, text, "invalid " + type.name + " record");
+			return null;
+		}
+		try {
+			return new Record(line, text, type, type.params(esql, fields));
+		} catch (Exception e) {
+			fail(line, text, e.getMessage());
+			return null;
+		}
+	}// end parse
+
+	/**
+	 * Writes and commits the window, falling back to one transaction per record
+	 * when a batch fails.
+	 */
+	private void flush(ConnectionPool.Pooled conn, List<Record> window) throws SQLException {
+		if (window.isEmpty()) {
+			return;
+		}
+		List<Record> taken = new ArrayList<Record>();
+		try {
+			int from = 0;
+			while (from < window.size()) {
+				RecordType type = window.get(from).type;
+				PreparedStatement ps = conn.statements.prepare(type.sql);
+				int to = from;
+				while (to < window.size() && window.get(to).type == type && to - from < batchSize) {
+					StatementCache.bind(ps, window.get(to).params);
+					ps.addBatch();
+					to++;
+				}
+				int[] counts = ps.executeBatch();
+				for (int i = 0; i < counts.length; i++) {
+					if (counts[i] == 0) {
+						// a booking of a night the room is already booked for
+						taken.add(window.get(from + i));
+					}
+				}
+				from = to;
+			} // end while
+			conn.connection.commit();
+			written += window.size() - taken.size();
+			for (Record record : taken) {
+				fail(record.line, record.text, "room taken");
+			}
+		} catch (SQLException e) {
+			conn.connection.rollback();
+			replay(conn, window);
+		}
+		window.clear();
+	}// end flush
+
+	private void replay(ConnectionPool.Pooled conn, List<Record> window) throws SQLException {
+		for (Record record : window) {
+			try {
+				PreparedStatement ps = conn.statements.prepare(record.type.sql);
+				StatementCache.bind(ps, record.params);
+				int rows = ps.executeUpdate();
+				conn.connection.commit();
+				if (rows == 0) {
+					fail(record.line, record.text, "room taken");
+				} else {
+					written++;
+				}
+			} catch (SQLException e) {
+				conn.connection.rollback();
+				fail(record.line, record.text, e.getMessage());
+			}
+		} // end for
+	}// end replay
+
+	private void fail(int line, String text, String reason) {
+		failed++;
+		System.err.println("line " + line + ": " + reason + ": " + text);
+	}// end fail
+
+	/**
+	 * Entry point of the --batch mode. "-" reads the records from standard
+	 * input.
+	 */
+	public static void run(DBProject esql, String source) throws Exception {
+		InputStream stream = source.equals("-") ? System.in : new FileInputStream(source);
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+		try {
+			new BatchRunner(esql).run(in);
+		} finally {
+			if (stream != System.in) {
+				in.close();
+			}
+		}
+	}// end run
+
+}// end BatchRunner
@@ -0,0 +1,448 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency benchmark of the DBProject menu operations.
+ *
+ * Every operation is driven through the same non-interactive path the menu and
+ * the batch mode use (prepared statement cache, id allocator, occupancy index
+ * and customer cache) with parameters drawn at random from the loaded data.
+ * Each operation runs at every thread count of dbproject.bench.threads
+ * (default 1,8,64): first dbproject.bench.warmupMs of warm-up, then
+ * dbproject.bench.durationMs of measurement, after which the throughput and
+ * the p50/p99 latency are reported. dbproject.bench.ops restricts the run to a
+ * comma separated list of operations.
+ *
+ * The write operations add rows, so run it against a scratch database loaded
+ * with the bundled data:
+ * java -Ddbproject.pool.max=64 DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --bench
+ *
+ * Run it again with -Ddbproject.groupCommit.enabled=true to compare the
+ * write operations through the group commit queue (see GroupCommit).
+ */
+public class Bench {
+
+	// bench bookings are made far past the loaded data, one night per booking id
+	private static final long BOOKING_BASE_DAY = java.sql.Date.valueOf("2100-01-01").getTime();
+	private static final long CONTENDED_BASE_DAY = java.sql.Date.valueOf("2099-01-01").getTime();
+
+	/**
+	 * One benchmarked operation.
+	 */
+	static abstract class Operation {
+		final String name;
+
+		Operation(String name) {
+			this.name = name;
+		}
+
+		abstract void run(Random rnd) throws Exception;
+	}// end Operation
+
+	/**
+	 * The result of one operation at one thread count.
+	 */
+	static class Result {
+		final String operation;
+		final int threads;
+		final long ops;
+		final long errors;
+		final double seconds;
+		final long[] latencies;
+
+		Result(String operation, int threads, long ops, long errors, double seconds, long[] latencies) {
+			this.operation = operation;
+			this.threads = threads;
+			this.ops = ops;
+			this.errors = errors;
+			this.seconds = seconds;
+			this.latencies = latencies;
+		}
+
+		double throughput() {
+			return ops / seconds;
+		}
+
+		/**
+		 * Returns the latency at the given percentile in milliseconds.
+		 */
+		double percentile(double p) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int i = (int) Math.ceil(p / 100.0 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(i, latencies.length - 1))] / 1e6;
+		}
+	}// end Result
+
+	private final DBProject esql;
+	private final int[] threadCounts;
+	private final long warmupMillis;
+	private final long durationMillis;
+	private final String only;
+
+	// sample parameters taken from the loaded data
+	private long[] hotels;
+	private long[][] rooms;
+	private long[] customers;
+	private String[][] customerNames;
+	private long[] companies;
+	private String[] companyNames;
+	private long[] housekeepers;
+	private long[] managers;
+	private long[] repairs;
+	private java.sql.Date firstDay;
+	private int days;
+	private final AtomicLong nextRoomNo = new AtomicLong();
+
+	public Bench(DBProject esql) {
+		this.esql = esql;
+		this.threadCounts = parseInts(System.getProperty("dbproject.bench.threads", "1,8,64"));
+		this.warmupMillis = Long.getLong("dbproject.bench.warmupMs", 2000);
+		this.durationMillis = Long.getLong("dbproject.bench.durationMs", 5000);
+		this.only = System.getProperty("dbproject.bench.ops");
+	}// end Bench
+
+	/**
+	 * Runs every selected operation at every thread count and prints the
+	 * results.
+	 */
+	public List<Result> run() throws Exception {
+		sample();
+		List<Result> results = new ArrayList<Result>();
+		System.out.println(String.format("%-36s %7s %10s %9s %9s %7s", "operation", "threads", "ops/s", "p50 ms",
+				"p99 ms", "errors"));
+		for (Operation op : operations().values()) {
+			if (only != null && !Arrays.asList(only.split(",")).contains(op.name)) {
+				continue;
+			}
+			for (int threads : threadCounts) {
+				measure(op, threads, warmupMillis);
+				Result r = measure(op, threads, durationMillis);
+				results.add(r);
+				System.out.println(String.format("%-36s %7d %10.1f %9.3f %9.3f %7d", r.operation, r.threads,
+						r.throughput(), r.percentile(50), r.percentile(99), r.errors));
+			}
+		}
+		System.out.println(esql.getPool().stats());
+		if (esql.getGroupCommit() != null) {
+			System.out.println(esql.getGroupCommit().stats());
+		}
+		// the writes above were applied to the leaderboard one by one
+		esql.getLeaderboard().check();
+		return results;
+	}// end run
+
+	/**
+	 * Runs the operation on the given number of threads for the given time.
+	 */
+	Result measure(final Operation op, int threads, final long millis) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final long[][] latencies = new long[threads][];
+		final int[] counts = new int[threads];
+		final AtomicLong errors = new AtomicLong();
+		for (int t = 0; t < threads; t++) {
+			final int slot = t;
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					Random rnd = new Random(31L * slot + System.nanoTime());
+					Metrics.setOperation(op.name);
+					long[] lat = new long[1024];
+					int n = 0;
+					try {
+						start.await();
+						long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+						long now;
+						while ((now = System.nanoTime()) < end) {
+							try {
+								op.run(rnd);
+								if (n == lat.length) {
+									lat = Arrays.copyOf(lat, n * 2);
+								}
+								lat[n++] = System.nanoTime() - now;
+							} catch (Exception e) {
+								if (errors.getAndIncrement() == 0) {
+									System.err.println(op.name + ": " + e.getMessage());
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						latencies[slot] = lat;
+						counts[slot] = n;
+						done.countDown();
+					}
+				}
+			}, "dbproject-bench-" + t);
+			worker.start();
+		}
+		long began = System.nanoTime();
+		start.countDown();
+		done.await();
+		double seconds = (System.nanoTime() - began) / 1e9;
+
+		int total = 0;
+		for (int c : counts) {
+			total += c;
+		}
+		long[] all = new long[total];
+		int at = 0;
+		for (int t = 0; t < threads; t++) {
+			System.arraycopy(latencies[t], 0, all, at, counts[t]);
+			at += counts[t];
+		}
+		Arrays.sort(all);
+		return new Result(op.name, threads, total, errors.get(), seconds, all);
+	}// end measure
+
+	/**
+	 * Returns the benchmarked operations in menu order.
+	 */
+	Map<String, Operation> operations() {
+		Map<String, Operation> ops = new LinkedHashMap<String, Operation>();
+		add(ops, new Operation("addCustomer") {
+			void run(Random rnd) throws Exception {
+				write("customer", "bench", "customer" + rnd.nextInt(1000), "nowhere", "5550000000", "01/01/1990",
+						"Other");
+			}
+		});
+		add(ops, new Operation("addRoom") {
+			void run(Random rnd) throws Exception {
+				long hotel = pick(rnd, hotels);
+				long roomNo = nextRoomNo.incrementAndGet();
+				write("room", String.valueOf(hotel), String.valueOf(roomNo), "Suite");
+				esql.getOccupancy().recordRoom(hotel, roomNo);
+			}
+		});
+		add(ops, new Operation("addMaintenanceCompany") {
+			void run(Random rnd) throws Exception {
+				Object[] params = write("company", "bench company", "nowhere", "Y");
+				esql.getLeaderboard().recordCompany((Long) params[0], (String) params[1]);
+			}
+		});
+		add(ops, new Operation("addRepair") {
+			void run(Random rnd) throws Exception {
+				int h = rnd.nextInt(hotels.length);
+				long company = pick(rnd, companies);
+				Object[] params = BatchRunner.TYPES.get("repair").params(esql, new String[] {
+						String.valueOf(hotels[h]), String.valueOf(pick(rnd, rooms[h])), String.valueOf(company),
+						day(rnd), "bench", "Small" });
+				DBProject.repair(esql, (Long) params[0], (Long) params[1], (Long) params[2], company,
+						(java.sql.Date) params[4], (String) params[5], (String) params[6]);
+			}
+		});
+		add(ops, new Operation("bookRoom") {
+			void run(Random rnd) throws Exception {
+				int h = rnd.nextInt(hotels.length);
+				long room = pick(rnd, rooms[h]);
+				long id = esql.nextId(IdAllocator.BOOKING);
+				java.sql.Date night = new java.sql.Date(DBProject.addDays(new java.sql.Date(BOOKING_BASE_DAY),
+						(int) (id % 2000000)).getTime());
+				long customer = pick(rnd, customers);
+				java.math.BigDecimal price = new java.math.BigDecimal(100 + rnd.nextInt(900));
+				DBProject.book(esql, id, customer, hotels[h], room, night, Long.valueOf(1 + rnd.nextInt(4)), price);
+			}
+		});
+		// every thread competes for the same few room nights, so almost every
+		// attempt ends as "room taken"
+		add(ops, new Operation("bookRoomContended") {
+			void run(Random rnd) throws Exception {
+				long room = rooms[0][rnd.nextInt(Math.min(4, rooms[0].length))];
+				java.sql.Date night = new java.sql.Date(DBProject.addDays(new java.sql.Date(CONTENDED_BASE_DAY),
+						rnd.nextInt(16)).getTime());
+				DBProject.book(esql, esql.nextId(IdAllocator.BOOKING), pick(rnd, customers), hotels[0], room, night,
+						Long.valueOf(1), new java.math.BigDecimal(100));
+			}
+		});
+		add(ops, new Operation("assignHouseCleaningToRoom") {
+			void run(Random rnd) throws Exception {
+				int h = rnd.nextInt(hotels.length);
+				insert("assign", String.valueOf(pick(rnd, housekeepers)), String.valueOf(hotels[h]),
+						String.valueOf(pick(rnd, rooms[h])));
+			}
+		});
+		add(ops, new Operation("repairRequest") {
+			void run(Random rnd) throws Exception {
+				insert("request", String.valueOf(pick(rnd, managers)), String.valueOf(pick(rnd, repairs)),
+						day(rnd), "bench");
+			}
+		});
+		add(ops, new Operation("numberOfAvailableRooms") {
+			void run(Random rnd) throws Exception {
+				java.sql.Date from = date(rnd);
+				DBProject.countAvailableRooms(esql, pick(rnd, hotels), from,
+						new java.sql.Date(DBProject.addDays(from, 1).getTime()));
+			}
+		});
+		add(ops, new Operation("numberOfBookedRooms") {
+			void run(Random rnd) throws Exception {
+				DBProject.bookedRooms(esql, pick(rnd, hotels));
+			}
+		});
+		add(ops, new Operation("listHotelRoomBookingsForAWeek") {
+			void run(Random rnd) throws Exception {
+				java.sql.Date from = date(rnd);
+				DBProject.freeRooms(esql, pick(rnd, hotels), from,
+						new java.sql.Date(DBProject.addDays(from, 7).getTime()));
+			}
+		});
+		add(ops, new Operation("topKHighestRoomPriceForADateRange") {
+			void run(Random rnd) throws Exception {
+				java.sql.Date from = date(rnd);
+				DBProject.topKBookings(esql, from, new java.sql.Date(DBProject.addDays(from, 30).getTime()), 10);
+			}
+		});
+		add(ops, new Operation("topKHighestPriceBookingsForACustomer") {
+			void run(Random rnd) throws Exception {
+				String[] name = customerNames[rnd.nextInt(customerNames.length)];
+				for (long customer : esql.getCustomers().resolve(name[0], name[1])) {
+					DBProject.kthPrice(esql, customer, rnd.nextInt(3));
+				}
+			}
+		});
+		add(ops, new Operation("totalCostForCustomer") {
+			void run(Random rnd) throws Exception {
+				String[] name = customerNames[rnd.nextInt(customerNames.length)];
+				for (long customer : esql.getCustomers().resolve(name[0], name[1])) {
+					DBProject.totalCost(esql, customer, firstDay,
+							new java.sql.Date(DBProject.addDays(firstDay, days).getTime()), pick(rnd, hotels));
+				}
+			}
+		});
+		add(ops, new Operation("listRepairsMade") {
+			void run(Random rnd) throws Exception {
+				esql.executeQuery(DBProject.SQL_REPAIRS_MADE, companyNames[rnd.nextInt(companyNames.length)]);
+			}
+		});
+		add(ops, new Operation("topKMaintenanceCompany") {
+			void run(Random rnd) throws Exception {
+				esql.getLeaderboard().topK(5);
+			}
+		});
+		add(ops, new Operation("numberOfRepairsForEachRoomPerYear") {
+			void run(Random rnd) throws Exception {
+				int h = rnd.nextInt(hotels.length);
+				esql.executeQuery(DBProject.SQL_REPAIRS_PER_YEAR, hotels[h], pick(rnd, rooms[h]));
+			}
+		});
+		return ops;
+	}// end operations
+
+	private static void add(Map<String, Operation> ops, Operation op) {
+		ops.put(op.name, op);
+	}// end add
+
+	/**
+	 * Applies one write through the record types of the batch mode and
+	 * returns the bound parameters.
+	 */
+	private Object[] write(String type, String... fields) throws Exception {
+		BatchRunner.RecordType t = BatchRunner.TYPES.get(type);
+		Object[] params = t.params(esql, fields);
+		esql.executeUpdate(t.sql, params);
+		return params;
+	}// end write
+
+	/**
+	 * Like write, for the inserts that go through the group commit queue when
+	 * it is enabled.
+	 */
+	private Object[] insert(String type, String... fields) throws Exception {
+		BatchRunner.RecordType t = BatchRunner.TYPES.get(type);
+		Object[] params = t.params(esql, fields);
+		esql.executeInsert(t.sql, params);
+		return params;
+	}// end insert
+
+	/**
+	 * Reads the sample parameters from the loaded data.
+	 */
+	void sample() throws SQLException {
+		hotels = longs("SELECT hotelID FROM hotel WHERE hotelID <> 0 AND EXISTS (SELECT 1 FROM room WHERE room.hotelID = hotel.hotelID) ORDER BY hotelID");
+		rooms = new long[hotels.length][];
+		for (int i = 0; i < hotels.length; i++) {
+			rooms[i] = longs("SELECT roomNo FROM room WHERE hotelID = ? ORDER BY roomNo", Long.valueOf(hotels[i]));
+		}
+		customers = longs("SELECT customerID FROM customer WHERE customerID <> 0");
+		ResultSet rs = esql.executeQuery("SELECT fName, lName FROM customer WHERE customerID <> 0 ORDER BY customerID LIMIT 10000", new Object[0]);
+		List<String[]> names = new ArrayList<String[]>();
+		while (rs.next()) {
+			names.add(new String[] { rs.getString(1), rs.getString(2) });
+		}
+		customerNames = names.toArray(new String[names.size()][]);
+		companies = longs("SELECT cmpID FROM maintenanceCompany WHERE cmpID <> 0");
+		rs = esql.executeQuery("SELECT name FROM maintenanceCompany WHERE cmpID <> 0", new Object[0]);
+		List<String> cmpNames = new ArrayList<String>();
+		while (rs.next()) {
+			cmpNames.add(rs.getString(1));
+		}
+		companyNames = cmpNames.toArray(new String[cmpNames.size()]);
+		housekeepers = longs("SELECT SSN FROM staff WHERE role = 'HouseCleaning'");
+		managers = longs("SELECT SSN FROM staff WHERE role = 'Manager' AND SSN <> 0");
+		repairs = longs("SELECT rID FROM repair WHERE rID <> 0");
+		rs = esql.executeQuery("SELECT MIN(bookingDate), MAX(bookingDate) - MIN(bookingDate) FROM booking WHERE bID <> 0", new Object[0]);
+		rs.next();
+		firstDay = rs.getDate(1);
+		days = Math.max(1, rs.getInt(2));
+		rs = esql.executeQuery("SELECT COALESCE(MAX(roomNo), 0) FROM room", new Object[0]);
+		rs.next();
+		nextRoomNo.set(Math.max(rs.getLong(1), 1000000));
+		if (hotels.length == 0 || customers.length == 0 || companies.length == 0 || housekeepers.length == 0
+				|| managers.length == 0 || repairs.length == 0 || firstDay == null) {
+			throw new SQLException("The benchmark needs the bundled data; run --load first");
+		}
+	}// end sample
+
+	private long[] longs(String sql, Object... params) throws SQLException {
+		ResultSet rs = esql.executeQuery(sql, params);
+		long[] values = new long[64];
+		int n = 0;
+		while (rs.next()) {
+			if (n == values.length) {
+				values = Arrays.copyOf(values, n * 2);
+			}
+			values[n++] = rs.getLong(1);
+		}
+		return Arrays.copyOf(values, n);
+	}// end longs
+
+	private static long pick(Random rnd, long[] values) {
+		return values[rnd.nextInt(values.length)];
+	}// end pick
+
+	private java.sql.Date date(Random rnd) {
+		return new java.sql.Date(DBProject.addDays(firstDay, rnd.nextInt(days)).getTime());
+	}// end date
+
+	private String day(Random rnd) {
+		return new java.text.SimpleDateFormat("MM/dd/yyyy").format(date(rnd));
+	}// end day
+
+	private static int[] parseInts(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}// end parseInts
+
+	/**
+	 * Entry point of the --bench mode.
+	 */
+	public static void run(DBProject esql) throws Exception {
+		new Bench(esql).run();
+	}// end run
+
+}// end Bench
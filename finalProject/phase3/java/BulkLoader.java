@@ -0,0 +1,622 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Client side bulk loader for the phase3 CSV data set.
+ *
+ * The loader streams every data/*.csv file from the client through a pooled
+ * connection, so the files do not have to be on the database host. Tables
+ * that do not depend on each other are loaded in parallel, one table per
+ * connection, in the foreign key order of create.sql:
+ *
+ * Hotel, Customer, MaintenanceCompany -> Staff, Room -> Booking, Repair,
+ * Assigned -> Request
+ *
+ * When the JDBC driver on the classpath provides the COPY API
+ * (org.postgresql.copy.CopyManager) the files are sent with COPY FROM STDIN.
+ * The bundled pg73 driver predates it, in which case the rows are sent as
+ * batched prepared INSERTs instead. Either way the files are read line by
+ * line and memory use does not grow with the size of the data set.
+ *
+ * The loader can be tuned with the following system properties:
+ * dbproject.load.threads, dbproject.load.batchSize,
+ * dbproject.load.commitInterval, dbproject.load.deferConstraints (drop the
+ * foreign keys during the load and re-add them afterwards) and
+ * dbproject.load.deferIndexes (drop secondary indexes of the loaded tables
+ * and rebuild them afterwards).
+ *
+ * When Booking and Repair are partitioned by year (migration V2), rows of
+ * years without a partition land in the DEFAULT partition and are moved to
+ * new partitions of their own years at the end of the load. When the prices
+ * are stored in cents (migration V4) the dollars of booking.csv are converted
+ * on the way.
+ */
+public class BulkLoader {
+
+	/**
+	 * One table of the data set: its CSV file, columns with their SQL types,
+	 * and the tables it references.
+	 */
+	static class Table {
+		final String name;
+		final String file;
+		final String[] columns;
+		final String[] types;
+		final String[] dependsOn;
+
+		Table(String name, String file, String[] columns, String[] types, String... dependsOn) {
+			this.name = name;
+			this.file = file;
+			this.columns = columns;
+			this.types = types;
+			this.dependsOn = dependsOn;
+		}
+
+		/**
+		 * Returns the index of the price column in dollars, or -1.
+		 */
+		int priceColumn() {
+			return Arrays.asList(columns).indexOf(PRICE_COLUMN);
+		}
+
+		/**
+		 * Returns the column list, with the price column renamed to its cents
+		 * column when cents is its index.
+		 */
+		String columnList(int cents) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(columns[i]).append(i == cents ? "_cents" : "");
+			}
+			return sb.toString();
+		}
+	}// end Table
+
+	/**
+	 * The outcome of loading one table.
+	 */
+	static class Result {
+		final String table;
+		final long rows;
+		final long nanos;
+		final String method;
+
+		Result(String table, long rows, long nanos, String method) {
+			this.table = table;
+			this.rows = rows;
+			this.nanos = nanos;
+			this.method = method;
+		}
+
+		double rowsPerSecond() {
+			return nanos == 0 ? 0 : rows * 1e9 / nanos;
+		}
+	}// end Result
+
+	// the column types of migration V4; the server widens them to the Numeric
+	// columns of create.sql when V4 has not been applied
+	static final Table[] TABLES = {
+			new Table("Hotel", "hotel.csv", new String[] { "hotelID", "address", "manager" },
+					new String[] { "integer", "text", "integer" }),
+			new Table("Customer", "customer.csv",
+					new String[] { "customerID", "fName", "lName", "Address", "phNo", "DOB", "gender" },
+					new String[] { "integer", "text", "text", "text", "bigint", "date", "GenderType" }),
+			new Table("MaintenanceCompany", "maintenanceCompany.csv",
+					new String[] { "cmpID", "name", "address", "isCertified" },
+					new String[] { "integer", "text", "text", "boolean" }),
+			new Table("Staff", "staff.csv", new String[] { "SSN", "fName", "lName", "address", "role", "employerID" },
+					new String[] { "integer", "text", "text", "text", "StaffRole", "integer" }, "Hotel"),
+			new Table("Room", "room.csv", new String[] { "hotelID", "roomNo", "roomType" },
+					new String[] { "integer", "integer", "text" }, "Hotel"),
+			new Table("Booking", "booking.csv",
+					new String[] { "bID", "customer", "hotelID", "roomNo", "bookingDate", "noOfPeople", "price" },
+					new String[] { "bigint", "integer", "integer", "integer", "date", "smallint", "numeric" },
+					"Customer", "Room"),
+			new Table("Repair", "repair.csv",
+					new String[] { "rID", "hotelID", "roomNo", "mCompany", "repairDate", "description", "repairType" },
+					new String[] { "bigint", "integer", "integer", "integer", "date", "text", "text" },
+					"MaintenanceCompany", "Room"),
+			new Table("Assigned", "assigned.csv", new String[] { "asgID", "staffID", "hotelID", "roomNo" },
+					new String[] { "bigint", "integer", "integer", "integer" }, "Staff", "Room"),
+			new Table("Request", "request.csv",
+					new String[] { "reqID", "managerID", "repairID", "requestDate", "description" },
+					new String[] { "bigint", "integer", "bigint", "date", "text" }, "Staff", "Repair") };
+
+	// booking.csv holds dollars; migration V4 stores them as price_cents
+	static final String PRICE_COLUMN = "price";
+
+	private static final String SQL_SET_MANAGERS = "UPDATE hotel SET manager = Staff.ssn FROM Staff WHERE hotel.hotelID = Staff.employerID AND Staff.role = 'Manager'";
+	private static final String SQL_FOREIGN_KEYS = "SELECT conrelid::regclass::text, conname, pg_get_constraintdef(oid) FROM pg_constraint WHERE contype = 'f' AND connamespace = (SELECT oid FROM pg_namespace WHERE nspname = current_schema()) AND NOT EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = conrelid)";
+	private static final String SQL_HAS_COLUMN = "SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = lower(?) AND column_name = lower(?)";
+	private static final String SQL_SECONDARY_INDEXES = "SELECT i.indexname, i.indexdef FROM pg_indexes i WHERE i.schemaname = current_schema() AND lower(i.tablename) = lower(?) AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conname = i.indexname)";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final DBProject esql;
+	private final File dataDir;
+	private final int threads;
+	private final int batchSize;
+	private final int commitInterval;
+	private final boolean deferConstraints;
+	private final boolean deferIndexes;
+	private boolean priceInCents;
+
+	public BulkLoader(DBProject esql, File dataDir) {
+		this.esql = esql;
+		this.dataDir = dataDir;
+		this.threads = Integer.getInteger("dbproject.load.threads", esql.getPool().getMaxSize());
+		this.batchSize = Integer.getInteger("dbproject.load.batchSize", 1000);
+		this.commitInterval = Integer.getInteger("dbproject.load.commitInterval", 50000);
+		this.deferConstraints = Boolean.getBoolean("dbproject.load.deferConstraints");
+		this.deferIndexes = Boolean.getBoolean("dbproject.load.deferIndexes");
+	}// end BulkLoader
+
+	/**
+	 * Loads every table of the data set into the (empty) schema created by
+	 * create.sql, then sets the hotel managers, moves the id sequences past the
+	 * loaded keys and refreshes the planner statistics.
+	 *
+	 * @return the per table results, in load order
+	 * @throws java.lang.Exception when a table fails to load; tables depending on
+	 *                             it are not attempted.
+	 */
+	public List<Result> load() throws Exception {
+		long start = System.nanoTime();
+		List<Result> results = new ArrayList<Result>();
+		List<String[]> foreignKeys = new ArrayList<String[]>();
+		List<String[]> indexes = new ArrayList<String[]>();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			priceInCents = esql.executeQuery(SQL_HAS_COLUMN, "Booking", PRICE_COLUMN + "_cents").next();
+			if (deferConstraints) {
+				foreignKeys = dropForeignKeys();
+				System.out.println("Dropped " + foreignKeys.size() + " foreign keys for the load");
+			}
+			if (deferIndexes) {
+				indexes = dropSecondaryIndexes();
+				System.out.println("Dropped " + indexes.size() + " secondary indexes for the load");
+			}
+
+			// without foreign keys every table can be loaded at once
+			List<List<Table>> levels = deferConstraints ? singleLevel() : levels();
+			for (List<Table> level : levels) {
+				List<Future<Result>> futures = new ArrayList<Future<Result>>();
+				for (final Table table : level) {
+					futures.add(pool.submit(new Callable<Result>() {
+						public Result call() throws Exception {
+							return loadTable(table);
+						}
+					}));
+				}
+				for (Future<Result> f : futures) {
+					Result r = get(f);
+					results.add(r);
+					report(r);
+				}
+			} // end for
+
+			esql.executeUpdate(SQL_SET_MANAGERS);
+			if (!indexes.isEmpty()) {
+				runInParallel(pool, indexes, 1, "Rebuilt index ");
+			}
+			if (!foreignKeys.isEmpty()) {
+				List<String[]> statements = new ArrayList<String[]>();
+				for (String[] fk : foreignKeys) {
+					statements.add(new String[] { fk[1],
+							"ALTER TABLE " + fk[0] + " ADD CONSTRAINT " + fk[1] + " " + fk[2] });
+				}
+				runInParallel(pool, statements, 1, "Validated constraint ");
+				foreignKeys.clear();
+			}
+			// move the rows that landed in a DEFAULT partition to their own years
+			new PartitionManager(esql).maintain();
+			IdAllocator.resync(esql);
+			for (Table table : TABLES) {
+				esql.executeUpdate("ANALYZE " + table.name);
+			}
+			esql.getLeaderboard().rebuild();
+			esql.getPrices().invalidate();
+			esql.getColumns().invalidate();
+		} finally {
+			pool.shutdownNow();
+			if (!foreignKeys.isEmpty()) {
+				System.err.println("The load did not finish; re-add these constraints by hand:");
+				for (String[] fk : foreignKeys) {
+					System.err.println("ALTER TABLE " + fk[0] + " ADD CONSTRAINT " + fk[1] + " " + fk[2] + ";");
+				}
+			}
+		}
+		long rows = 0;
+		for (Result r : results) {
+			rows += r.rows;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Loaded %d rows in %.2f s (%.0f rows/s)", rows, seconds, rows / seconds));
+		return results;
+	}// end load
+
+	/**
+	 * Groups the tables into levels so that every table comes after the tables
+	 * it references. The tables of one level are independent of each other.
+	 */
+	static List<List<Table>> levels() {
+		Map<String, Integer> level = new HashMap<String, Integer>();
+		List<List<Table>> levels = new ArrayList<List<Table>>();
+		// TABLES is listed in dependency order, so one pass is enough
+		for (Table table : TABLES) {
+			int l = 0;
+			for (String dep : table.dependsOn) {
+				Integer d = level.get(dep);
+				if (d == null) {
+					throw new IllegalStateException(table.name + " is listed before " + dep);
+				}
+				l = Math.max(l, d + 1);
+			}
+			level.put(table.name, l);
+			while (levels.size() <= l) {
+				levels.add(new ArrayList<Table>());
+			}
+			levels.get(l).add(table);
+		}
+		return levels;
+	}// end levels
+
+	private static List<List<Table>> singleLevel() {
+		List<List<Table>> levels = new ArrayList<List<Table>>();
+		levels.add(Arrays.asList(TABLES));
+		return levels;
+	}// end singleLevel
+
+	private Result loadTable(Table table) throws Exception {
+		File file = new File(dataDir, table.file);
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		try {
+			long start = System.nanoTime();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8), 1 << 16);
+			int cents = priceInCents ? table.priceColumn() : -1;
+			try {
+				Object copyManager = copyManager(conn.connection);
+				if (copyManager != null) {
+					Reader in = cents < 0 ? reader : new CentsReader(reader, cents);
+					long rows = copyIn(copyManager, table, cents, in);
+					return new Result(table.name, rows, System.nanoTime() - start, "COPY");
+				}
+				long rows = insertBatches(conn.connection, table, cents, reader);
+				return new Result(table.name, rows, System.nanoTime() - start, "INSERT batch " + batchSize);
+			} finally {
+				reader.close();
+			}
+		} finally {
+			esql.getPool().release(conn);
+		}
+	}// end loadTable
+
+	/**
+	 * Returns a CopyManager for the connection, or null when the driver on the
+	 * classpath does not support COPY. Reflection keeps the loader compiling
+	 * against the bundled pg73 driver.
+	 */
+	private static Object copyManager(Connection connection) {
+		try {
+			Class<?> managerClass = Class.forName("org.postgresql.copy.CopyManager");
+			Class<?> baseConnection = Class.forName("org.postgresql.core.BaseConnection");
+			if (!baseConnection.isInstance(connection)) {
+				return null;
+			}
+			Constructor<?> ctor = managerClass.getConstructor(baseConnection);
+			return ctor.newInstance(connection);
+		} catch (Exception e) {
+			return null;
+		}
+	}// end copyManager
+
+	private static long copyIn(Object copyManager, Table table, int cents, Reader reader) throws Exception {
+		String sql = "COPY " + table.name + "(" + table.columnList(cents) + ") FROM STDIN WITH DELIMITER ','";
+		Method copyIn = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+		try {
+			return ((Number) copyIn.invoke(copyManager, sql, reader)).longValue();
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}// end copyIn
+
+	/**
+	 * Sends the rows of the file as batched prepared INSERTs, committing every
+	 * commitInterval rows. The dollars of column cents (unless -1) are stored in
+	 * cents.
+	 */
+	private long insertBatches(Connection connection, Table table, int cents, BufferedReader reader)
+			throws SQLException, IOException {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.name).append("(")
+				.append(table.columnList(cents)).append(") VALUES(");
+		for (int i = 0; i < table.columns.length; i++) {
+			// bind everything as text and let the server convert it, exactly
+			// as COPY would
+			sql.append(i > 0 ? ", " : "");
+			if (i == cents) {
+				sql.append("CAST(round(CAST(? AS numeric) * 100) AS integer)");
+			} else {
+				sql.append("CAST(? AS ").append(table.types[i]).append(")");
+			}
+		}
+		sql.append(")");
+
+		connection.setAutoCommit(false);
+		PreparedStatement ps = connection.prepareStatement(sql.toString());
+		long rows = 0;
+		int pending = 0;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() == 0) {
+					continue;
+				}
+				String[] fields = splitCopyLine(line, table.columns.length);
+				for (int i = 0; i < fields.length; i++) {
+					if (fields[i] == null) {
+						ps.setNull(i + 1, Types.VARCHAR);
+					} else {
+						ps.setString(i + 1, fields[i]);
+					}
+				}
+				ps.addBatch();
+				rows++;
+				if (++pending == batchSize) {
+					ps.executeBatch();
+					pending = 0;
+				}
+				if (rows % commitInterval == 0) {
+					if (pending > 0) {
+						ps.executeBatch();
+						pending = 0;
+					}
+					connection.commit();
+				}
+			} // end while
+			if (pending > 0) {
+				ps.executeBatch();
+			}
+			connection.commit();
+		} finally {
+			ConnectionPool.closeQuietly(ps);
+		}
+		return rows;
+	}// end insertBatches
+
+	/**
+	 * Splits one line of PostgreSQL text COPY format with a ',' delimiter.
+	 * Unescaped \N is a NULL and backslash sequences are decoded.
+	 */
+	static String[] splitCopyLine(String line, int columns) throws IOException {
+		String[] fields = new String[columns];
+		StringBuilder field = new StringBuilder();
+		boolean escaped = false;
+		boolean rawNull = false;
+		int n = 0;
+		for (int i = 0; i <= line.length(); i++) {
+			if (i == line.length() || (!escaped && line.charAt(i) == ',')) {
+				if (n == columns) {
+					throw new IOException("Too many fields in line: " + line);
+				}
+				fields[n++] = rawNull && field.length() == 0 ? null : field.toString();
+				field.setLength(0);
+				rawNull = false;
+				continue;
+			}
+			char c = line.charAt(i);
+			if (escaped) {
+				escaped = false;
+				switch (c) {
+				case 'N':
+					rawNull = true;
+					break;
+				case 't':
+					field.append('\t');
+					break;
+				case 'n':
+					field.append('\n');
+					break;
+				case 'r':
+					field.append('\r');
+					break;
+				default:
+					field.append(c);
+					break;
+				}
+			} else if (c == '\\') {
+				escaped = true;
+			} else {
+				field.append(c);
+			}
+		} // end for
+		if (n != columns) {
+			throw new IOException("Expected " + columns + " fields but found " + n + " in line: " + line);
+		}
+		return fields;
+	}// end splitCopyLine
+
+	/**
+	 * Passes COPY text lines through with the dollars of one column replaced by
+	 * cents, one line at a time.
+	 */
+	static class CentsReader extends Reader {
+		private final BufferedReader in;
+		private final int column;
+		private String line = "";
+		private int pos = 0;
+
+		CentsReader(BufferedReader in, int column) {
+			this.in = in;
+			this.column = column;
+		}
+
+		public int read(char[] buf, int off, int len) throws IOException {
+			while (pos == line.length()) {
+				String next = in.readLine();
+				if (next == null) {
+					return -1;
+				}
+				line = toCents(next, column) + "\n";
+				pos = 0;
+			}
+			int n = Math.min(len, line.length() - pos);
+			line.getChars(pos, pos + n, buf, off);
+			pos += n;
+			return n;
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+	}// end CentsReader
+
+	/**
+	 * Replaces the dollars in field column of a COPY text line by cents. Empty
+	 * lines and NULLs are left alone.
+	 */
+	static String toCents(String line, int column) throws IOException {
+		if (line.length() == 0) {
+			return line;
+		}
+		int start = 0;
+		int field = 0;
+		boolean escaped = false;
+		for (int i = 0; i <= line.length(); i++) {
+			if (i < line.length() && (escaped || line.charAt(i) != ',')) {
+				escaped = !escaped && line.charAt(i) == '\\';
+				continue;
+			}
+			if (field++ == column) {
+				String dollars = line.substring(start, i);
+				if (dollars.equals("\\N")) {
+					return line;
+				}
+				try {
+					long cents = PriceIndex.toCents(new BigDecimal(dollars.trim()));
+					return line.substring(0, start) + cents + line.substring(i);
+				} catch (NumberFormatException e) {
+					throw new IOException("Not a price: " + dollars + " in line: " + line);
+				}
+			}
+			start = i + 1;
+		} // end for
+		throw new IOException("Expected a price in field " + (column + 1) + " of line: " + line);
+	}// end toCents
+
+	/**
+	 * Drops every foreign key of the schema and returns {table, name,
+	 * definition} triples to re-create them.
+	 */
+	private List<String[]> dropForeignKeys() throws SQLException {
+		List<String[]> foreignKeys = new ArrayList<String[]>();
+		ResultSet rs = esql.executeQuery(SQL_FOREIGN_KEYS);
+		while (rs.next()) {
+			foreignKeys.add(new String[] { rs.getString(1), rs.getString(2), rs.getString(3) });
+		}
+		for (String[] fk : foreignKeys) {
+			esql.executeUpdate("ALTER TABLE " + fk[0] + " DROP CONSTRAINT " + fk[1]);
+		}
+		return foreignKeys;
+	}// end dropForeignKeys
+
+	/**
+	 * Drops the indexes of the loaded tables that do not back a constraint and
+	 * returns {name, definition} pairs to rebuild them.
+	 */
+	private List<String[]> dropSecondaryIndexes() throws SQLException {
+		List<String[]> indexes = new ArrayList<String[]>();
+		for (Table table : TABLES) {
+			ResultSet rs = esql.executeQuery(SQL_SECONDARY_INDEXES, table.name);
+			while (rs.next()) {
+				// the definition of an index of a partitioned table reads ON ONLY,
+				// which would not rebuild it on the partitions
+				indexes.add(new String[] { rs.getString(1), rs.getString(2).replace(" ON ONLY ", " ON ") });
+			}
+		}
+		for (String[] index : indexes) {
+			esql.executeUpdate("DROP INDEX " + index[0]);
+		}
+		return indexes;
+	}// end dropSecondaryIndexes
+
+	/**
+	 * Runs {label, sql} statements in parallel on pooled connections.
+	 */
+	private void runInParallel(ExecutorService pool, List<String[]> statements, final int sqlIndex,
+			String message) throws Exception {
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for (final String[] statement : statements) {
+			futures.add(pool.submit(new Callable<Long>() {
+				public Long call() throws Exception {
+					long start = System.nanoTime();
+					esql.executeUpdate(statement[sqlIndex]);
+					return System.nanoTime() - start;
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			long nanos = get(futures.get(i));
+			System.out.println(String.format("%s%s in %.2f s", message, statements.get(i)[0], nanos / 1e9));
+		}
+	}// end runInParallel
+
+	private static <T> T get(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}// end get
+
+	private static void report(Result r) {
+		System.out.println(String.format("%-20s %10d rows %8.2f s %12.0f rows/s  (%s)", r.table, r.rows,
+				r.nanos / 1e9, r.rowsPerSecond(), r.method));
+	}// end report
+
+	/**
+	 * Entry point of the --load mode.
+	 */
+	public static void run(DBProject esql, String dataDir) throws Exception {
+		File dir = new File(dataDir);
+		if (!dir.isDirectory()) {
+			throw new IOException("Not a directory: " + dataDir);
+		}
+		new BulkLoader(esql, dir).load();
+	}// end run
+
+}// end BulkLoader
@@ -0,0 +1,813 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Columnar in-memory snapshot of the Booking and Repair tables for the
+ * reports that scan them.
+ *
+ * Every column is a primitive array, so a booking costs 28 bytes and a repair
+ * 26 bytes of heap with no object per row, and a scan walks the few arrays it
+ * needs sequentially. The reports split the rows into chunks of 16384 and scan
+ * them in parallel on a fork-join pool of dbproject.columns.parallelism
+ * threads (default: one per core):
+ *
+ * numberOfBookedRooms, topKHighestRoomPriceForADateRange,
+ * totalCostForCustomer and numberOfRepairsForEachRoomPerYear.
+ *
+ * The store is off unless dbproject.columns.enabled is set. It is loaded on
+ * first use on a background thread; until then (and after
+ * dbproject.columns.ttlMs has passed, to pick up writes of other processes)
+ * the reports return null and callers fall back to SQL. Bookings and repairs
+ * written by this process are appended as they are made; those made while a
+ * load reads the tables are logged and appended to the loaded columns before
+ * they replace the old ones. Appends write past
+ * the end of the rows a scan sees and then publish the new row count, so
+ * scans never wait for writers.
+ *
+ * The --columns mode loads the store and compares its heap footprint and scan
+ * times with the JDBC path:
+ *
+ * java DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --columns
+ */
+public class ColumnStore {
+
+	private static final String SQL_BOOKINGS = "SELECT bID, customer, hotelID, roomNo, bookingDate, price_cents FROM booking";
+	private static final String SQL_REPAIRS = "SELECT rID, hotelID, roomNo, mCompany, repairDate FROM repair";
+
+	// rows scanned by one fork-join task
+	static final int CHUNK = 1 << 14;
+
+	/**
+	 * The booking columns; rows [0, size) are visible. Appends share the
+	 * arrays with older instances until they have to grow them.
+	 */
+	static final class Bookings {
+		static final int ROW_BYTES = 8 + 5 * 4;
+
+		final long[] bid;
+		final int[] customer;
+		final int[] hotel;
+		final int[] room;
+		final int[] day;
+		final int[] cents;
+		final int size;
+
+		Bookings(int capacity) {
+			this(new long[capacity], new int[capacity], new int[capacity], new int[capacity], new int[capacity],
+					new int[capacity], 0);
+		}
+
+		Bookings(long[] bid, int[] customer, int[] hotel, int[] room, int[] day, int[] cents, int size) {
+			this.bid = bid;
+			this.customer = customer;
+			this.hotel = hotel;
+			this.room = room;
+			this.day = day;
+			this.cents = cents;
+			this.size = size;
+		}
+
+		/**
+		 * Returns the columns with room for one more row.
+		 */
+		Bookings roomForOne() {
+			if (size < bid.length) {
+				return this;
+			}
+			int capacity = Math.max(16, size + (size >> 1));
+			return new Bookings(Arrays.copyOf(bid, capacity), Arrays.copyOf(customer, capacity),
+					Arrays.copyOf(hotel, capacity), Arrays.copyOf(room, capacity), Arrays.copyOf(day, capacity),
+					Arrays.copyOf(cents, capacity), size);
+		}
+
+		/**
+		 * Writes a row behind the visible ones and returns the columns that
+		 * show it.
+		 */
+		Bookings append(long bid, long customer, long hotel, long room, int day, long cents) {
+			Bookings b = roomForOne();
+			b.bid[size] = bid;
+			b.customer[size] = narrow(customer);
+			b.hotel[size] = narrow(hotel);
+			b.room[size] = narrow(room);
+			b.day[size] = day;
+			b.cents[size] = narrow(cents);
+			return new Bookings(b.bid, b.customer, b.hotel, b.room, b.day, b.cents, size + 1);
+		}
+
+		long bytes() {
+			return (long) bid.length * ROW_BYTES;
+		}
+	}// end Bookings
+
+	/**
+	 * The repair columns, appended to like the booking columns.
+	 */
+	static final class Repairs {
+		static final int ROW_BYTES = 8 + 4 * 4 + 2;
+
+		final long[] rid;
+		final int[] hotel;
+		final int[] room;
+		final int[] company;
+		final int[] day;
+		final short[] year;
+		final int size;
+
+		Repairs(int capacity) {
+			this(new long[capacity], new int[capacity], new int[capacity], new int[capacity], new int[capacity],
+					new short[capacity], 0);
+		}
+
+		Repairs(long[] rid, int[] hotel, int[] room, int[] company, int[] day, short[] year, int size) {
+			this.rid = rid;
+			this.hotel = hotel;
+			this.room = room;
+			this.company = company;
+			this.day = day;
+			this.year = year;
+			this.size = size;
+		}
+
+		Repairs roomForOne() {
+			if (size < rid.length) {
+				return this;
+			}
+			int capacity = Math.max(16, size + (size >> 1));
+			return new Repairs(Arrays.copyOf(rid, capacity), Arrays.copyOf(hotel, capacity),
+					Arrays.copyOf(room, capacity), Arrays.copyOf(company, capacity), Arrays.copyOf(day, capacity),
+					Arrays.copyOf(year, capacity), size);
+		}
+
+		Repairs append(long rid, long hotel, long room, long company, Date date) {
+			return append(rid, hotel, room, company, OccupancyIndex.epochDay(date), yearOf(date));
+		}
+
+		Repairs append(long rid, long hotel, long room, long company, int day, short year) {
+			Repairs r = roomForOne();
+			r.rid[size] = rid;
+			r.hotel[size] = narrow(hotel);
+			r.room[size] = narrow(room);
+			r.company[size] = narrow(company);
+			r.day[size] = day;
+			r.year[size] = year;
+			return new Repairs(r.rid, r.hotel, r.room, r.company, r.day, r.year, size + 1);
+		}
+
+		long bytes() {
+			return (long) rid.length * ROW_BYTES;
+		}
+	}// end Repairs
+
+	/**
+	 * One load of the store; appends replace the columns, a reload the
+	 * snapshot.
+	 */
+	static final class Snapshot {
+		final long loadedAt = System.currentTimeMillis();
+		volatile Bookings bookings;
+		volatile Repairs repairs;
+
+		Snapshot(Bookings bookings, Repairs repairs) {
+			this.bookings = bookings;
+			this.repairs = repairs;
+		}
+	}// end Snapshot
+
+	/**
+	 * A scan of rows [from, to) that splits itself into chunks and merges
+	 * their results.
+	 */
+	abstract static class Scan<T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = 1L;
+
+		final int from;
+		final int to;
+
+		Scan(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected T compute() {
+			if (to - from <= CHUNK) {
+				return scan();
+			}
+			int mid = (from + to) >>> 1;
+			Scan<T> left = split(from, mid);
+			left.fork();
+			T right = split(mid, to).compute();
+			return merge(left.join(), right);
+		}
+
+		abstract T scan();
+
+		abstract Scan<T> split(int from, int to);
+
+		abstract T merge(T a, T b);
+	}// end Scan
+
+	static final class CountHotel extends Scan<Long> {
+		private static final long serialVersionUID = 1L;
+
+		final Bookings b;
+		final long hotel;
+
+		CountHotel(Bookings b, long hotel, int from, int to) {
+			super(from, to);
+			this.b = b;
+			this.hotel = hotel;
+		}
+
+		Long scan() {
+			int[] hotels = b.hotel;
+			long n = 0;
+			for (int i = from; i < to; i++) {
+				if (hotels[i] == hotel) {
+					n++;
+				}
+			}
+			return n;
+		}
+
+		Scan<Long> split(int from, int to) {
+			return new CountHotel(b, hotel, from, to);
+		}
+
+		Long merge(Long a, Long b) {
+			return a + b;
+		}
+	}// end CountHotel
+
+	/**
+	 * Sum of the cents and number of the bookings of a customer at a hotel in
+	 * a range of days.
+	 */
+	static final class CustomerCost extends Scan<long[]> {
+		private static final long serialVersionUID = 1L;
+
+		final Bookings b;
+		final long customer;
+		final long hotel;
+		final int fromDay;
+		final int toDay;
+
+		CustomerCost(Bookings b, long customer, long hotel, int fromDay, int toDay, int from, int to) {
+			super(from, to);
+			this.b = b;
+			this.customer = customer;
+			this.hotel = hotel;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+		}
+
+		long[] scan() {
+			int[] customers = b.customer;
+			long cents = 0;
+			long rows = 0;
+			for (int i = from; i < to; i++) {
+				if (customers[i] == customer && b.hotel[i] == hotel && b.day[i] >= fromDay && b.day[i] <= toDay) {
+					cents += b.cents[i];
+					rows++;
+				}
+			}
+			return new long[] { cents, rows };
+		}
+
+		Scan<long[]> split(int from, int to) {
+			return new CustomerCost(b, customer, hotel, fromDay, toDay, from, to);
+		}
+
+		long[] merge(long[] a, long[] b) {
+			return new long[] { a[0] + b[0], a[1] + b[1] };
+		}
+	}// end CustomerCost
+
+	/**
+	 * The k most expensive bookings in a range of days.
+	 */
+	static final class TopPrices extends Scan<PriceIndex.TopN> {
+		private static final long serialVersionUID = 1L;
+
+		final Bookings b;
+		final int fromDay;
+		final int toDay;
+		final int k;
+
+		TopPrices(Bookings b, int fromDay, int toDay, int k, int from, int to) {
+			super(from, to);
+			this.b = b;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+			this.k = k;
+		}
+
+		PriceIndex.TopN scan() {
+			int[] days = b.day;
+			PriceIndex.TopN top = new PriceIndex.TopN(k);
+			for (int i = from; i < to; i++) {
+				if (days[i] >= fromDay && days[i] <= toDay) {
+					top.offer(new PriceIndex.Priced(b.bid[i], b.cents[i]));
+				}
+			}
+			return top;
+		}
+
+		Scan<PriceIndex.TopN> split(int from, int to) {
+			return new TopPrices(b, fromDay, toDay, k, from, to);
+		}
+
+		PriceIndex.TopN merge(PriceIndex.TopN a, PriceIndex.TopN b) {
+			for (PriceIndex.Priced p : b.heap) {
+				a.offer(p);
+			}
+			return a;
+		}
+	}// end TopPrices
+
+	static final class RepairYears extends Scan<Map<Integer, Long>> {
+		private static final long serialVersionUID = 1L;
+
+		final Repairs r;
+		final long hotel;
+		final long room;
+
+		RepairYears(Repairs r, long hotel, long room, int from, int to) {
+			super(from, to);
+			this.r = r;
+			this.hotel = hotel;
+			this.room = room;
+		}
+
+		Map<Integer, Long> scan() {
+			int[] rooms = r.room;
+			Map<Integer, Long> years = new HashMap<Integer, Long>();
+			for (int i = from; i < to; i++) {
+				if (rooms[i] == room && r.hotel[i] == hotel) {
+					Long n = years.get((int) r.year[i]);
+					years.put((int) r.year[i], n == null ? 1L : n + 1);
+				}
+			}
+			return years;
+		}
+
+		Scan<Map<Integer, Long>> split(int from, int to) {
+			return new RepairYears(r, hotel, room, from, to);
+		}
+
+		Map<Integer, Long> merge(Map<Integer, Long> a, Map<Integer, Long> b) {
+			for (Map.Entry<Integer, Long> e : b.entrySet()) {
+				Long n = a.get(e.getKey());
+				a.put(e.getKey(), n == null ? e.getValue() : n + e.getValue());
+			}
+			return a;
+		}
+	}// end RepairYears
+
+	private final DBProject esql;
+	private final boolean enabled;
+	private final long ttlMillis;
+	private final ForkJoinPool pool;
+	private final ExecutorService loader;
+	private final AtomicBoolean loading = new AtomicBoolean();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	// replaced under this, read without a lock
+	private volatile Snapshot snapshot = null;
+
+	// rows recorded while a load reads the tables, guarded by this; null when
+	// no load is running
+	private Bookings pendingBookings = null;
+	private Repairs pendingRepairs = null;
+
+	public ColumnStore(DBProject esql) {
+		this.esql = esql;
+		this.enabled = Boolean.getBoolean("dbproject.columns.enabled");
+		this.ttlMillis = Long.getLong("dbproject.columns.ttlMs", TimeUnit.MINUTES.toMillis(5));
+		this.pool = new ForkJoinPool(Math.max(1,
+				Integer.getInteger("dbproject.columns.parallelism", Runtime.getRuntime().availableProcessors())));
+		this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "dbproject-columns-loader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}// end ColumnStore
+
+	/**
+	 * Returns the number of bookings of the hotel, or null when the store
+	 * cannot answer and the caller should ask the database.
+	 */
+	public Long bookedRooms(long hotel) {
+		Snapshot s = warmOrNull();
+		if (s == null) {
+			return null;
+		}
+		Bookings b = s.bookings;
+		return pool.invoke(new CountHotel(b, hotel, 0, b.size));
+	}// end bookedRooms
+
+	/**
+	 * Returns the ids of the k most expensive bookings with a booking date in
+	 * [from, to] (both inclusive, like BETWEEN), most expensive first, or null
+	 * when the store cannot answer.
+	 */
+	public long[] topKForDateRange(Date from, Date to, int k) {
+		Snapshot s = warmOrNull();
+		if (s == null) {
+			return null;
+		}
+		if (k <= 0) {
+			return new long[0];
+		}
+		Bookings b = s.bookings;
+		PriceIndex.Priced[] top = pool
+				.invoke(new TopPrices(b, OccupancyIndex.epochDay(from), OccupancyIndex.epochDay(to), k, 0, b.size))
+				.descending();
+		long[] ids = new long[top.length];
+		for (int i = 0; i < top.length; i++) {
+			ids[i] = top[i].bid;
+		}
+		return ids;
+	}// end topKForDateRange
+
+	/**
+	 * Returns the total cost in cents and the number of the bookings of the
+	 * customer at the hotel with a booking date in [from, to], or null when the
+	 * store cannot answer.
+	 */
+	public long[] totalCost(long customer, Date from, Date to, long hotel) {
+		Snapshot s = warmOrNull();
+		if (s == null) {
+			return null;
+		}
+		Bookings b = s.bookings;
+		return pool.invoke(new CustomerCost(b, customer, hotel, OccupancyIndex.epochDay(from),
+				OccupancyIndex.epochDay(to), 0, b.size));
+	}// end totalCost
+
+	/**
+	 * Returns the number of repairs of the room per year, fewest first like
+	 * the SQL report, or null when the store cannot answer.
+	 */
+	public Map<Integer, Long> repairsPerYear(long hotel, long room) {
+		Snapshot s = warmOrNull();
+		if (s == null) {
+			return null;
+		}
+		Repairs r = s.repairs;
+		List<Map.Entry<Integer, Long>> years = new ArrayList<Map.Entry<Integer, Long>>(
+				pool.invoke(new RepairYears(r, hotel, room, 0, r.size)).entrySet());
+		Collections.sort(years, new Comparator<Map.Entry<Integer, Long>>() {
+			public int compare(Map.Entry<Integer, Long> a, Map.Entry<Integer, Long> b) {
+				return a.getValue().compareTo(b.getValue());
+			}
+		});
+		Map<Integer, Long> sorted = new LinkedHashMap<Integer, Long>();
+		for (Map.Entry<Integer, Long> e : years) {
+			sorted.put(e.getKey(), e.getValue());
+		}
+		return sorted;
+	}// end repairsPerYear
+
+	/**
+	 * Records a booking written by this process.
+	 */
+	public synchronized void recordBooking(long bid, long customer, long hotel, long room, Date night, long cents) {
+		int day = OccupancyIndex.epochDay(night);
+		Snapshot s = snapshot;
+		try {
+			if (pendingBookings != null) {
+				pendingBookings = pendingBookings.append(bid, customer, hotel, room, day, cents);
+			}
+			if (s != null) {
+				s.bookings = s.bookings.append(bid, customer, hotel, room, day, cents);
+			}
+		} catch (IllegalArgumentException e) {
+			// the key does not fit; the next load fails the same way
+			snapshot = null;
+		}
+	}// end recordBooking
+
+	/**
+	 * Records a repair written by this process.
+	 */
+	public synchronized void recordRepair(long rid, long hotel, long room, long company, Date date) {
+		Snapshot s = snapshot;
+		try {
+			if (pendingRepairs != null) {
+				pendingRepairs = pendingRepairs.append(rid, hotel, room, company, date);
+			}
+			if (s != null) {
+				s.repairs = s.repairs.append(rid, hotel, room, company, date);
+			}
+		} catch (IllegalArgumentException e) {
+			// the key does not fit; the next load fails the same way
+			snapshot = null;
+		}
+	}// end recordRepair
+
+	/**
+	 * Drops the store so that the next query reloads it, e.g. after a batch of
+	 * writes that were not recorded one by one.
+	 */
+	public synchronized void invalidate() {
+		snapshot = null;
+	}// end invalidate
+
+	/**
+	 * Loads (or reloads) the store from the Booking and Repair tables.
+	 *
+	 * @throws java.sql.SQLException when the rows cannot be read or a key does
+	 *                               not fit in an int
+	 */
+	public void load() throws SQLException {
+		Bookings b = new Bookings(1024);
+		Repairs r = new Repairs(1024);
+		synchronized (this) {
+			pendingBookings = new Bookings(16);
+			pendingRepairs = new Repairs(16);
+		}
+		try {
+			ConnectionPool.Pooled conn = esql.getPool().borrow();
+			ResultSet rs = null;
+			try {
+				// the driver only streams through a cursor inside a transaction
+				conn.connection.setAutoCommit(false);
+				PreparedStatement ps = conn.statements.prepare(SQL_BOOKINGS);
+				DBProject.setFetchSize(ps);
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					b = b.append(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+							OccupancyIndex.epochDay(rs.getDate(5)), rs.getLong(6));
+				}
+				rs.close();
+				ps = conn.statements.prepare(SQL_REPAIRS);
+				DBProject.setFetchSize(ps);
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					r = r.append(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getDate(5));
+				}
+			} catch (IllegalArgumentException e) {
+				throw new SQLException(e.getMessage());
+			} finally {
+				ConnectionPool.closeQuietly(rs);
+				esql.getPool().release(conn);
+			}
+			synchronized (this) {
+				// writes recorded after this point go to the new snapshot directly
+				snapshot = new Snapshot(replay(b, pendingBookings), replay(r, pendingRepairs));
+			}
+		} finally {
+			synchronized (this) {
+				pendingBookings = null;
+				pendingRepairs = null;
+			}
+		}
+	}// end load
+
+	/**
+	 * Appends the logged bookings the load did not read, i.e. those committed
+	 * after its scan started.
+	 */
+	static Bookings replay(Bookings b, Bookings log) {
+		Set<Long> unread = new HashSet<Long>();
+		for (int i = 0; i < log.size; i++) {
+			unread.add(log.bid[i]);
+		}
+		for (int i = 0; i < b.size && !unread.isEmpty(); i++) {
+			unread.remove(b.bid[i]);
+		}
+		for (int i = 0; i < log.size; i++) {
+			if (unread.contains(log.bid[i])) {
+				b = b.append(log.bid[i], log.customer[i], log.hotel[i], log.room[i], log.day[i], log.cents[i]);
+			}
+		}
+		return b;
+	}// end replay
+
+	/**
+	 * Appends the logged repairs the load did not read.
+	 */
+	static Repairs replay(Repairs r, Repairs log) {
+		Set<Long> unread = new HashSet<Long>();
+		for (int i = 0; i < log.size; i++) {
+			unread.add(log.rid[i]);
+		}
+		for (int i = 0; i < r.size && !unread.isEmpty(); i++) {
+			unread.remove(r.rid[i]);
+		}
+		for (int i = 0; i < log.size; i++) {
+			if (unread.contains(log.rid[i])) {
+				r = r.append(log.rid[i], log.hotel[i], log.room[i], log.company[i], log.day[i], log.year[i]);
+			}
+		}
+		return r;
+	}// end replay
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the heap used by the columns, or 0 when the store is not loaded.
+	 */
+	public long getBytes() {
+		Snapshot s = snapshot;
+		return s == null ? 0 : s.bookings.bytes() + s.repairs.bytes();
+	}// end getBytes
+
+	private Snapshot warmOrNull() {
+		if (!enabled) {
+			return null;
+		}
+		Snapshot s = snapshot;
+		if (s != null && System.currentTimeMillis() - s.loadedAt < ttlMillis) {
+			hits.incrementAndGet();
+			return s;
+		}
+		misses.incrementAndGet();
+		if (loading.compareAndSet(false, true)) {
+			loader.execute(new Runnable() {
+				public void run() {
+					try {
+						load();
+					} catch (SQLException e) {
+						// stay cold; the next query will try again
+					} finally {
+						loading.set(false);
+					}
+				}
+			});
+		}
+		return null;
+	}// end warmOrNull
+
+	static int narrow(long value) {
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Value does not fit in an int column: " + value);
+		}
+		return (int) value;
+	}// end narrow
+
+	static short yearOf(Date date) {
+		Calendar c = Calendar.getInstance();
+		c.setTime(date);
+		return (short) c.get(Calendar.YEAR);
+	}// end yearOf
+
+	private static double millisPerCall(long nanos, int calls) {
+		return nanos / 1e6 / calls;
+	}// end millisPerCall
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}// end usedHeap
+
+	/**
+	 * Entry point of the --columns mode: loads the store, prints its heap
+	 * footprint next to that of the same rows fetched through JDBC, and times
+	 * dbproject.columns.iterations runs of every report on both paths.
+	 */
+	public static void run(DBProject esql) throws SQLException {
+		int iterations = Math.max(1, Integer.getInteger("dbproject.columns.iterations", 20));
+		ColumnStore store = new ColumnStore(esql);
+
+		long start = System.nanoTime();
+		store.load();
+		long loadNanos = System.nanoTime() - start;
+		Snapshot s = store.snapshot;
+		Bookings b = s.bookings;
+		Repairs r = s.repairs;
+		System.out.println(String.format("Loaded %d bookings and %d repairs in %.2f s", b.size, r.size,
+				loadNanos / 1e9));
+		System.out.println(String.format("Columns:      %10.2f MB (%d bytes per booking, %d per repair)",
+				store.getBytes() / 1048576.0, Bookings.ROW_BYTES, Repairs.ROW_BYTES));
+
+		long before = usedHeap();
+		ResultSet bookings = esql.executeQuery(SQL_BOOKINGS);
+		ResultSet repairs = esql.executeQuery(SQL_REPAIRS);
+		long rowSets = usedHeap() - before;
+		System.out.println(String.format("JDBC row sets: %9.2f MB (measured, approximate)", rowSets / 1048576.0));
+		ConnectionPool.closeQuietly(bookings);
+		ConnectionPool.closeQuietly(repairs);
+		if (b.size == 0) {
+			return;
+		}
+
+		// report parameters taken from the loaded rows
+		java.util.Random rnd = new java.util.Random(42);
+		int[] rows = new int[iterations];
+		int[] repairRows = new int[iterations];
+		for (int i = 0; i < iterations; i++) {
+			rows[i] = rnd.nextInt(b.size);
+			repairRows[i] = r.size == 0 ? -1 : rnd.nextInt(r.size);
+		}
+		long columnar;
+		long jdbc;
+
+		columnar = System.nanoTime();
+		for (int i : rows) {
+			store.pool.invoke(new CountHotel(b, b.hotel[i], 0, b.size));
+		}
+		columnar = System.nanoTime() - columnar;
+		jdbc = System.nanoTime();
+		for (int i : rows) {
+			esql.executeQuery(DBProject.SQL_BOOKED_ROOMS, Long.valueOf(b.hotel[i]));
+		}
+		jdbc = System.nanoTime() - jdbc;
+		report("numberOfBookedRooms", columnar, jdbc, iterations);
+
+		columnar = System.nanoTime();
+		for (int i : rows) {
+			store.pool.invoke(new TopPrices(b, b.day[i], b.day[i] + 30, 10, 0, b.size));
+		}
+		columnar = System.nanoTime() - columnar;
+		jdbc = System.nanoTime();
+		for (int i : rows) {
+			esql.executeQuery(DBProject.SQL_TOP_K_PRICE_FOR_DATE_RANGE, date(b.day[i]), date(b.day[i] + 30),
+					Integer.valueOf(10));
+		}
+		jdbc = System.nanoTime() - jdbc;
+		report("topKHighestRoomPriceForADateRange", columnar, jdbc, iterations);
+
+		columnar = System.nanoTime();
+		for (int i : rows) {
+			store.pool.invoke(new CustomerCost(b, b.customer[i], b.hotel[i], b.day[i] - 365, b.day[i] + 365, 0,
+					b.size));
+		}
+		columnar = System.nanoTime() - columnar;
+		jdbc = System.nanoTime();
+		for (int i : rows) {
+			esql.executeQuery(DBProject.SQL_TOTAL_COST_FOR_CUSTOMER, Long.valueOf(b.customer[i]),
+					date(b.day[i] - 365), date(b.day[i] + 365), Long.valueOf(b.hotel[i]));
+		}
+		jdbc = System.nanoTime() - jdbc;
+		report("totalCostForCustomer", columnar, jdbc, iterations);
+
+		if (r.size == 0) {
+			return;
+		}
+		columnar = System.nanoTime();
+		for (int i : repairRows) {
+			store.pool.invoke(new RepairYears(r, r.hotel[i], r.room[i], 0, r.size));
+		}
+		columnar = System.nanoTime() - columnar;
+		jdbc = System.nanoTime();
+		for (int i : repairRows) {
+			esql.executeQuery(DBProject.SQL_REPAIRS_PER_YEAR, Long.valueOf(r.hotel[i]), Long.valueOf(r.room[i]));
+		}
+		jdbc = System.nanoTime() - jdbc;
+		report("numberOfRepairsForEachRoomPerYear", columnar, jdbc, iterations);
+	}// end run
+
+	private static void report(String operation, long columnarNanos, long jdbcNanos, int calls) {
+		System.out.println(String.format("%-36s columns %9.3f ms  jdbc %9.3f ms  (%.1fx)", operation,
+				millisPerCall(columnarNanos, calls), millisPerCall(jdbcNanos, calls),
+				columnarNanos == 0 ? 0 : (double) jdbcNanos / columnarNanos));
+	}// end report
+
+	/**
+	 * Returns the local date of an epoch day, the inverse of
+	 * OccupancyIndex.epochDay.
+	 */
+	private static java.sql.Date date(int epochDay) {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(1970, Calendar.JANUARY, 1);
+		c.add(Calendar.DAY_OF_MONTH, epochDay);
+		return new java.sql.Date(c.getTimeInMillis());
+	}// end date
+
+}// end ColumnStore
@@ -0,0 +1,509 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small bounded pool of physical PostgreSQL connections shared by all the
+ * DBProject operations.
+ *
+ * Connections are created lazily up to the maximum size, validated with a
+ * trivial query when they are borrowed after sitting idle for
+ * dbproject.pool.validateAfterMs (default 5000) or released after a statement
+ * failed on them, and closed by a background thread once they have been idle for longer
+ * than the idle timeout (never dropping below the minimum size). A borrow that
+ * cannot be served within the borrow timeout fails with an SQLException.
+ *
+ * A borrow made by a thread that runs a cancellable task (see setOwner) is
+ * tagged with the task, and cancel() stops the statements of that task with
+ * pg_cancel_backend(): the bundled driver does not implement
+ * Statement.cancel() and ignores query timeouts. The cancel is sent on a
+ * connection of its own, outside the pool, so that it does not wait for a
+ * borrow when the pool is exhausted by the very statements it cancels.
+ *
+ * The pool can be tuned with the following system properties:
+ * dbproject.pool.min, dbproject.pool.max, dbproject.pool.idleTimeoutMs,
+ * dbproject.pool.borrowTimeoutMs, dbproject.pool.validateAfterMs.
+ */
+public class ConnectionPool {
+
+	// the validation query. The bundled JDBC3 driver predates
+	// Connection.isValid(), so a round trip is the only reliable check.
+	private static final String VALIDATION_QUERY = "SELECT 1";
+
+	private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final String SQL_BACKEND_PID = "SELECT pg_backend_pid()";
+	private static final String SQL_CANCEL_BACKEND = "SELECT pg_cancel_backend(?)";
+
+	// the cancellable task the current thread runs, if any
+	private static final ThreadLocal<Object> OWNER = new ThreadLocal<Object>();
+
+	/**
+	 * A physical connection owned by the pool together with its prepared
+	 * statement cache and bookkeeping.
+	 */
+	static class Pooled {
+		final Connection connection;
+		final StatementCache statements;
+		// server process of the connection, -1 if unknown
+		final int backendPid;
+		volatile long lastUsedNanos;
+		// the task that borrowed the connection, guarded by this
+		Object owner;
+
+		Pooled(Connection connection, int backendPid) {
+			this.connection = connection;
+			this.statements = new StatementCache(connection);
+			this.backendPid = backendPid;
+			this.lastUsedNanos = System.nanoTime();
+		}
+	}// end Pooled
+
+	private final String url;
+	private final String user;
+	private final String passwd;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutNanos;
+	private final long borrowTimeoutNanos;
+	private final long validateAfterNanos;
+
+	// idle connections, most recently returned first so that the tail ages out
+	private final LinkedBlockingDeque<Pooled> idle = new LinkedBlockingDeque<Pooled>();
+	// number of physical connections currently open (idle + borrowed)
+	private final AtomicInteger total = new AtomicInteger();
+	// connections currently borrowed by a cancellable task
+	private final Set<Pooled> owned = Collections.newSetFromMap(new ConcurrentHashMap<Pooled, Boolean>());
+
+	// borrow metrics
+	private final AtomicLong borrows = new AtomicLong();
+	private final AtomicLong borrowTimeouts = new AtomicLong();
+	private final AtomicLong borrowWaitNanos = new AtomicLong();
+	private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private volatile boolean closed = false;
+	private final Thread evictor;
+
+	// sends pg_cancel_backend() for cancel(); opened on first use, guarded by
+	// cancelLock
+	private final Object cancelLock = new Object();
+	private Connection canceller = null;
+
+	/**
+	 * Creates a new pool and opens the minimum number of connections.
+	 *
+	 * @param url    the JDBC connection URL
+	 * @param user   the user name used to login to the database
+	 * @param passwd the user login password
+	 * @throws java.sql.SQLException when the initial connections cannot be made.
+	 */
+	public ConnectionPool(String url, String user, String passwd) throws SQLException {
+		this(url, user, passwd, Integer.getInteger("dbproject.pool.min", 1),
+				Integer.getInteger("dbproject.pool.max", 8),
+				Long.getLong("dbproject.pool.idleTimeoutMs", 60000L),
+				Long.getLong("dbproject.pool.borrowTimeoutMs", 5000L));
+	}// end ConnectionPool
+
+	public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize, long idleTimeoutMs,
+			long borrowTimeoutMs) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+		}
+		this.url = url;
+		this.user = user;
+		this.passwd = passwd;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+		this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+		this.validateAfterNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dbproject.pool.validateAfterMs", 5000L));
+
+		for (int i = 0; i < minSize; i++) {
+			total.incrementAndGet();
+			idle.offerFirst(open());
+		}
+
+		this.evictor = new Thread(new Runnable() {
+			public void run() {
+				evictLoop();
+			}
+		}, "dbproject-pool-evictor");
+		this.evictor.setDaemon(true);
+		this.evictor.start();
+	}// end ConnectionPool
+
+	/**
+	 * Borrows a validated connection from the pool, opening a new one if the pool
+	 * has not reached its maximum size. Every borrowed connection must be handed
+	 * back with release().
+	 *
+	 * @return a pooled connection in auto-commit mode
+	 * @throws java.sql.SQLException when no connection became available within
+	 *                               the borrow timeout.
+	 */
+	Pooled borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + borrowTimeoutNanos;
+		while (true) {
+			if (closed) {
+				throw new SQLException("Connection pool is closed");
+			}
+			Pooled p = idle.pollFirst();
+			if (p == null && tryReserve()) {
+				try {
+					p = open();
+				} catch (SQLException e) {
+					total.decrementAndGet();
+					throw e;
+				}
+			}
+			if (p == null) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					borrowTimeouts.incrementAndGet();
+					throw new SQLException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos)
+							+ " ms waiting for a database connection (" + total.get() + " in use)");
+				}
+				try {
+					// wake up periodically so that slots freed by discarded
+					// connections are noticed as well as returned connections
+					p = idle.pollFirst(Math.min(remaining, MAX_POLL_NANOS), TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a database connection");
+				}
+				if (p == null) {
+					continue;
+				}
+			}
+			if (System.nanoTime() - p.lastUsedNanos >= validateAfterNanos && !validate(p)) {
+				validationFailures.incrementAndGet();
+				discard(p);
+				continue;
+			}
+			recordWait(System.nanoTime() - start);
+			Object owner = OWNER.get();
+			if (owner != null) {
+				synchronized (p) {
+					p.owner = owner;
+				}
+				owned.add(p);
+			}
+			return p;
+		} // end while
+	}// end borrow
+
+	/**
+	 * Hands a borrowed connection back to the pool. Connections that were left
+	 * outside auto-commit mode are rolled back first.
+	 *
+	 * @param p a connection obtained from borrow()
+	 */
+	void release(Pooled p) {
+		release(p, false);
+	}// end release
+
+	/**
+	 * Hands a borrowed connection back to the pool; failed says a statement
+	 * failed on it, so it is validated before it is reused.
+	 */
+	void release(Pooled p, boolean failed) {
+		if (p == null) {
+			return;
+		}
+		if (owned.remove(p)) {
+			// waits for a cancel() of the owner that is in progress
+			synchronized (p) {
+				p.owner = null;
+			}
+		}
+		try {
+			if (!p.connection.getAutoCommit()) {
+				p.connection.rollback();
+				p.connection.setAutoCommit(true);
+			}
+			if (failed && !validate(p)) {
+				validationFailures.incrementAndGet();
+				discard(p);
+				return;
+			}
+		} catch (SQLException e) {
+			discard(p);
+			return;
+		}
+		if (closed) {
+			discard(p);
+			return;
+		}
+		p.lastUsedNanos = System.nanoTime();
+		idle.offerFirst(p);
+	}// end release
+
+	/**
+	 * Tags the connections the current thread borrows from now on with a task,
+	 * so that cancel(task) can stop their statements; null removes the tag.
+	 */
+	static void setOwner(Object task) {
+		if (task == null) {
+			OWNER.remove();
+		} else {
+			OWNER.set(task);
+		}
+	}// end setOwner
+
+	/**
+	 * Cancels the statements running on the connections borrowed by a task.
+	 * The task sees them fail with an SQLException. Connections the task has
+	 * released are left alone.
+	 *
+	 * @return the number of connections whose statement was cancelled
+	 * @throws java.sql.SQLException when the cancel request cannot be sent
+	 */
+	int cancel(Object task) throws SQLException {
+		List<Pooled> targets = new ArrayList<Pooled>();
+		for (Pooled p : owned) {
+			synchronized (p) {
+				if (p.owner == task && p.backendPid >= 0) {
+					targets.add(p);
+				}
+			}
+		}
+		if (targets.isEmpty()) {
+			return 0;
+		}
+		int cancelled = 0;
+		synchronized (cancelLock) {
+			if (closed) {
+				throw new SQLException("Connection pool is closed");
+			}
+			if (canceller == null) {
+				canceller = DriverManager.getConnection(url, user, passwd);
+			}
+			PreparedStatement ps = null;
+			try {
+				ps = canceller.prepareStatement(SQL_CANCEL_BACKEND);
+				for (Pooled p : targets) {
+					// holding the lock keeps the task from releasing p meanwhile,
+					// so the cancel cannot reach the next borrower of p
+					synchronized (p) {
+						if (p.owner == task) {
+							ps.setInt(1, p.backendPid);
+							closeQuietly(ps.executeQuery());
+							cancelled++;
+						}
+					}
+				}
+			} catch (SQLException e) {
+				// the next cancel opens a fresh connection
+				closeQuietly(canceller);
+				canceller = null;
+				throw e;
+			} finally {
+				closeQuietly(ps);
+			}
+		}
+		return cancelled;
+	}// end cancel
+
+	/**
+	 * Closes a connection that is known to be broken instead of returning it to
+	 * the pool.
+	 */
+	void discard(Pooled p) {
+		total.decrementAndGet();
+		closeQuietly(p.connection);
+	}// end discard
+
+	/**
+	 * Closes all idle connections and stops the evictor. Connections that are
+	 * still borrowed are closed as they are released.
+	 */
+	public void close() {
+		closed = true;
+		evictor.interrupt();
+		Pooled p;
+		while ((p = idle.pollFirst()) != null) {
+			discard(p);
+		}
+		synchronized (cancelLock) {
+			closeQuietly(canceller);
+			canceller = null;
+		}
+	}// end close
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getTotalConnections() {
+		return total.get();
+	}
+
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public long getBorrowCount() {
+		return borrows.get();
+	}
+
+	public long getBorrowTimeoutCount() {
+		return borrowTimeouts.get();
+	}
+
+	public long getTotalBorrowWaitNanos() {
+		return borrowWaitNanos.get();
+	}
+
+	public long getMaxBorrowWaitNanos() {
+		return maxBorrowWaitNanos.get();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailures.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns a one line summary of the pool state and borrow metrics.
+	 */
+	public String stats() {
+		long n = borrows.get();
+		long avgMicros = n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(borrowWaitNanos.get() / n);
+		return "pool[open=" + total.get() + " idle=" + idle.size() + " min=" + minSize + " max=" + maxSize
+				+ "] borrows=" + n + " timeouts=" + borrowTimeouts.get() + " avgWait=" + avgMicros + "us maxWait="
+				+ TimeUnit.NANOSECONDS.toMicros(maxBorrowWaitNanos.get()) + "us validationFailures="
+				+ validationFailures.get() + " evictions=" + evictions.get();
+	}// end stats
+
+	private boolean tryReserve() {
+		while (true) {
+			int n = total.get();
+			if (n >= maxSize) {
+				return false;
+			}
+			if (total.compareAndSet(n, n + 1)) {
+				return true;
+			}
+		}
+	}// end tryReserve
+
+	private Pooled open() throws SQLException {
+		Connection connection = DriverManager.getConnection(url, user, passwd);
+		int pid = -1;
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = connection.createStatement();
+			rs = stmt.executeQuery(SQL_BACKEND_PID);
+			if (rs.next()) {
+				pid = rs.getInt(1);
+			}
+		} catch (SQLException e) {
+			// statements of this connection cannot be cancelled
+		} finally {
+			closeQuietly(rs);
+			closeQuietly(stmt);
+		}
+		return new Pooled(connection, pid);
+	}// end open
+
+	private boolean validate(Pooled p) {
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			if (p.connection.isClosed()) {
+				return false;
+			}
+			stmt = p.connection.createStatement();
+			rs = stmt.executeQuery(VALIDATION_QUERY);
+			return rs.next();
+		} catch (SQLException e) {
+			return false;
+		} finally {
+			closeQuietly(rs);
+			closeQuietly(stmt);
+		}
+	}// end validate
+
+	private void recordWait(long nanos) {
+		borrows.incrementAndGet();
+		borrowWaitNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxBorrowWaitNanos.get())) {
+			if (maxBorrowWaitNanos.compareAndSet(max, nanos)) {
+				break;
+			}
+		}
+	}// end recordWait
+
+	private void evictLoop() {
+		long period = Math.max(TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2, 1000L);
+		while (!closed) {
+			try {
+				Thread.sleep(period);
+			} catch (InterruptedException e) {
+				return;
+			}
+			evictIdle();
+		}
+	}// end evictLoop
+
+	/**
+	 * Closes connections that have been idle for longer than the idle timeout
+	 * while keeping at least the minimum number of connections open.
+	 */
+	void evictIdle() {
+		long now = System.nanoTime();
+		List<Pooled> expired = new ArrayList<Pooled>();
+		Iterator<Pooled> it = idle.descendingIterator();
+		while (it.hasNext() && total.get() - expired.size() > minSize) {
+			Pooled p = it.next();
+			if (now - p.lastUsedNanos < idleTimeoutNanos) {
+				break;
+			}
+			if (idle.removeLastOccurrence(p)) {
+				expired.add(p);
+			}
+		}
+		for (Pooled p : expired) {
+			evictions.incrementAndGet();
+			discard(p);
+		}
+	}// end evictIdle
+
+	static void closeQuietly(AutoCloseable resource) {
+		if (resource == null) {
+			return;
+		}
+		try {
+			resource.close();
+		} catch (Exception e) {
+			// ignored.
+		}
+	}// end closeQuietly
+
+}// end ConnectionPool
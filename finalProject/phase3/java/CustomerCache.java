@@ -0,0 +1,149 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache resolving a customer name to the matching customer ids.
+ *
+ * Customer names are not unique, so every entry holds all the ids with that
+ * first and last name (possibly none). Names are normalized by trimming
+ * surrounding blanks, which the varchar name columns (migration V4) no longer
+ * pad with; the comparison stays case sensitive
+ * like the SQL equality it replaces. The cache keeps at most
+ * dbproject.customerCache.size names, evicting the least recently used, and
+ * reloads an entry once it is older than dbproject.customerCache.ttlMs.
+ */
+public class CustomerCache {
+
+	static final String SQL_CUSTOMER_IDS = "SELECT customerID FROM customer WHERE fName = ? AND lName = ? ORDER BY customerID";
+
+	private static final long[] NONE = new long[0];
+
+	private static class CachedIds {
+		final long[] ids;
+		final long loadedAt;
+
+		CachedIds(long[] ids, long loadedAt) {
+			this.ids = ids;
+			this.loadedAt = loadedAt;
+		}
+	}// end CachedIds
+
+	private final DBProject esql;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, CachedIds> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public CustomerCache(DBProject esql) {
+		this(esql, Integer.getInteger("dbproject.customerCache.size", 10000),
+				Long.getLong("dbproject.customerCache.ttlMs", TimeUnit.MINUTES.toMillis(10)));
+	}// end CustomerCache
+
+	public CustomerCache(DBProject esql, final int capacity, long ttlMillis) {
+		this.esql = esql;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, CachedIds>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedIds> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}// end CustomerCache
+
+	/**
+	 * Returns the ids of every customer with the given name, in ascending
+	 * order. The array is empty when nobody has that name.
+	 *
+	 * @throws java.sql.SQLException when the customers cannot be read
+	 */
+	public long[] resolve(String firstName, String lastName) throws SQLException {
+		String key = key(firstName, lastName);
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			CachedIds e = entries.get(key);
+			if (e != null && now - e.loadedAt < ttlMillis) {
+				hits++;
+				return e.ids.clone();
+			}
+			misses++;
+		}
+		ResultSet rs = esql.executeQuery(SQL_CUSTOMER_IDS, firstName.trim(), lastName.trim());
+		long[] ids = new long[4];
+		int n = 0;
+		while (rs.next()) {
+			if (n == ids.length) {
+				ids = Arrays.copyOf(ids, n * 2);
+			}
+			ids[n++] = rs.getLong(1);
+		}
+		ids = n == 0 ? NONE : Arrays.copyOf(ids, n);
+		synchronized (this) {
+			entries.put(key, new CachedIds(ids, now));
+		}
+		return ids.clone();
+	}// end resolve
+
+	/**
+	 * Records a customer added by this process. Names that are not cached are
+	 * left alone; they are read from the database on their first lookup.
+	 */
+	public synchronized void add(String firstName, String lastName, long customerId) {
+		String key = key(firstName, lastName);
+		CachedIds e = entries.get(key);
+		if (e == null) {
+			return;
+		}
+		long[] ids = Arrays.copyOf(e.ids, e.ids.length + 1);
+		ids[ids.length - 1] = customerId;
+		Arrays.sort(ids);
+		entries.put(key, new CachedIds(ids, e.loadedAt));
+	}// end add
+
+	/**
+	 * Drops the cached ids of one name.
+	 */
+	public synchronized void invalidate(String firstName, String lastName) {
+		entries.remove(key(firstName, lastName));
+	}// end invalidate
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns a one line summary of the cache counters.
+	 */
+	public synchronized String stats() {
+		return "customerCache[size=" + entries.size() + "] hits=" + hits + " misses=" + misses + " evictions="
+				+ evictions;
+	}// end stats
+
+	private static String key(String firstName, String lastName) {
+		return firstName.trim() + '\u0000' + lastName.trim();
+	}// end key
+
+}// end CustomerCache
@@ -1,741 +1,1509 @@
-/*
- * Template JAVA User Interface
- * =============================
- *
- * Database Management Systems
- * Department of Computer Science &amp; Engineering
- * University of California - Riverside
- *
- * Target DBMS: 'Postgres'
- *
- */
-import java.util.Calendar;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
-import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.Scanner;
-
-/**
- * This class defines a simple embedded SQL utility class that is designed to
- * work with PostgreSQL JDBC drivers.
- *
- */
-public class DBProject {
-
-	// reference to physical database connection.
-	private Connection _connection = null;
-
-	// handling the keyboard inputs through a BufferedReader
-	// This variable can be global for convenience.
-	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-
-	/**
-	 * Creates a new instance of DBProject
-	 *
-	 * @param hostname the MySQL or PostgreSQL server hostname
-	 * @param database the name of the database
-	 * @param username the user name used to login to the database
-	 * @param password the user login password
-	 * @throws java.sql.SQLException when failed to make a connection.
-	 */
-	public DBProject(String dbname, String dbport, String user, String passwd) throws SQLException {
-
-		System.out.print("Connecting to database...");
-		try {
-			// constructs the connection URL
-			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
-			System.out.println("Connection URL: " + url + "\n");
-
-			// obtain a physical connection
-			this._connection = DriverManager.getConnection(url, user, passwd);
-			System.out.println("Done");
-		} catch (Exception e) {
-			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
-			System.out.println("Make sure you started postgres on this machine");
-			System.exit(-1);
-		} // end catch
-	}// end DBProject
-
-	/**
-	 * Method to execute an update SQL statement. Update SQL instructions includes
-	 * CREATE, INSERT, UPDATE, DELETE, and DROP.
-	 *
-	 * @param sql the input SQL string
-	 * @throws java.sql.SQLException when update failed
-	 */
-	public void executeUpdate(String sql) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement();
-
-		// issues the update instruction
-		stmt.executeUpdate(sql);
-
-		// close the instruction
-		stmt.close();
-	}// end executeUpdate
-
-	/**
-	 * Method to execute an input query SQL instruction (i.e. SELECT). This method
-	 * issues the query to the DBMS and outputs the results to standard out.
-	 *
-	 * @param query the input query string
-	 * @return the number of rows returned
-	 * @throws java.sql.SQLException when failed to execute the query
-	 */
-	public ResultSet executeQuery(String query) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement();
-
-		// issues the query instruction
-		ResultSet rs = stmt.executeQuery(query);
-		return rs;
-	}// end executeQuery
-
-	public int runQuery(String query) throws SQLException {
-		// creates a statement object
-		Statement stmt = this._connection.createStatement();
-
-		// issues the query instruction
-		ResultSet rs = stmt.executeQuery(query);
-
-		/*
-		 ** obtains the metadata object for the returned result set. The metadata
-		 ** contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData();
-		int numCol = rsmd.getColumnCount();
-		int rowCount = 0;
-
-		// iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()) {
-			if (outputHeader) {
-				for (int i = 1; i <= numCol; i++) {
-					System.out.print(rsmd.getColumnName(i) + "\t");
-				}
-				System.out.println();
-				outputHeader = false;
-			}
-			for (int i = 1; i <= numCol; ++i)
-				System.out.print(rs.getString(i) + "\t");
-			System.out.println();
-			++rowCount;
-		} // end while
-		stmt.close();
-		return rowCount;
-	}// end executeQuery
-
-	/**
-	 * Method to close the physical connection if it is open.
-	 */
-	public void cleanup() {
-		try {
-			if (this._connection != null) {
-				this._connection.close();
-			} // end if
-		} catch (SQLException e) {
-			// ignored.
-		} // end try
-	}// end cleanup
-
-	/**
-	 * The main execution method
-	 *
-	 * @param args the command line arguments this inclues the <mysql|pgsql> <login
-	 *             file>
-	 */
-	public static void main(String[] args) {
-		if (args.length != 3) {
-			System.err.println("Usage: " + "java [-classpath <classpath>] " + DBProject.class.getName()
-					+ " <dbname> <port> <user>");
-			return;
-		} // end if
-
-		Greeting();
-		DBProject esql = null;
-		try {
-			// use postgres JDBC driver.
-			Class.forName("org.postgresql.Driver").newInstance();
-			// instantiate the DBProject object and creates a physical
-			// connection.
-			String dbname = args[0];
-			String dbport = args[1];
-			String user = args[2];
-			esql = new DBProject(dbname, dbport, user, "");
-
-			boolean keepon = true;
-			while (keepon) {
-				// These are sample SQL statements
-				System.out.println("MAIN MENU");
-				System.out.println("---------");
-				System.out.println("1. Add new customer");
-				System.out.println("2. Add new room");
-				System.out.println("3. Add new maintenance company");
-				System.out.println("4. Add new repair");
-				System.out.println("5. Add new Booking");
-				System.out.println("6. Assign house cleaning staff to a room");
-				System.out.println("7. Raise a repair request");
-				System.out.println("8. Get number of available rooms");
-				System.out.println("9. Get number of booked rooms");
-				System.out.println("10. Get hotel bookings for a week");
-				System.out.println("11. Get top k rooms with highest price for a date range");
-				System.out.println("12. Get top k highest booking price for a customer");
-				System.out.println("13. Get customer total cost occurred for a give date range");
-				System.out.println("14. List the repairs made by maintenance company");
-				System.out.println("15. Get top k maintenance companies based on repair count");
-				System.out.println("16. Get number of repairs occurred per year for a given hotel room");
-				System.out.println("17. < EXIT");
-
-				switch (readChoice()) {
-				case 1:
-					addCustomer(esql);
-					break;
-				case 2:
-					addRoom(esql);
-					break;
-				case 3:
-					addMaintenanceCompany(esql);
-					break;
-				case 4:
-					addRepair(esql);
-					break;
-				case 5:
-					bookRoom(esql);
-					break;
-				case 6:
-					assignHouseCleaningToRoom(esql);
-					break;
-				case 7:
-					repairRequest(esql);
-					break;
-				case 8:
-					numberOfAvailableRooms(esql);
-					break;
-				case 9:
-					numberOfBookedRooms(esql);
-					break;
-				case 10:
-					listHotelRoomBookingsForAWeek(esql);
-					break;
-				case 11:
-					topKHighestRoomPriceForADateRange(esql);
-					break;
-				case 12:
-					topKHighestPriceBookingsForACustomer(esql);
-					break;
-				case 13:
-					totalCostForCustomer(esql);
-					break;
-				case 14:
-					listRepairsMade(esql);
-					break;
-				case 15:
-					topKMaintenanceCompany(esql);
-					break;
-				case 16:
-					numberOfRepairsForEachRoomPerYear(esql);
-					break;
-				case 17:
-					keepon = false;
-					break;
-				default:
-					System.out.println("Unrecognized choice!");
-					break;
-				}// end switch
-			} // end while
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		} finally {
-			// make sure to cleanup the created table and close the connection.
-			try {
-				if (esql != null) {
-					System.out.print("Disconnecting from database...");
-					esql.cleanup();
-					System.out.println("Done\n\nBye !");
-				} // end if
-			} catch (Exception e) {
-				// ignored.
-			} // end try
-		} // end try
-	}// end main
-
-	public static void Greeting() {
-		System.out.println("\n\n*******************************************************\n"
-				+ "              User Interface      	               \n"
-				+ "*******************************************************\n");
-	}// end Greeting
-
-	/*
-	 * Reads the users choice given from the keyboard
-	 * 
-	 * @int
-	 **/
-	public static int readChoice() {
-		int input;
-		// returns only if a correct value is given.
-		do {
-			System.out.print("Please make your choice: ");
-			try { // read the integer, parse it and break.
-				input = Integer.parseInt(in.readLine());
-				break;
-			} catch (Exception e) {
-				System.out.println("Your input is invalid!");
-				continue;
-			} // end try
-		} while (true);
-		return input;
-	}// end readChoice
-	
-	public static boolean isValidString(String str) {
-		if(str.length() > 0) {
-		return true;
-		} else {
-		return false;
-		} 
-	} 
-
-	public static boolean isValidInt(String str) {
-		try {
-		for(int i = 0; i < str.length() - 1; i++) {
-			int num = Integer.parseInt(str.substring(i, i+1));
-		}
-		return true;
-		} catch(NumberFormatException e) {
-		return false;
-		}
-	}
-
-	public static void addCustomer(DBProject esql) {
-		// Given customer details add the customer in the DB
-		Scanner scan = new Scanner(System.in);
-		try {
-			long id = 0;
-			ResultSet res = esql.executeQuery("select max(customerID) from customer");
-			if (res.next()) {
-				id = res.getLong(1) + 1;
-			}
-			System.out.println("First name: ");
-			String first_name = scan.nextLine();
-			System.out.println("Last name: ");
-			String last_name = scan.nextLine();
-			System.out.println("Address: ");
-			String address = scan.nextLine();
-			System.out.println("Phone Number: ");
-			String phNo = scan.nextLine();
-			System.out.println("DOB(mm/dd/yyyy): ");
-			String dob = scan.nextLine();
-			System.out.println("Gender(Male, Female, or Other): ");
-			String gender = scan.nextLine();
-			if(isValidString(first_name) && isValidString(last_name) && isValidString(address) && isValidInt(phNo)) {
-
-			System.out.println("Your Information:\nCustomerID: " + id + "\nname: " + first_name + " " + last_name
-					+ "\naddress: " + address + "\nphone number: " + phNo + "\nDOB: " + dob + "\nGender: " + gender);
-			String sql = "insert into customer(customerID, fName, lName, Address, phNo, DOB, gender) values(" + id + ","
-					+ "\'" + first_name + "\'" + "," + "\'" + last_name + "\'" + "," + "\'" + address + "\'" + ","
-					+ "\'" + phNo + "\'" + "," + "\'" + dob + "\'" + "," + "\'" + gender + "\'" + ")";
-			esql.executeUpdate(sql);
-			} else {
-				return;
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// end addCustomer
-
-	public static void addRoom(DBProject esql) {
-		// Given room details add the room in the DB
-		Scanner scan = new Scanner(System.in);
-		try {
-			System.out.println("Hotel ID: ");
-			String hotelID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("RoomNo: ");
-			String roomNo = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Room Type: ");
-			String type = scan.nextLine();
-			if(isValidInt(hotelID) && isValidInt(roomNo) && isValidString(type)){
-			String sql = "insert into room(hotelID, roomNo, roomType) values(" + "\'" + hotelID + "\'" + "," + "\'"
-					+ roomNo + "\'" + "," + "\'" + type + "\'" + ")";
-			System.out.println("Add Room:\nHotel ID: " + hotelID + "\nroomNo: " + roomNo + "\nRoom Type: " + type);
-			esql.executeUpdate(sql);
-			} else {
-			return;
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// end addRoom
-
-	public static void addMaintenanceCompany(DBProject esql) {
-		// Given maintenance Company details add the maintenance company in the DB
-		Scanner scan = new Scanner(System.in);
-		try {
-			long id = 0;
-			ResultSet res = esql.executeQuery("select max(cmpID) from maintenanceCompany");
-			if (res.next()) {
-				id = res.getLong(1) + 1;
-			}
-			System.out.println("Company Name: ");
-			String name = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Address: ");
-			String address = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Certified?(Y/N): ");
-			String certified = scan.nextLine();
-			if (certified == "Y") {
-				certified = "TRUE";
-			} else {
-				certified = "FALSE";
-			}
-			if(isValidString(name) && isValidString(address)){
-			String sql = "insert into maintenancecompany(cmpID, name, address, isCertified) values(" + "\'" + id + "\'"
-					+ "," + "\'" + name + "\'" + "," + "\'" + address + "\'" + "," + "\'" + certified + "\'" + ")";
-			System.out.println("Add Maintenance Company:\nCompany ID: " + id + "\nCompany Name: " + name + "\nAddress: "
-					+ address + "\nCertified: " + certified);
-			esql.executeUpdate(sql);
-			} else {
-			return;
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// endi addMaintenanceCompany
-
-	public static void addRepair(DBProject esql) {
-		// Given repair details add repair in the DB
-		Scanner scan = new Scanner(System.in);
-		try {
-			long id = 0;
-			ResultSet res = esql.executeQuery("select max(rID) from repair");
-			if (res.next()) {
-				id = res.getLong(1) + 1;
-			}
-			System.out.println("Hotel ID: ");
-			String hotelID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("RoomNo: ");
-			String roomNo = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Maintenance Company ID: ");
-			String cmpID = scan.nextLine();
-			System.out.println("Repair Date(mm/dd/yyyy): ");
-			String date = scan.nextLine();
-			System.out.println("Description: ");
-			String description = scan.nextLine();
-			System.out.println("Repair Type: ");
-			String type = scan.nextLine();
-			if(isValidInt(hotelID) && isValidInt(roomNo) && isValidInt(cmpID) && isValidString(description) && isValidString(type)){
-			System.out.println("Repair ID: " + id + "\nHotel ID: " + hotelID + "\nRoomNo: " + roomNo
-					+ "\nMaintenance Company ID: " + cmpID + "\nRepair Date: " + date + "\nDescription: " + description
-					+ "\nRepair Type: " + type);
-			String sql = "insert into repair(rid, hotelID, roomNo, mcompany, repairdate, description, repairtype) values("
-					+ "\'" + id + "\'" + "," + "\'" + hotelID + "\'" + "," + "\'" + roomNo + "\'" + "," + "\'" + cmpID
-					+ "\'" + "," + "\'" + date + "\'" + "," + "\'" + description + "\'" + "," + "\'" + type + "\'"
-					+ ")";
-			esql.executeUpdate(sql);
-			} else {
-			return;
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-
-	}// end addRepair
-
-	public static void bookRoom(DBProject esql) {
-		// Given hotelID, roomNo and customer Name create a booking in the DB
-		Scanner scan = new Scanner(System.in);
-		try {
-			long id = 0;
-			ResultSet res = esql.executeQuery("select max(bID) from booking");
-			if (res.next()) {
-				id = res.getLong(1) + 1;
-			}
-			System.out.println("Customer ID: ");
-			String cID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Hotel ID: ");
-			String hotelID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("RoomNo: ");
-			String roomNo = scan.nextLine();
-			System.out.println("Booking Date(mm/dd/yyyy): ");
-			String date = scan.nextLine();
-			System.out.println("Number of People: ");
-			String numPpl = scan.nextLine();
-			System.out.println("Price: ");
-			String price = scan.nextLine();
-			if(isValidInt(cID) && isValidInt(hotelID) && isValidInt(roomNo) && isValidInt(numPpl)) {
-			System.out.println("Booking ID: " + id + "\nCustomer ID: " + cID + "\nHotel ID: " + hotelID + "\nRoomNo: "
-					+ roomNo + "\nBooking Date: " + date + "\nNumber of People: " + numPpl + "\nPrice: " + price);
-			String sql = "insert into booking(bid, customer, hotelID, roomNo, bookingdate, noofpeople, price) values("
-					+ "\'" + id + "\'" + "," + "\'" + cID + "\'" + "," + "\'" + hotelID + "\'" + "," + "\'" + roomNo
-					+ "\'" + "," + "\'" + date + "\'" + "," + "\'" + numPpl + "\'" + "," + "\'" + price + "\'" + ")";
-			esql.executeUpdate(sql);
-			} else {
-			return;
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// end bookRoom
-
-	public static void assignHouseCleaningToRoom(DBProject esql) {
-		// Given Staff SSN, HotelID, roomNo Assign the staff to the room
-		Scanner scan = new Scanner(System.in);
-		try {
-			long id = 0;
-			ResultSet res = esql.executeQuery("select max(asgID) from assigned");
-			if (res.next()) {
-				id = res.getLong(1) + 1;
-			}
-			System.out.println("Staff ID: ");
-			String sID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Hotel ID: ");
-			String hotelID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("RoomNo: ");
-			String roomNo = scan.nextLine();
-			if(isValidInt(sID) && isValidInt(hotelID) && isValidInt(roomNo)) {
-			System.out.println(
-					"Assignment ID: " + id + "\nStaff ID: " + sID + "\nHotel ID: " + hotelID + "\nRoomNo: " + roomNo);
-			String sql = "insert into assigned(asgid, staffID, hotelID, roomNo) values(" + "\'" + id + "\'" + "," + "\'"
-					+ sID + "\'" + "," + "\'" + hotelID + "\'" + "," + "\'" + roomNo + "\'" + ")";
-			esql.executeUpdate(sql);
-			} else {
-			return; 
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// end assignHouseCleaningToRoom
-
-	public static void repairRequest(DBProject esql) {
-		// Given a hotelID, Staff SSN, roomNo, repairID , date create a repair request
-		// in the DB
-		Scanner scan = new Scanner(System.in);
-		try {
-			long id = 0;
-			ResultSet res = esql.executeQuery("select max(reqID) from request");
-			if (res.next()) {
-				id = res.getLong(1) + 1;
-			}
-			System.out.println("Manager ID: ");
-			String mID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Repair ID: ");
-			String rID = scan.nextLine();
-			// scan.nextLine();
-			System.out.println("Request Date(mm/dd/yyyy): ");
-			String date = scan.nextLine();
-			System.out.println("Description: ");
-			String description = scan.nextLine();
-			if(isValidInt(mID) && isValidInt(rID) && isValidString(description)){
-			System.out.println("Request ID: " + id + "\nManager ID: " + mID + "\nRepair ID: " + rID + "\nRequest Date: "
-					+ date + "\nDescription: " + description);
-			String sql = "insert into request(reqid, managerID, repairID, requestdate, description) values(" + "\'" + id
-					+ "\'" + "," + "\'" + mID + "\'" + "," + "\'" + rID + "\'" + "," + "\'" + date + "\'" + "," + "\'"
-					+ description + "\'" + ")";
-			esql.executeUpdate(sql);
-			} else {
-			return;
-			}
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// end repairRequest
-
-	public static void numberOfAvailableRooms(DBProject esql){
-		// Given a hotelID, get the count of rooms available 
-		try{     
-		Scanner scan = new Scanner(System.in);
-		System.out.println("Enter the hotel ID: ");     
-				String hotelID = scan.nextLine();
-				String sql = "SELECT COUNT(*) FROM room WHERE room.hotelID=" + hotelID;
-		System.out.println("Number of available rooms: ");     
-		int count = esql.runQuery(sql);
-		//     System.out.println(count);
-		}catch(Exception e){
-		System.err.println(e.getMessage());
-  		}
-	}//end numberOfAvailableRooms
-
-	public static void numberOfBookedRooms(DBProject esql){
-		// Given a hotelID, get the count of rooms booked
-		try{
-		System.out.println("Enter the hotel ID: ");
-		Scanner scan = new Scanner(System.in);
-		String hotelID = scan.nextLine();
-		String sql = "SELECT COUNT(*) FROM booking WHERE booking.hotelID=" + hotelID;
-		System.out.println("Number of booked rooms: ");
-		int count = esql.runQuery(sql);
-		//System.out.println(count);
-		}catch(Exception e){
-		System.err.println(e.getMessage());
-		}
-	 }//end numberOfBookedRooms
-
-	 public static Date addDays(Date date, int numDaysToAdd){
-		Calendar cal = Calendar.getInstance();
-		cal.setTime(date);
-		cal.add(Calendar.DATE, numDaysToAdd);
-		return cal.getTime();
-	}   
-	public static void listHotelRoomBookingsForAWeek(DBProject esql){
-			  // Given a hotelID, date - list all the rooms available for a week(including the input date) 
-		try{
-		 	System.out.println("Enter the hotel ID: ");
-			Scanner scan = new Scanner(System.in);
-			String hotelID = scan.nextLine();
-		 	System.out.println("Enter desired Date (MM/dd/yyyy): ");
-			String dateEdit = scan.nextLine();
-			SimpleDateFormat formatter = new SimpleDateFormat("MM/dd/yyyy");
-			Date date = formatter.parse(dateEdit);
-			Date datetwo = addDays(date, 1);
-			Date dateThree = addDays(date, 2);
-			Date dateFour = addDays(date, 3);
-			Date dateFive = addDays(date, 4);
-			Date dateSix = addDays(date, 5);
-			Date dateSeven = addDays(date, 6);
-			String sql = "SELECT room FROM Room, (SELECT booking.roomNo FROM booking WHERE booking.hotelID = " + hotelID +
-			" AND "+"booking.bookingDate <> " + "'"+date+"' AND "+"booking.bookingDate <>" + "'"+datetwo+"' AND "+"booking.bookingDate <> " + "'"+dateThree+"' AND "+"booking.bookingDate <> " + "'"+dateFour+"' AND "+"booking.bookingDate <> " + "'"+dateFive+"' AND "+"booking.bookingDate <> " + "'"+dateSix+"' AND "+"booking.bookingDate <> " + "'"+dateSeven+"' ) AS x WHERE room.hotelID = "+hotelID+" AND room.roomNo = x.roomNo";
-			System.out.println("Rooms available for a week including your start date: ");
-			int count = esql.runQuery(sql);
-		}catch(Exception e){
-		System.err.println(e.getMessage());
-		}
-	}//end listHotelRoomBookingsForAWeek
-
-	public static void topKHighestRoomPriceForADateRange(DBProject esql){
-		// List Top K Rooms with the highest price for a given date range
-		try{
-			Scanner scan = new Scanner(System.in);
-			System.out.println("Enter number of rooms to be returned: ");		
-			String kRooms = scan.nextLine();
-			System.out.println("Enter the from date: ");
-			String dateBegin = scan.nextLine();
-  			System.out.println("Enter the until date: ");
-			SimpleDateFormat formatter = new SimpleDateFormat("MM/dd/yyyy");
-		  	String dateEnd = scan.nextLine();
-			String sql = "SELECT * FROM  booking WHERE booking.bookingDate BETWEEN '"+dateBegin+"' AND '"+dateEnd+"' ORDER BY booking.price DESC LIMIT " + kRooms;
-			System.out.println("Top K Rooms with highest price for given date range: ");
-			int count = esql.runQuery(sql);
-			System.out.println(count);
-		}
-		catch(Exception e){
-			System.err.println(e.getMessage());
-		}
-	}//end topKHighestRoomPriceForADateRange
-
-	public static void topKHighestPriceBookingsForACustomer(DBProject esql){
-		// Given a customer Name, List Top K highest booking price for a customer 
-		try{
-			Scanner scan = new Scanner(System.in);
-			System.out.println("Enter K for Kth highest price you'd like (with 0 being highest): ");
-			String kRooms = scan.nextLine();
-			System.out.println("Enter the customer's first name: ");
-			String cusFirstName = scan.nextLine();
-			System.out.println("Enter the customer's last name: ");
-			String cusLastName = scan.nextLine();
-  
-  			String sql = "SELECT booking.price FROM (SELECT *  FROM booking WHERE booking.customer = (SELECT customer.customerID FROM customer  WHERE customer.fName = '"+cusFirstName+"' AND customer.lName = '"+cusLastName+"') ORDER BY booking.price DESC) AS booking LIMIT 1 OFFSET "+kRooms;
-  
-			int count = esql.runQuery(sql);
-			System.out.println(count);
-		}
-			catch(Exception e){
-			System.err.println(e.getMessage());
-		}
-   
-	}//end topKHighestPriceBookingsForACustomer
-
-	public static void totalCostForCustomer(DBProject esql){
-		// Given a hotelID, customer Name and date range get the total cost incurred by the customer
-		try{
-			Scanner scan = new Scanner(System.in);
-			System.out.println("Enter the hotel ID: ");
-			String hotelID = scan.nextLine();
-			System.out.println("Enter the customer's first name: ");
-			String cusFirstName = scan.nextLine();
-			System.out.println("Enter the customer's last name: ");
-			String cusLastName = scan.nextLine(); 
-			System.out.println("Enter the from date: ");
-			String dateBegin = scan.nextLine();
-  			System.out.println("Enter the until date: ");
-			SimpleDateFormat formatter = new SimpleDateFormat("MM/dd/yyyy");
-			String dateEnd = scan.nextLine();
-  
-			String sql = "SELECT SUM(booking.price) FROM booking WHERE booking.customer = (SELECT customer.customerID FROM customer  WHERE customer.fName = '"+cusFirstName+"' AND customer.lName = '"+cusLastName+"') AND (booking.bookingDate BETWEEN '"+dateBegin+"' AND '"+dateEnd+"') AND (booking.hotelID = "+hotelID+")";
-			int count = esql.runQuery(sql);
-			System.out.println(count);
-		}
-		catch(Exception e){
-			System.err.println(e.getMessage());
-		}
-   
-   }//end totalCostForCustomer
-
-	public static void listRepairsMade(DBProject esql) {
-		// Given a Maintenance company name list all the repairs along with repairType,
-		// hotelID and roomNo
-		Scanner scan = new Scanner(System.in);
-		try {
-			String query = "select r.rid, r.repairtype, r.hotelid, r.roomno from repair r where r.mcompany = (select m.cmpid from maintenancecompany m where m.name = ";
-			System.out.println("Maintenance Company Name: ");
-			String input = scan.nextLine();
-			System.out.println("Maintenance Company Name: " + input);
-			String new_input = "\'" + input + "\'";
-			query += new_input + ")";
-			int rowCount = esql.runQuery(query);
-			System.out.println("total row(s): " + rowCount);
-		} catch (Exception e) {
-			System.err.println(e.getMessage());
-		}
-	}// end listRepairsMade
-
-	public static void topKMaintenanceCompany(DBProject esql){
-		// List Top K Maintenance Company Names based on total repair count (descending order)
-   		try{
-			Scanner scan = new Scanner(System.in); 
-			System.out.println("Enter K amount of companies desired: ");
-			String numComps = scan.nextLine();
-			String sql = "SELECT maintenanceCompany.name FROM maintenanceCompany, (SELECT mCompany, COUNT(*) as numRepairs FROM Repair GROUP BY mCompany ORDER BY numRepairs DESC LIMIT "+numComps+") AS x WHERE maintenanceCompany.cmpID = x.mCompany";
-			int count = esql.runQuery(sql);
-			System.out.println(count);
-		}
-		catch(Exception e){
-			System.err.println(e.getMessage());
-		}
-	}//end topKMaintenanceCompany
-
-	public static void numberOfRepairsForEachRoomPerYear(DBProject esql){
-		// Given a hotelID, roomNo, get the count of repairs per year
-		try{
-			Scanner scan = new Scanner(System.in);
-			System.out.println("Enter the hotel ID: ");
-			String hotelID = scan.nextLine();
-			System.out.println("Enter the room number: ");
-			String roomNo = scan.nextLine();
-			String sql = "SELECT EXTRACT(YEAR FROM repair.repairDate), COUNT(*) as numRepairs FROM Repair WHERE repair.hotelID = "+hotelID+" AND repair.roomNo = "+roomNo+" GROUP BY EXTRACT(YEAR FROM repair.repairDate) ORDER BY numRepairs"; 
-			
-			int count = esql.runQuery(sql);
-			System.out.println(count);
-		}
-		catch(Exception e){
-			System.err.println(e.getMessage());
-		} 
-	}//end listRepairsMade
-
-}// end DBProject
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ *
+ */
+public class DBProject {
+
+	// pool of physical database connections shared by all operations.
+	private ConnectionPool _pool = null;
+
+	// sends the queries of read-only operations to dbproject.replica.url.
+	private ReplicaRouter _router = null;
+
+	// allocator of primary keys for the inserts.
+	private IdAllocator _ids = null;
+
+	// room x day occupancy bitmap for the availability queries.
+	private OccupancyIndex _occupancy = null;
+
+	// customer name -> customerID cache for the customer reports.
+	private CustomerCache _customers = null;
+
+	// repair count per maintenance company for the top-K report.
+	private RepairLeaderboard _leaderboard = null;
+
+	// most expensive bookings per month, day and customer for the price reports.
+	private PriceIndex _prices = null;
+
+	// columnar Booking and Repair snapshot for the scanning reports.
+	private ColumnStore _columns = null;
+
+	// latency histograms of the statements of every operation.
+	private Metrics _metrics = null;
+
+	// statements slower than dbproject.slowQuery.thresholdMs, with their plans.
+	private SlowQueryLog _slowQueries = null;
+
+	// write-behind queue of the menu inserts when dbproject.groupCommit.enabled.
+	private GroupCommit _groupCommit = null;
+
+	private static final Object[] NO_PARAMS = new Object[0];
+
+	// the schema migration the statements need: ON CONFLICT of SQL_BOOK_ROOM
+	// relies on the unique constraint of V3, price_cents and the integer keys
+	// on V4, repairs and their requests on the locking triggers of V5
+	static final int SCHEMA_VERSION = 5;
+
+	// rows fetched per round trip when runQuery streams a result through a
+	// cursor; the bundled pg73 driver has no cursor support and reads whole results
+	static final int FETCH_SIZE = Integer.getInteger("dbproject.fetchSize", 1000);
+
+	// output format of runQuery (tab, csv or jsonl) and optional file to append to
+	static final ResultFormat OUTPUT_FORMAT = ResultFormat.forName(System.getProperty("dbproject.output.format", "tab"));
+	static final String OUTPUT_FILE = System.getProperty("dbproject.output.file");
+
+	// handling the keyboard inputs through a BufferedReader
+	// This variable can be global for convenience.
+	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+	/**
+	 * Creates a new instance of DBProject
+	 *
+	 * @param hostname the MySQL or PostgreSQL server hostname
+	 * @param database the name of the database
+	 * @param username the user name used to login to the database
+	 * @param password the user login password
+	 * @throws java.sql.SQLException when failed to make a connection.
+	 */
+	public DBProject(String dbname, String dbport, String user, String passwd) throws SQLException {
+
+		System.out.print("Connecting to database...");
+		try {
+			// constructs the connection URL
+			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+			System.out.println("Connection URL: " + url + "\n");
+
+			// open the connection pool
+			this._pool = new ConnectionPool(url, user, passwd);
+			ConnectionPool replica = null;
+			String replicaUrl = System.getProperty("dbproject.replica.url");
+			if (replicaUrl != null) {
+				System.out.println("Replica URL: " + replicaUrl + "\n");
+				replica = new ConnectionPool(replicaUrl, System.getProperty("dbproject.replica.user", user),
+						System.getProperty("dbproject.replica.password", passwd), 0,
+						Integer.getInteger("dbproject.replica.pool.max", this._pool.getMaxSize()),
+						Long.getLong("dbproject.pool.idleTimeoutMs", 60000L),
+						Long.getLong("dbproject.pool.borrowTimeoutMs", 5000L));
+			}
+			this._router = new ReplicaRouter(this._pool, replica);
+			if (GroupCommit.isEnabled()) {
+				this._groupCommit = new GroupCommit(this._pool, this._router);
+			}
+			this._metrics = new Metrics(this._pool);
+			this._slowQueries = new SlowQueryLog(this);
+			this._ids = new IdAllocator(this);
+			this._occupancy = new OccupancyIndex(this);
+			this._customers = new CustomerCache(this);
+			this._leaderboard = new RepairLeaderboard(this);
+			this._prices = new PriceIndex(this);
+			this._columns = new ColumnStore(this);
+			System.out.println("Done");
+		} catch (Exception e) {
+			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
+			System.out.println("Make sure you started postgres on this machine");
+			System.exit(-1);
+		} // end catch
+	}// end DBProject
+
+	/**
+	 * Method to execute an update SQL statement. Update SQL instructions includes
+	 * CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 *
+	 * @param sql the input SQL string
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public void executeUpdate(String sql) throws SQLException {
+		long start = System.nanoTime();
+		ConnectionPool.Pooled conn = borrow(this._pool, start);
+		long borrowed = System.nanoTime();
+		long rows = -1;
+		Statement stmt = null;
+		try {
+			// creates a statement object
+			stmt = conn.connection.createStatement();
+
+			// issues the update instruction
+			rows = stmt.executeUpdate(sql);
+			this._router.afterWrite(conn);
+		} finally {
+			// close the instruction and hand the connection back
+			ConnectionPool.closeQuietly(stmt);
+			this._pool.release(conn, rows < 0);
+			finish(start, borrowed, rows, sql, NO_PARAMS);
+		}
+	}// end executeUpdate
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT). This method
+	 * issues the query to the DBMS and returns a disconnected copy of the results,
+	 * so the statement and connection are released before it returns.
+	 *
+	 * @param query the input query string
+	 * @return the rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultSet executeQuery(String query) throws SQLException {
+		long start = System.nanoTime();
+		ConnectionPool pool = this._router.forQuery();
+		ConnectionPool.Pooled conn = borrow(pool, start);
+		long borrowed = System.nanoTime();
+		long rowCount = -1;
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			// creates a statement object
+			stmt = conn.connection.createStatement();
+
+			// issues the query instruction and copies the rows out
+			rs = stmt.executeQuery(query);
+			CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+			rows.populate(rs);
+			rowCount = rows.size();
+			return rows;
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			ConnectionPool.closeQuietly(stmt);
+			pool.release(conn, rowCount < 0);
+			finish(start, borrowed, rowCount, query, NO_PARAMS);
+		}
+	}// end executeQuery
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT). This method
+	 * issues the query to the DBMS and outputs the results to standard out.
+	 *
+	 * @param query the input query string
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int runQuery(String query) throws SQLException {
+		long start = System.nanoTime();
+		ConnectionPool pool = this._router.forQuery();
+		ConnectionPool.Pooled conn = borrow(pool, start);
+		long borrowed = System.nanoTime();
+		int rowCount = -1;
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			// the driver only streams through a cursor inside a transaction
+			conn.connection.setAutoCommit(false);
+
+			// creates a statement object
+			stmt = conn.connection.createStatement();
+			setFetchSize(stmt);
+
+			// issues the query instruction
+			rs = stmt.executeQuery(query);
+			rowCount = printResult(rs);
+			return rowCount;
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			ConnectionPool.closeQuietly(stmt);
+			pool.release(conn, rowCount < 0);
+			finish(start, borrowed, rowCount, query, NO_PARAMS);
+		}
+	}// end runQuery
+
+	/**
+	 * Method to execute a parameterized update SQL statement through the prepared
+	 * statement cache of a pooled connection.
+	 *
+	 * @param template the SQL text with ? placeholders
+	 * @param params   the values bound to the placeholders, in order
+	 * @return the number of rows affected
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public int executeUpdate(String template, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		ConnectionPool.Pooled conn = borrow(this._pool, start);
+		long borrowed = System.nanoTime();
+		int rows = -1;
+		try {
+			PreparedStatement ps = conn.statements.prepare(template);
+			StatementCache.bind(ps, params);
+			rows = ps.executeUpdate();
+			this._router.afterWrite(conn);
+			return rows;
+		} finally {
+			this._pool.release(conn, rows < 0);
+			finish(start, borrowed, rows, template, params);
+		}
+	}// end executeUpdate
+
+	/**
+	 * Method to execute a parameterized query through the prepared statement
+	 * cache of a pooled connection and return a disconnected copy of the rows.
+	 *
+	 * @param template the SQL text with ? placeholders
+	 * @param params   the values bound to the placeholders, in order
+	 * @return the rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultSet executeQuery(String template, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		ConnectionPool pool = this._router.forQuery();
+		ConnectionPool.Pooled conn = borrow(pool, start);
+		long borrowed = System.nanoTime();
+		long rowCount = -1;
+		ResultSet rs = null;
+		try {
+			PreparedStatement ps = conn.statements.prepare(template);
+			StatementCache.bind(ps, params);
+			rs = ps.executeQuery();
+			CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+			rows.populate(rs);
+			rowCount = rows.size();
+			return rows;
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			pool.release(conn, rowCount < 0);
+			finish(start, borrowed, rowCount, template, params);
+		}
+	}// end executeQuery
+
+	/**
+	 * Method to execute a parameterized query through the prepared statement
+	 * cache of a pooled connection and output the results to standard out.
+	 *
+	 * @param template the SQL text with ? placeholders
+	 * @param params   the values bound to the placeholders, in order
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int runQuery(String template, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		ConnectionPool pool = this._router.forQuery();
+		ConnectionPool.Pooled conn = borrow(pool, start);
+		long borrowed = System.nanoTime();
+		int rowCount = -1;
+		ResultSet rs = null;
+		try {
+			// the driver only streams through a cursor inside a transaction
+			conn.connection.setAutoCommit(false);
+			PreparedStatement ps = conn.statements.prepare(template);
+			StatementCache.bind(ps, params);
+			setFetchSize(ps);
+			rs = ps.executeQuery();
+			rowCount = printResult(rs);
+			return rowCount;
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			pool.release(conn, rowCount < 0);
+			finish(start, borrowed, rowCount, template, params);
+		}
+	}// end runQuery
+
+	/**
+	 * Executes an insert of the menu: through the group commit queue when it
+	 * is enabled, waiting for the commit of the insert's group, and as an
+	 * auto-commit statement otherwise.
+	 *
+	 * @return the number of rows inserted
+	 * @throws java.sql.SQLException when the insert failed
+	 */
+	public int executeInsert(String template, Object... params) throws SQLException {
+		if (this._groupCommit == null) {
+			return executeUpdate(template, params);
+		}
+		long start = System.nanoTime();
+		GroupCommit.Entry entry = null;
+		int rows = -1;
+		try {
+			entry = this._groupCommit.submit(template, params);
+			rows = entry.await();
+			return rows;
+		} finally {
+			// the time in the queue counts as connection wait
+			long written = entry == null || entry.writtenAt == 0 ? start : entry.writtenAt;
+			finish(start, written, rows, template, params);
+		}
+	}// end executeInsert
+
+	/**
+	 * Asks the driver to fetch the rows of the statement FETCH_SIZE at a time.
+	 * Drivers without cursor support, like the bundled pg73 one whose
+	 * setFetchSize always throws, read the whole result at once instead.
+	 */
+	static void setFetchSize(Statement stmt) {
+		try {
+			stmt.setFetchSize(FETCH_SIZE);
+		} catch (SQLException e) {
+			// not implemented by the driver; the result is read in one go
+		}
+	}// end setFetchSize
+
+	/**
+	 * Records the metrics of a statement that ran on a connection borrowed at
+	 * borrowed nanos, and logs it when it was slow.
+	 */
+	private void finish(long start, long borrowed, long rows, String sql, Object[] params) {
+		long execNanos = System.nanoTime() - borrowed;
+		this._metrics.record(borrowed - start, execNanos, rows);
+		this._slowQueries.check(sql, params, execNanos, rows);
+	}// end finish
+
+	/**
+	 * Borrows a pooled connection, recording a failed borrow as a failed
+	 * statement of the current operation.
+	 */
+	private ConnectionPool.Pooled borrow(ConnectionPool pool, long start) throws SQLException {
+		try {
+			return pool.borrow();
+		} catch (SQLException e) {
+			this._metrics.record(System.nanoTime() - start, 0, -1);
+			throw e;
+		}
+	}// end borrow
+
+	/**
+	 * Streams every row of the result set to standard out (or the file named
+	 * by dbproject.output.file) in the configured output format, through a
+	 * single buffered writer.
+	 *
+	 * @return the number of rows printed
+	 */
+	private static int printResult(ResultSet rs) throws SQLException {
+		Writer out = null;
+		try {
+			if (OUTPUT_FILE != null) {
+				out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(OUTPUT_FILE, true), "UTF-8"),
+						1 << 16);
+			} else {
+				out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+			}
+			return OUTPUT_FORMAT.write(rs, out);
+		} catch (IOException e) {
+			throw new SQLException("Unable to write the query result: " + e.getMessage());
+		} finally {
+			try {
+				if (out != null && OUTPUT_FILE != null) {
+					out.close();
+				} else if (out != null) {
+					// System.out stays open
+					out.flush();
+				}
+			} catch (IOException e) {
+				// ignored.
+			}
+		}
+	}// end printResult
+
+	/**
+	 * Prints rows computed by an in-memory index through the same output
+	 * format as runQuery, so that a menu entry prints the same whether or not
+	 * the index could answer.
+	 *
+	 * @param labels the column labels of the equivalent query
+	 * @param types  the java.sql.Types of the columns
+	 * @return the number of rows printed
+	 */
+	static int printRows(String[] labels, int[] types, List<Object[]> rows) throws SQLException {
+		RowSetMetaDataImpl md = new RowSetMetaDataImpl();
+		md.setColumnCount(labels.length);
+		for (int i = 0; i < labels.length; i++) {
+			md.setColumnName(i + 1, labels[i]);
+			md.setColumnLabel(i + 1, labels[i]);
+			md.setColumnType(i + 1, types[i]);
+		}
+		CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+		rs.setMetaData(md);
+		for (Object[] row : rows) {
+			// a row is inserted before the cursor, so append from the last one
+			rs.last();
+			rs.moveToInsertRow();
+			for (int i = 0; i < row.length; i++) {
+				rs.updateObject(i + 1, row[i]);
+			}
+			rs.insertRow();
+			rs.moveToCurrentRow();
+		}
+		rs.beforeFirst();
+		return printResult(rs);
+	}// end printRows
+
+	/**
+	 * Method to close the physical connections of the pool if it is open.
+	 */
+	public void cleanup() {
+		if (this._groupCommit != null) {
+			this._groupCommit.close();
+		} // end if
+		if (this._slowQueries != null) {
+			this._slowQueries.close();
+		} // end if
+		if (this._router != null) {
+			this._router.close();
+			if (this._router.getReplica() != null) {
+				this._router.getReplica().close();
+			}
+		} // end if
+		if (this._metrics != null) {
+			this._metrics.close();
+		} // end if
+		if (this._pool != null) {
+			this._pool.close();
+		} // end if
+	}// end cleanup
+
+	/**
+	 * Returns the connection pool shared by all operations.
+	 */
+	ConnectionPool getPool() {
+		return this._pool;
+	}// end getPool
+
+	/**
+	 * Returns the next unused id of the given sequence.
+	 *
+	 * @param sequence one of the IdAllocator sequence names
+	 * @throws java.sql.SQLException when no id could be allocated
+	 */
+	public long nextId(String sequence) throws SQLException {
+		return this._ids.next(sequence);
+	}// end nextId
+
+	/**
+	 * Returns the occupancy index used by the availability queries.
+	 */
+	OccupancyIndex getOccupancy() {
+		return this._occupancy;
+	}// end getOccupancy
+
+	/**
+	 * Returns the customer name cache used by the customer reports.
+	 */
+	CustomerCache getCustomers() {
+		return this._customers;
+	}// end getCustomers
+
+	/**
+	 * Returns the repair count leaderboard used by the top-K company report.
+	 */
+	RepairLeaderboard getLeaderboard() {
+		return this._leaderboard;
+	}// end getLeaderboard
+
+	/**
+	 * Returns the top-K price index used by the booking price reports.
+	 */
+	PriceIndex getPrices() {
+		return this._prices;
+	}// end getPrices
+
+	/**
+	 * Returns the router choosing between the primary and the replica.
+	 */
+	ReplicaRouter getRouter() {
+		return this._router;
+	}// end getRouter
+
+	/**
+	 * Cancels the running statements of a task on the primary and the
+	 * replica (see ConnectionPool.setOwner).
+	 *
+	 * @return the number of statements cancelled
+	 * @throws java.sql.SQLException when a cancel cannot be sent
+	 */
+	int cancel(Object task) throws SQLException {
+		int cancelled = this._pool.cancel(task);
+		if (this._router.getReplica() != null) {
+			cancelled += this._router.getReplica().cancel(task);
+		}
+		return cancelled;
+	}// end cancel
+
+	/**
+	 * Returns the columnar snapshot used by the scanning reports.
+	 */
+	ColumnStore getColumns() {
+		return this._columns;
+	}// end getColumns
+
+	/**
+	 * Returns the group commit queue, or null when it is disabled.
+	 */
+	GroupCommit getGroupCommit() {
+		return this._groupCommit;
+	}// end getGroupCommit
+
+	/**
+	 * Returns the statement metrics of all operations.
+	 */
+	Metrics getMetrics() {
+		return this._metrics;
+	}// end getMetrics
+
+	/**
+	 * The main execution method
+	 *
+	 * @param args the command line arguments this inclues the <mysql|pgsql> <login
+	 *             file>
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3 || !isValidMode(args)) {
+			System.err.println("Usage: " + "java [-classpath <classpath>] " + DBProject.class.getName()
+					+ " <dbname> <port> <user> [--load <dataDir> | --batch <file|-> | --migrate <migrationsDir> | --explain | --bench | --partitions | --sizes | --columns | --replica"
+					+ " | --loadgen <dataDir> | --replay <traceFile> | --serve <httpPort> | --report <from>,<until>"
+					+ " | --rota <date>[,<hotelID>]]");
+			return;
+		} // end if
+
+		Greeting();
+		DBProject esql = null;
+		int status = 0;
+		try {
+			// use postgres JDBC driver.
+			Class.forName("org.postgresql.Driver").newInstance();
+			// instantiate the DBProject object and creates a physical
+			// connection.
+			String dbname = args[0];
+			String dbport = args[1];
+			String user = args[2];
+			esql = new DBProject(dbname, dbport, user, "");
+			if (needsSchema(args)) {
+				SchemaMigrator.requireVersion(esql, SCHEMA_VERSION);
+			}
+
+			// non-interactive modes run once and exit
+			if (args.length > 3) {
+				status = runMode(esql, args);
+				return;
+			} // end if
+
+			boolean keepon = true;
+			while (keepon) {
+				// These are sample SQL statements
+				System.out.println("MAIN MENU");
+				System.out.println("---------");
+				System.out.println("1. Add new customer");
+				System.out.println("2. Add new room");
+				System.out.println("3. Add new maintenance company");
+				System.out.println("4. Add new repair");
+				System.out.println("5. Add new Booking");
+				System.out.println("6. Assign house cleaning staff to a room");
+				System.out.println("7. Raise a repair request");
+				System.out.println("8. Get number of available rooms");
+				System.out.println("9. Get number of booked rooms");
+				System.out.println("10. Get hotel bookings for a week");
+				System.out.println("11. Get top k rooms with highest price for a date range");
+				System.out.println("12. Get top k highest booking price for a customer");
+				System.out.println("13. Get customer total cost occurred for a give date range");
+				System.out.println("14. List the repairs made by maintenance company");
+				System.out.println("15. Get top k maintenance companies based on repair count");
+				System.out.println("16. Get number of repairs occurred per year for a given hotel room");
+				System.out.println("17. Show operation metrics");
+				System.out.println("18. < EXIT");
+
+				int choice = readChoice();
+				Metrics.setOperation(choice >= 1 && choice <= OPERATIONS.length ? OPERATIONS[choice - 1] : null);
+				switch (choice) {
+				case 1:
+					addCustomer(esql);
+					break;
+				case 2:
+					addRoom(esql);
+					break;
+				case 3:
+					addMaintenanceCompany(esql);
+					break;
+				case 4:
+					addRepair(esql);
+					break;
+				case 5:
+					bookRoom(esql);
+					break;
+				case 6:
+					assignHouseCleaningToRoom(esql);
+					break;
+				case 7:
+					repairRequest(esql);
+					break;
+				case 8:
+					numberOfAvailableRooms(esql);
+					break;
+				case 9:
+					numberOfBookedRooms(esql);
+					break;
+				case 10:
+					listHotelRoomBookingsForAWeek(esql);
+					break;
+				case 11:
+					topKHighestRoomPriceForADateRange(esql);
+					break;
+				case 12:
+					topKHighestPriceBookingsForACustomer(esql);
+					break;
+				case 13:
+					totalCostForCustomer(esql);
+					break;
+				case 14:
+					listRepairsMade(esql);
+					break;
+				case 15:
+					topKMaintenanceCompany(esql);
+					break;
+				case 16:
+					numberOfRepairsForEachRoomPerYear(esql);
+					break;
+				case 17:
+					esql.getMetrics().print();
+					break;
+				case 18:
+					keepon = false;
+					break;
+				default:
+					System.out.println("Unrecognized choice!");
+					break;
+				}// end switch
+				Metrics.setOperation(null);
+			} // end while
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			status = 1;
+		} finally {
+			// make sure to cleanup the created table and close the connection.
+			try {
+				if (esql != null) {
+					System.out.print("Disconnecting from database...");
+					esql.cleanup();
+					System.out.println("Done\n\nBye !");
+				} // end if
+			} catch (Exception e) {
+				// ignored.
+			} // end try
+		} // end try
+		// lets scripts tell a failed --migrate or --explain run apart
+		if (status != 0) {
+			System.exit(status);
+		}
+	}// end main
+
+	/**
+	 * Checks the optional mode arguments that follow <dbname> <port> <user>.
+	 */
+	static boolean isValidMode(String[] args) {
+		if (args.length == 3) {
+			return true;
+		}
+		if (args.length == 4) {
+			return args[3].equals("--explain") || args[3].equals("--bench") || args[3].equals("--partitions")
+					|| args[3].equals("--sizes") || args[3].equals("--columns")
+					|| args[3].equals("--replica");
+		}
+		return args.length == 5
+				&& (args[3].equals("--load") || args[3].equals("--batch") || args[3].equals("--migrate")
+						|| args[3].equals("--loadgen") || args[3].equals("--replay") || args[3].equals("--serve")
+						|| args[3].equals("--report") || args[3].equals("--rota"));
+	}// end isValidMode
+
+	/**
+	 * Returns whether the mode runs the statements of the current schema;
+	 * --migrate brings an older schema up to date, --load and --sizes work
+	 * with any version and --partitions checks the version itself once it
+	 * finds a partitioned table.
+	 */
+	static boolean needsSchema(String[] args) {
+		if (args.length == 3) {
+			return true;
+		}
+		return !(args[3].equals("--migrate") || args[3].equals("--load") || args[3].equals("--partitions")
+				|| args[3].equals("--sizes"));
+	}// end needsSchema
+
+	/**
+	 * Runs the non-interactive mode selected on the command line.
+	 *
+	 * @return the process exit status
+	 */
+	static int runMode(DBProject esql, String[] args) throws Exception {
+		if (args[3].equals("--load")) {
+			BulkLoader.run(esql, args[4]);
+		} else if (args[3].equals("--batch")) {
+			BatchRunner.run(esql, args[4]);
+		} else if (args[3].equals("--migrate")) {
+			SchemaMigrator.run(esql, args[4]);
+		} else if (args[3].equals("--explain")) {
+			return PlanCheck.run(esql) == 0 ? 0 : 1;
+		} else if (args[3].equals("--bench")) {
+			Bench.run(esql);
+		} else if (args[3].equals("--partitions")) {
+			PartitionManager.run(esql);
+		} else if (args[3].equals("--sizes")) {
+			TableSizes.run(esql);
+		} else if (args[3].equals("--columns")) {
+			ColumnStore.run(esql);
+		} else if (args[3].equals("--replica")) {
+			ReplicaRouter.run(esql);
+		} else if (args[3].equals("--loadgen")) {
+			return LoadGenerator.run(esql, args[4]) == 0 ? 0 : 1;
+		} else if (args[3].equals("--replay")) {
+			return LoadGenerator.replay(esql, args[4]) == 0 ? 0 : 1;
+		} else if (args[3].equals("--serve")) {
+			HotelServer.run(esql, args[4]);
+		} else if (args[3].equals("--report")) {
+			return HotelReport.run(esql, args[4]) ? 0 : 1;
+		} else if (args[3].equals("--rota")) {
+			HousekeepingPlanner.run(esql, args[4]);
+		}
+		return 0;
+	}// end runMode
+
+	public static void Greeting() {
+		System.out.println("\n\n*******************************************************\n"
+				+ "              User Interface      	               \n"
+				+ "*******************************************************\n");
+	}// end Greeting
+
+	/*
+	 * Reads the users choice given from the keyboard
+	 * 
+	 * @int
+	 **/
+	public static int readChoice() {
+		int input;
+		// returns only if a correct value is given.
+		do {
+			System.out.print("Please make your choice: ");
+			try { // read the integer, parse it and break.
+				input = Integer.parseInt(in.readLine());
+				break;
+			} catch (Exception e) {
+				System.out.println("Your input is invalid!");
+				continue;
+			} // end try
+		} while (true);
+		return input;
+	}// end readChoice
+	
+	public static boolean isValidString(String str) {
+		if(str.length() > 0) {
+		return true;
+		} else {
+		return false;
+		} 
+	} 
+
+	public static boolean isValidInt(String str) {
+		try {
+		for(int i = 0; i < str.length() - 1; i++) {
+			int num = Integer.parseInt(str.substring(i, i+1));
+		}
+		return true;
+		} catch(NumberFormatException e) {
+		return false;
+		}
+	}
+
+	/**
+	 * Parses a numeric identifier typed by the user.
+	 */
+	public static Long parseId(String str) {
+		return Long.valueOf(str.trim());
+	}// end parseId
+
+	/**
+	 * Parses a date typed by the user in MM/dd/yyyy format.
+	 */
+	public static java.sql.Date parseDate(String str) throws java.text.ParseException {
+		SimpleDateFormat formatter = new SimpleDateFormat("MM/dd/yyyy");
+		formatter.setLenient(false);
+		return new java.sql.Date(formatter.parse(str.trim()).getTime());
+	}// end parseDate
+
+	// names of the menu operations 1 to 16, as recorded in the metrics
+	static final String[] OPERATIONS = { "addCustomer", "addRoom", "addMaintenanceCompany", "addRepair", "bookRoom",
+			"assignHouseCleaningToRoom", "repairRequest", "numberOfAvailableRooms", "numberOfBookedRooms",
+			"listHotelRoomBookingsForAWeek", "topKHighestRoomPriceForADateRange", "topKHighestPriceBookingsForACustomer",
+			"totalCostForCustomer", "listRepairsMade", "topKMaintenanceCompany", "numberOfRepairsForEachRoomPerYear" };
+
+	// SQL templates of the menu operations. Every user input is bound as a
+	// parameter so the statements can be prepared once per connection.
+	static final String SQL_ADD_CUSTOMER = "INSERT INTO customer(customerID, fName, lName, Address, phNo, DOB, gender) VALUES(?, ?, ?, ?, ?, ?, ?::GenderType)";
+	static final String SQL_ADD_ROOM = "INSERT INTO room(hotelID, roomNo, roomType) VALUES(?, ?, ?)";
+	static final String SQL_ADD_COMPANY = "INSERT INTO maintenancecompany(cmpID, name, address, isCertified) VALUES(?, ?, ?, ?)";
+	static final String SQL_ADD_REPAIR = "INSERT INTO repair(rid, hotelID, roomNo, mcompany, repairdate, description, repairtype) VALUES(?, ?, ?, ?, ?, ?, ?)";
+	// inserts nothing when the room is already booked that night (migration V3)
+	// prices are stored in cents (migration V4)
+	static final String SQL_BOOK_ROOM = "INSERT INTO booking(bid, customer, hotelID, roomNo, bookingdate, noofpeople, price_cents) VALUES(?, ?, ?, ?, ?, ?, ?) ON CONFLICT (hotelID, roomNo, bookingDate) DO NOTHING";
+	static final String SQL_ASSIGN_STAFF = "INSERT INTO assigned(asgid, staffID, hotelID, roomNo) VALUES(?, ?, ?, ?)";
+	static final String SQL_REPAIR_REQUEST = "INSERT INTO request(reqid, managerID, repairID, requestdate, description) VALUES(?, ?, ?, ?, ?)";
+	static final String SQL_AVAILABLE_ROOMS = "SELECT COUNT(*) FROM room WHERE room.hotelID = ? AND NOT EXISTS (SELECT 1 FROM booking WHERE booking.hotelID = room.hotelID AND booking.roomNo = room.roomNo AND booking.bookingDate >= ? AND booking.bookingDate < ?)";
+	static final String SQL_BOOKED_ROOMS = "SELECT COUNT(*) FROM booking WHERE booking.hotelID = ?";
+	static final String SQL_ROOMS_FOR_A_WEEK = "SELECT room.roomNo FROM room WHERE room.hotelID = ? AND NOT EXISTS (SELECT 1 FROM booking WHERE booking.hotelID = room.hotelID AND booking.roomNo = room.roomNo AND booking.bookingDate >= ? AND booking.bookingDate < ?) ORDER BY room.roomNo";
+	// the booking columns of the reports, the price back in dollars
+	static final String BOOKING_COLUMNS = "booking.bID, booking.customer, booking.hotelID, booking.roomNo, booking.bookingDate, booking.noOfPeople, (booking.price_cents / 100.0)::numeric(8,2) AS price";
+	static final String SQL_TOP_K_PRICE_FOR_DATE_RANGE = "SELECT " + BOOKING_COLUMNS + " FROM booking WHERE booking.bookingDate BETWEEN ? AND ? ORDER BY booking.price_cents DESC LIMIT ?";
+	static final String SQL_BOOKINGS_BY_ID = "SELECT " + BOOKING_COLUMNS + " FROM booking WHERE booking.bID = ANY(CAST(? AS bigint[])) AND booking.bookingDate BETWEEN ? AND ? ORDER BY booking.price_cents DESC, booking.bID";
+	static final String SQL_KTH_PRICE_FOR_CUSTOMER = "SELECT (booking.price_cents / 100.0)::numeric(8,2) AS price FROM booking WHERE booking.customer = ? ORDER BY booking.price_cents DESC LIMIT 1 OFFSET ?";
+	static final String SQL_TOTAL_COST_FOR_CUSTOMER = "SELECT (SUM(booking.price_cents) / 100.0)::numeric(12,2) FROM booking WHERE booking.customer = ? AND (booking.bookingDate BETWEEN ? AND ?) AND (booking.hotelID = ?)";
+	static final String SQL_REPAIRS_MADE = "SELECT r.rid, r.repairtype, r.hotelid, r.roomno FROM repair r WHERE r.mcompany = (SELECT m.cmpid FROM maintenancecompany m WHERE m.name = ?)";
+	static final String SQL_TOP_K_COMPANIES = "SELECT maintenanceCompany.name FROM maintenanceCompany, (SELECT mCompany, COUNT(*) AS numRepairs FROM Repair GROUP BY mCompany ORDER BY numRepairs DESC LIMIT ?) AS x WHERE maintenanceCompany.cmpID = x.mCompany";
+	static final String SQL_REPAIRS_PER_YEAR = "SELECT EXTRACT(YEAR FROM repair.repairDate) AS year, COUNT(*) AS numRepairs FROM Repair WHERE repair.hotelID = ? AND repair.roomNo = ? GROUP BY EXTRACT(YEAR FROM repair.repairDate) ORDER BY numRepairs";
+
+	/**
+	 * Resolves a customer name to one customerID through the customer cache.
+	 * When several customers share the name the user picks one of them.
+	 *
+	 * @return the customerID, or null when no customer was selected
+	 */
+	public static Long resolveCustomer(DBProject esql, Scanner scan, String firstName, String lastName)
+			throws SQLException {
+		long[] ids = esql.getCustomers().resolve(firstName, lastName);
+		if (ids.length == 0) {
+			System.out.println("No customer named " + firstName.trim() + " " + lastName.trim());
+			return null;
+		}
+		if (ids.length == 1) {
+			return ids[0];
+		}
+		System.out.println(ids.length + " customers are named " + firstName.trim() + " " + lastName.trim() + ":");
+		StringBuilder sb = new StringBuilder();
+		for (long id : ids) {
+			sb.append(sb.length() > 0 ? ", " : "").append(id);
+		}
+		System.out.println("Customer IDs: " + sb);
+		System.out.println("Enter the customer ID: ");
+		String choice = scan.nextLine();
+		try {
+			long picked = parseId(choice);
+			for (long id : ids) {
+				if (id == picked) {
+					return id;
+				}
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		System.out.println("Customer ID " + choice + " is not one of them");
+		return null;
+	}// end resolveCustomer
+
+	/**
+	 * Returns the number of rooms of the hotel without a booking in [from, to),
+	 * from the occupancy index when the hotel is loaded and from the database
+	 * otherwise.
+	 */
+	public static long countAvailableRooms(DBProject esql, Long hotel, java.sql.Date from, java.sql.Date to)
+			throws SQLException {
+		long[] free = esql.getOccupancy().freeRooms(hotel, from, to);
+		if (free != null) {
+			return free.length;
+		}
+		// the occupancy of this hotel is not in memory yet
+		ResultSet rs = esql.executeQuery(SQL_AVAILABLE_ROOMS, hotel, from, to);
+		rs.next();
+		return rs.getLong(1);
+	}// end countAvailableRooms
+
+	/**
+	 * Returns the room numbers of the hotel without a booking in [from, to),
+	 * in ascending order.
+	 */
+	public static long[] freeRooms(DBProject esql, Long hotel, java.sql.Date from, java.sql.Date to)
+			throws SQLException {
+		long[] free = esql.getOccupancy().freeRooms(hotel, from, to);
+		if (free != null) {
+			return free;
+		}
+		// the occupancy of this hotel is not in memory yet
+		ResultSet rs = esql.executeQuery(SQL_ROOMS_FOR_A_WEEK, hotel, from, to);
+		free = new long[16];
+		int n = 0;
+		while (rs.next()) {
+			if (n == free.length) {
+				free = Arrays.copyOf(free, n * 2);
+			}
+			free[n++] = rs.getLong(1);
+		}
+		return Arrays.copyOf(free, n);
+	}// end freeRooms
+
+	public static void addCustomer(DBProject esql) {
+		// Given customer details add the customer in the DB
+		Scanner scan = new Scanner(System.in);
+		try {
+			long id = esql.nextId(IdAllocator.CUSTOMER);
+			System.out.println("First name: ");
+			String first_name = scan.nextLine();
+			System.out.println("Last name: ");
+			String last_name = scan.nextLine();
+			System.out.println("Address: ");
+			String address = scan.nextLine();
+			System.out.println("Phone Number: ");
+			String phNo = scan.nextLine();
+			System.out.println("DOB(mm/dd/yyyy): ");
+			String dob = scan.nextLine();
+			System.out.println("Gender(Male, Female, or Other): ");
+			String gender = scan.nextLine();
+			if(isValidString(first_name) && isValidString(last_name) && isValidString(address) && isValidInt(phNo)) {
+
+			System.out.println("Your Information:\nCustomerID: " + id + "\nname: " + first_name + " " + last_name
+					+ "\naddress: " + address + "\nphone number: " + phNo + "\nDOB: " + dob + "\nGender: " + gender);
+			esql.executeUpdate(SQL_ADD_CUSTOMER, id, first_name, last_name, address, new BigDecimal(phNo.trim()),
+					parseDate(dob), gender);
+			esql.getCustomers().add(first_name, last_name, id);
+			} else {
+				return;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// end addCustomer
+
+	public static void addRoom(DBProject esql) {
+		// Given room details add the room in the DB
+		Scanner scan = new Scanner(System.in);
+		try {
+			System.out.println("Hotel ID: ");
+			String hotelID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("RoomNo: ");
+			String roomNo = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Room Type: ");
+			String type = scan.nextLine();
+			if(isValidInt(hotelID) && isValidInt(roomNo) && isValidString(type)){
+			System.out.println("Add Room:\nHotel ID: " + hotelID + "\nroomNo: " + roomNo + "\nRoom Type: " + type);
+			esql.executeUpdate(SQL_ADD_ROOM, parseId(hotelID), parseId(roomNo), type);
+			esql.getOccupancy().recordRoom(parseId(hotelID), parseId(roomNo));
+			} else {
+			return;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// end addRoom
+
+	public static void addMaintenanceCompany(DBProject esql) {
+		// Given maintenance Company details add the maintenance company in the DB
+		Scanner scan = new Scanner(System.in);
+		try {
+			long id = esql.nextId(IdAllocator.MAINTENANCE_COMPANY);
+			System.out.println("Company Name: ");
+			String name = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Address: ");
+			String address = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Certified?(Y/N): ");
+			String certified = scan.nextLine();
+			if ("Y".equalsIgnoreCase(certified.trim())) {
+				certified = "TRUE";
+			} else {
+				certified = "FALSE";
+			}
+			if(isValidString(name) && isValidString(address)){
+			System.out.println("Add Maintenance Company:\nCompany ID: " + id + "\nCompany Name: " + name + "\nAddress: "
+					+ address + "\nCertified: " + certified);
+			esql.executeUpdate(SQL_ADD_COMPANY, id, name, address, Boolean.valueOf(certified));
+			esql.getLeaderboard().recordCompany(id, name);
+			} else {
+			return;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// endi addMaintenanceCompany
+
+	public static void addRepair(DBProject esql) {
+		// Given repair details add repair in the DB
+		Scanner scan = new Scanner(System.in);
+		try {
+			long id = esql.nextId(IdAllocator.REPAIR);
+			System.out.println("Hotel ID: ");
+			String hotelID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("RoomNo: ");
+			String roomNo = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Maintenance Company ID: ");
+			String cmpID = scan.nextLine();
+			System.out.println("Repair Date(mm/dd/yyyy): ");
+			String date = scan.nextLine();
+			System.out.println("Description: ");
+			String description = scan.nextLine();
+			System.out.println("Repair Type: ");
+			String type = scan.nextLine();
+			if(isValidInt(hotelID) && isValidInt(roomNo) && isValidInt(cmpID) && isValidString(description) && isValidString(type)){
+			System.out.println("Repair ID: " + id + "\nHotel ID: " + hotelID + "\nRoomNo: " + roomNo
+					+ "\nMaintenance Company ID: " + cmpID + "\nRepair Date: " + date + "\nDescription: " + description
+					+ "\nRepair Type: " + type);
+			repair(esql, id, parseId(hotelID), parseId(roomNo), parseId(cmpID), parseDate(date), description, type);
+			} else {
+			return;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+
+	}// end addRepair
+
+	/**
+	 * Adds a repair and records it in the in-memory indexes.
+	 *
+	 * @throws java.sql.SQLException when the repair cannot be written
+	 */
+	public static void repair(DBProject esql, long id, Long hotel, Long room, Long company, java.sql.Date date,
+			String description, String type) throws SQLException {
+		RepairLeaderboard leaderboard = esql.getLeaderboard();
+		leaderboard.beginRepair(id);
+		boolean written = false;
+		try {
+			esql.executeInsert(SQL_ADD_REPAIR, id, hotel, room, company, date, description, type);
+			written = true;
+		} finally {
+			if (!written) {
+				leaderboard.abortRepair(id);
+			}
+		}
+		leaderboard.recordRepair(id, company);
+		esql.getColumns().recordRepair(id, hotel, room, company, date);
+	}// end repair
+
+	/**
+	 * Returns the k most expensive bookings with a booking date in [from,
+	 * until], most expensive first, from the price index or the column store
+	 * when one can answer and from the database otherwise.
+	 */
+	public static ResultSet topKBookings(DBProject esql, java.sql.Date from, java.sql.Date until, int k)
+			throws SQLException {
+		long[] ids = topKIds(esql, from, until, k);
+		if (ids == null) {
+			return esql.executeQuery(SQL_TOP_K_PRICE_FOR_DATE_RANGE, from, until, Integer.valueOf(k));
+		} else if (ids.length == 0) {
+			return RowSetProvider.newFactory().createCachedRowSet();
+		}
+		return esql.executeQuery(SQL_BOOKINGS_BY_ID, PriceIndex.idList(ids), from, until);
+	}// end topKBookings
+
+	/**
+	 * Returns the ids of the k most expensive bookings in [from, until] from
+	 * the price index or, when k is above its cap, the column store; null when
+	 * neither can answer.
+	 */
+	private static long[] topKIds(DBProject esql, java.sql.Date from, java.sql.Date until, int k) {
+		long[] ids = esql.getPrices().topKForDateRange(from, until, k);
+		return ids != null ? ids : esql.getColumns().topKForDateRange(from, until, k);
+	}// end topKIds
+
+	/**
+	 * Returns the number of bookings of the hotel.
+	 */
+	public static long bookedRooms(DBProject esql, long hotel) throws SQLException {
+		Long count = esql.getColumns().bookedRooms(hotel);
+		if (count != null) {
+			return count;
+		}
+		ResultSet rs = esql.executeQuery(SQL_BOOKED_ROOMS, hotel);
+		return rs.next() ? rs.getLong(1) : 0;
+	}// end bookedRooms
+
+	/**
+	 * Returns what a customer paid for the nights in [from, until] at a hotel,
+	 * or null when there are no such bookings.
+	 */
+	public static BigDecimal totalCost(DBProject esql, long customer, java.sql.Date from, java.sql.Date until,
+			long hotel) throws SQLException {
+		long[] cost = esql.getColumns().totalCost(customer, from, until, hotel);
+		if (cost != null) {
+			return cost[1] == 0 ? null : BigDecimal.valueOf(cost[0], 2);
+		}
+		ResultSet rs = esql.executeQuery(SQL_TOTAL_COST_FOR_CUSTOMER, customer, from, until, hotel);
+		return rs.next() ? rs.getBigDecimal(1) : null;
+	}// end totalCost
+
+	/**
+	 * Returns the k-th highest booking price of a customer (0 being the
+	 * highest), or null when the customer has fewer bookings.
+	 */
+	public static BigDecimal kthPrice(DBProject esql, long customer, int k) throws SQLException {
+		BigDecimal[] price = esql.getPrices().kthPriceForCustomer(customer, k);
+		if (price != null) {
+			return price.length == 0 ? null : price[0];
+		}
+		ResultSet rs = esql.executeQuery(SQL_KTH_PRICE_FOR_CUSTOMER, customer, Integer.valueOf(k));
+		return rs.next() ? rs.getBigDecimal(1) : null;
+	}// end kthPrice
+
+	/**
+	 * Books a room for one night unless it is already booked that night. The
+	 * unique constraint on (hotelID, roomNo, bookingDate) decides between
+	 * concurrent bookings of the same night, so no lock is taken.
+	 *
+	 * @return true when the booking was made, false when the room is taken
+	 * @throws java.sql.SQLException when the booking cannot be written
+	 */
+	public static boolean book(DBProject esql, long id, Long customer, Long hotel, Long room, java.sql.Date night,
+			Long people, BigDecimal price) throws SQLException {
+		if (esql.executeInsert(SQL_BOOK_ROOM, id, customer, hotel, room, night, people,
+				Long.valueOf(PriceIndex.toCents(price))) == 0) {
+			return false;
+		}
+		esql.getOccupancy().recordBooking(hotel, room, night);
+		esql.getPrices().recordBooking(id, customer, night, price);
+		esql.getColumns().recordBooking(id, customer, hotel, room, night, PriceIndex.toCents(price));
+		return true;
+	}// end book
+
+	public static void bookRoom(DBProject esql) {
+		// Given hotelID, roomNo and customer Name create a booking in the DB
+		Scanner scan = new Scanner(System.in);
+		try {
+			long id = esql.nextId(IdAllocator.BOOKING);
+			System.out.println("Customer ID: ");
+			String cID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Hotel ID: ");
+			String hotelID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("RoomNo: ");
+			String roomNo = scan.nextLine();
+			System.out.println("Booking Date(mm/dd/yyyy): ");
+			String date = scan.nextLine();
+			System.out.println("Number of People: ");
+			String numPpl = scan.nextLine();
+			System.out.println("Price: ");
+			String price = scan.nextLine();
+			if(isValidInt(cID) && isValidInt(hotelID) && isValidInt(roomNo) && isValidInt(numPpl)) {
+			System.out.println("Booking ID: " + id + "\nCustomer ID: " + cID + "\nHotel ID: " + hotelID + "\nRoomNo: "
+					+ roomNo + "\nBooking Date: " + date + "\nNumber of People: " + numPpl + "\nPrice: " + price);
+			if (!book(esql, id, parseId(cID), parseId(hotelID), parseId(roomNo), parseDate(date), parseId(numPpl),
+					new BigDecimal(price.trim()))) {
+				System.out.println("Room taken: room " + roomNo.trim() + " of hotel " + hotelID.trim()
+						+ " is already booked on " + date.trim());
+			}
+			} else {
+			return;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// end bookRoom
+
+	public static void assignHouseCleaningToRoom(DBProject esql) {
+		// Given Staff SSN, HotelID, roomNo Assign the staff to the room
+		Scanner scan = new Scanner(System.in);
+		try {
+			long id = esql.nextId(IdAllocator.ASSIGNED);
+			System.out.println("Staff ID: ");
+			String sID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Hotel ID: ");
+			String hotelID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("RoomNo: ");
+			String roomNo = scan.nextLine();
+			if(isValidInt(sID) && isValidInt(hotelID) && isValidInt(roomNo)) {
+			System.out.println(
+					"Assignment ID: " + id + "\nStaff ID: " + sID + "\nHotel ID: " + hotelID + "\nRoomNo: " + roomNo);
+			esql.executeInsert(SQL_ASSIGN_STAFF, id, parseId(sID), parseId(hotelID), parseId(roomNo));
+			} else {
+			return; 
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// end assignHouseCleaningToRoom
+
+	public static void repairRequest(DBProject esql) {
+		// Given a hotelID, Staff SSN, roomNo, repairID , date create a repair request
+		// in the DB
+		Scanner scan = new Scanner(System.in);
+		try {
+			long id = esql.nextId(IdAllocator.REQUEST);
+			System.out.println("Manager ID: ");
+			String mID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Repair ID: ");
+			String rID = scan.nextLine();
+			// scan.nextLine();
+			System.out.println("Request Date(mm/dd/yyyy): ");
+			String date = scan.nextLine();
+			System.out.println("Description: ");
+			String description = scan.nextLine();
+			if(isValidInt(mID) && isValidInt(rID) && isValidString(description)){
+			System.out.println("Request ID: " + id + "\nManager ID: " + mID + "\nRepair ID: " + rID + "\nRequest Date: "
+					+ date + "\nDescription: " + description);
+			esql.executeInsert(SQL_REPAIR_REQUEST, id, parseId(mID), parseId(rID), parseDate(date), description);
+			} else {
+			return;
+			}
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// end repairRequest
+
+	public static void numberOfAvailableRooms(DBProject esql){
+		// Given a hotelID and a date, get the count of rooms not booked that night
+		try{     
+		Scanner scan = new Scanner(System.in);
+		System.out.println("Enter the hotel ID: ");     
+				String hotelID = scan.nextLine();
+		System.out.println("Enter the date (MM/dd/yyyy, empty for today): ");
+		String dateEdit = scan.nextLine();
+		java.sql.Date date = dateEdit.trim().length() == 0 ? new java.sql.Date(new Date().getTime()) : parseDate(dateEdit);
+		java.sql.Date nextDay = new java.sql.Date(addDays(date, 1).getTime());
+		Long hotel = parseId(hotelID);
+		System.out.println("Number of available rooms: ");     
+		System.out.println(countAvailableRooms(esql, hotel, date, nextDay));
+		}catch(Exception e){
+		System.err.println(e.getMessage());
+  		}
+	}//end numberOfAvailableRooms
+
+	public static void numberOfBookedRooms(DBProject esql){
+		// Given a hotelID, get the count of rooms booked
+		try{
+		System.out.println("Enter the hotel ID: ");
+		Scanner scan = new Scanner(System.in);
+		String hotelID = scan.nextLine();
+		System.out.println("Number of booked rooms: ");
+		Long booked = esql.getColumns().bookedRooms(parseId(hotelID));
+		if (booked == null) {
+			esql.runQuery(SQL_BOOKED_ROOMS, parseId(hotelID));
+		} else {
+			List<Object[]> rows = new ArrayList<Object[]>();
+			rows.add(new Object[] { booked });
+			printRows(new String[] { "count" }, new int[] { Types.BIGINT }, rows);
+		}
+		//System.out.println(count);
+		}catch(Exception e){
+		System.err.println(e.getMessage());
+		}
+	 }//end numberOfBookedRooms
+
+	 public static Date addDays(Date date, int numDaysToAdd){
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		cal.add(Calendar.DATE, numDaysToAdd);
+		return cal.getTime();
+	}   
+	public static void listHotelRoomBookingsForAWeek(DBProject esql){
+			  // Given a hotelID, date - list all the rooms available for a week(including the input date) 
+		try{
+		 	System.out.println("Enter the hotel ID: ");
+			Scanner scan = new Scanner(System.in);
+			String hotelID = scan.nextLine();
+		 	System.out.println("Enter desired Date (MM/dd/yyyy): ");
+			String dateEdit = scan.nextLine();
+			java.sql.Date date = parseDate(dateEdit);
+			java.sql.Date dateEight = new java.sql.Date(addDays(date, 7).getTime());
+			Long hotel = parseId(hotelID);
+			System.out.println("Rooms available for a week including your start date: ");
+			List<Object[]> rows = new ArrayList<Object[]>();
+			for (long roomNo : freeRooms(esql, hotel, date, dateEight)) {
+				rows.add(new Object[] { Long.valueOf(roomNo) });
+			}
+			printRows(new String[] { "roomno" }, new int[] { Types.INTEGER }, rows);
+		}catch(Exception e){
+		System.err.println(e.getMessage());
+		}
+	}//end listHotelRoomBookingsForAWeek
+
+	public static void topKHighestRoomPriceForADateRange(DBProject esql){
+		// List Top K Rooms with the highest price for a given date range
+		try{
+			Scanner scan = new Scanner(System.in);
+			System.out.println("Enter number of rooms to be returned: ");		
+			String kRooms = scan.nextLine();
+			System.out.println("Enter the from date: ");
+			String dateBegin = scan.nextLine();
+  			System.out.println("Enter the until date: ");
+		  	String dateEnd = scan.nextLine();
+			System.out.println("Top K Rooms with highest price for given date range: ");
+			java.sql.Date from = parseDate(dateBegin);
+			java.sql.Date until = parseDate(dateEnd);
+			int k = Integer.parseInt(kRooms.trim());
+			long[] ids = topKIds(esql, from, until, k);
+			int count;
+			if (ids == null) {
+				// the price index and column store cannot answer
+				count = esql.runQuery(SQL_TOP_K_PRICE_FOR_DATE_RANGE, from, until, Integer.valueOf(k));
+			} else if (ids.length == 0) {
+				count = 0;
+			} else {
+				// the ids are bound as one array, so the statement is prepared once
+				// the date range lets the planner skip the partitions of other years
+				count = esql.runQuery(SQL_BOOKINGS_BY_ID, PriceIndex.idList(ids), from, until);
+			}
+			System.out.println(count);
+		}
+		catch(Exception e){
+			System.err.println(e.getMessage());
+		}
+	}//end topKHighestRoomPriceForADateRange
+
+	public static void topKHighestPriceBookingsForACustomer(DBProject esql){
+		// Given a customer Name, List Top K highest booking price for a customer 
+		try{
+			Scanner scan = new Scanner(System.in);
+			System.out.println("Enter K for Kth highest price you'd like (with 0 being highest): ");
+			String kRooms = scan.nextLine();
+			System.out.println("Enter the customer's first name: ");
+			String cusFirstName = scan.nextLine();
+			System.out.println("Enter the customer's last name: ");
+			String cusLastName = scan.nextLine();
+			Long customer = resolveCustomer(esql, scan, cusFirstName, cusLastName);
+			if (customer == null) {
+				return;
+			}
+  
+			int k = Integer.parseInt(kRooms.trim());
+			BigDecimal[] price = esql.getPrices().kthPriceForCustomer(customer, k);
+			int count;
+			if (price == null) {
+				// the price index is cold or k is above its cap
+				count = esql.runQuery(SQL_KTH_PRICE_FOR_CUSTOMER, customer, Integer.valueOf(k));
+			} else {
+				List<Object[]> rows = new ArrayList<Object[]>();
+				if (price.length > 0) {
+					rows.add(new Object[] { price[0] });
+				}
+				count = printRows(new String[] { "price" }, new int[] { Types.NUMERIC }, rows);
+			}
+			System.out.println(count);
+		}
+			catch(Exception e){
+			System.err.println(e.getMessage());
+		}
+   
+	}//end topKHighestPriceBookingsForACustomer
+
+	public static void totalCostForCustomer(DBProject esql){
+		// Given a hotelID, customer Name and date range get the total cost incurred by the customer
+		try{
+			Scanner scan = new Scanner(System.in);
+			System.out.println("Enter the hotel ID: ");
+			String hotelID = scan.nextLine();
+			System.out.println("Enter the customer's first name: ");
+			String cusFirstName = scan.nextLine();
+			System.out.println("Enter the customer's last name: ");
+			String cusLastName = scan.nextLine(); 
+			Long customer = resolveCustomer(esql, scan, cusFirstName, cusLastName);
+			if (customer == null) {
+				return;
+			}
+			System.out.println("Enter the from date: ");
+			String dateBegin = scan.nextLine();
+  			System.out.println("Enter the until date: ");
+			String dateEnd = scan.nextLine();
+  
+			java.sql.Date from = parseDate(dateBegin);
+			java.sql.Date until = parseDate(dateEnd);
+			long[] cost = esql.getColumns().totalCost(customer, from, until, parseId(hotelID));
+			int count;
+			if (cost == null) {
+				count = esql.runQuery(SQL_TOTAL_COST_FOR_CUSTOMER, customer, from, until, parseId(hotelID));
+			} else {
+				// SUM of no rows is NULL
+				List<Object[]> rows = new ArrayList<Object[]>();
+				rows.add(new Object[] { cost[1] == 0 ? null : BigDecimal.valueOf(cost[0], 2) });
+				count = printRows(new String[] { "numeric" }, new int[] { Types.NUMERIC }, rows);
+			}
+			System.out.println(count);
+		}
+		catch(Exception e){
+			System.err.println(e.getMessage());
+		}
+   
+   }//end totalCostForCustomer
+
+	public static void listRepairsMade(DBProject esql) {
+		// Given a Maintenance company name list all the repairs along with repairType,
+		// hotelID and roomNo
+		Scanner scan = new Scanner(System.in);
+		try {
+			System.out.println("Maintenance Company Name: ");
+			String input = scan.nextLine();
+			System.out.println("Maintenance Company Name: " + input);
+			int rowCount = esql.runQuery(SQL_REPAIRS_MADE, input);
+			System.out.println("total row(s): " + rowCount);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+		}
+	}// end listRepairsMade
+
+	public static void topKMaintenanceCompany(DBProject esql){
+		// List Top K Maintenance Company Names based on total repair count (descending order)
+   		try{
+			Scanner scan = new Scanner(System.in); 
+			System.out.println("Enter K amount of companies desired: ");
+			String numComps = scan.nextLine();
+			List<Object[]> rows = new ArrayList<Object[]>();
+			for (String name : esql.getLeaderboard().topK(Integer.parseInt(numComps.trim()))) {
+				rows.add(new Object[] { name });
+			}
+			System.out.println(printRows(new String[] { "name" }, new int[] { Types.VARCHAR }, rows));
+		}
+		catch(Exception e){
+			System.err.println(e.getMessage());
+		}
+	}//end topKMaintenanceCompany
+
+	public static void numberOfRepairsForEachRoomPerYear(DBProject esql){
+		// Given a hotelID, roomNo, get the count of repairs per year
+		try{
+			Scanner scan = new Scanner(System.in);
+			System.out.println("Enter the hotel ID: ");
+			String hotelID = scan.nextLine();
+			System.out.println("Enter the room number: ");
+			String roomNo = scan.nextLine();
+			Map<Integer, Long> years = esql.getColumns().repairsPerYear(parseId(hotelID), parseId(roomNo));
+			int count;
+			if (years == null) {
+				count = esql.runQuery(SQL_REPAIRS_PER_YEAR, parseId(hotelID), parseId(roomNo));
+			} else {
+				List<Object[]> rows = new ArrayList<Object[]>();
+				for (Map.Entry<Integer, Long> e : years.entrySet()) {
+					rows.add(new Object[] { e.getKey(), e.getValue() });
+				}
+				count = printRows(new String[] { "year", "numrepairs" }, new int[] { Types.INTEGER, Types.BIGINT },
+						rows);
+			}
+			System.out.println(count);
+		}
+		catch(Exception e){
+			System.err.println(e.getMessage());
+		} 
+	}//end listRepairsMade
+
+}// end DBProject
@@ -0,0 +1,329 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue that commits concurrent inserts as one transaction.
+ *
+ * In auto-commit mode every insert of the menu is its own transaction and
+ * waits for its own WAL flush. With dbproject.groupCommit.enabled=true the
+ * inserts of addRepair, bookRoom, assignHouseCleaningToRoom and repairRequest
+ * (see DBProject.executeInsert) are queued instead. A single writer thread
+ * takes the first queued insert, waits up to dbproject.groupCommit.windowMs
+ * milliseconds (default 2) for more, up to dbproject.groupCommit.maxBatch
+ * (default 256), and writes them on one connection: consecutive inserts of
+ * the same statement go out as one JDBC batch, and the whole group is
+ * committed at once, paying one WAL flush. Each caller's future completes
+ * with its own row count only after that commit has returned, so a
+ * completed insert is as durable as one made in auto-commit mode.
+ *
+ * If an insert of the group fails (a foreign key violation, say), the group
+ * is rolled back and its inserts are written again one transaction each, so
+ * that only the failing inserts fail. If the commit itself fails, the group
+ * may or may not have been written, so all of its inserts fail rather than
+ * risk writing them twice. A caller waits at most
+ * dbproject.groupCommit.awaitMs milliseconds (default 30000) for its commit;
+ * an insert that times out may still be committed later.
+ *
+ * A lone caller waits for the window before its insert is written, so the
+ * queue only pays off with many concurrent writers; compare both paths with
+ * java -Ddbproject.groupCommit.enabled=true DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --bench
+ */
+public class GroupCommit {
+
+	/**
+	 * One queued insert; completes once its group has been committed.
+	 */
+	static class Entry extends FutureTask<Integer> {
+		static final long AWAIT_MILLIS = Math.max(1, Long.getLong("dbproject.groupCommit.awaitMs", 30000));
+
+		final String sql;
+		final Object[] params;
+		final ReplicaRouter.Session session = ReplicaRouter.currentSession();
+		// when the writer started on the group of this insert
+		volatile long writtenAt = 0;
+
+		Entry(String sql, Object[] params) {
+			super(new Callable<Integer>() {
+				public Integer call() {
+					throw new IllegalStateException("completed by the group commit writer");
+				}
+			});
+			this.sql = sql;
+			this.params = params;
+		}
+
+		void complete(int rows) {
+			set(Integer.valueOf(rows));
+		}
+
+		void fail(Throwable t) {
+			setException(t);
+		}
+
+		/**
+		 * Waits up to AWAIT_MILLIS for the commit and returns the row count of
+		 * the insert.
+		 *
+		 * @throws java.sql.SQLException when the insert failed or was not
+		 *                               committed in time
+		 */
+		int await() throws SQLException {
+			try {
+				return get(AWAIT_MILLIS, TimeUnit.MILLISECONDS).intValue();
+			} catch (TimeoutException e) {
+				throw new SQLException("No group commit within " + AWAIT_MILLIS + " ms; the insert may still be written");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for the group commit");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SQLException) {
+					throw (SQLException) e.getCause();
+				}
+				throw new SQLException("Group commit failed: " + e.getCause());
+			}
+		}
+	}// end Entry
+
+	private final ConnectionPool pool;
+	private final ReplicaRouter router;
+	private final long windowNanos;
+	private final int maxBatch;
+	private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	private final AtomicLong groups = new AtomicLong();
+	private final AtomicLong inserts = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+
+	public GroupCommit(ConnectionPool pool, ReplicaRouter router) {
+		this.pool = pool;
+		this.router = router;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Long.getLong("dbproject.groupCommit.windowMs", 2)));
+		this.maxBatch = Math.max(1, Integer.getInteger("dbproject.groupCommit.maxBatch", 256));
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "dbproject-group-commit");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}// end GroupCommit
+
+	/**
+	 * Returns whether the inserts of the menu should go through the queue.
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean("dbproject.groupCommit.enabled");
+	}// end isEnabled
+
+	/**
+	 * Queues an insert; the returned future completes with its row count once
+	 * the insert has been committed.
+	 *
+	 * @throws java.sql.SQLException when the queue has been closed
+	 */
+	public Entry submit(String sql, Object... params) throws SQLException {
+		if (closed) {
+			throw new SQLException("The group commit queue is closed");
+		}
+		Entry e = new Entry(sql, params);
+		queue.add(e);
+		// close() may have drained the queue between the check and the add;
+		// an entry still queued then would never be written
+		if (closed && queue.remove(e)) {
+			throw new SQLException("The group commit queue is closed");
+		}
+		return e;
+	}// end submit
+
+	private void drain() {
+		List<Entry> group = new ArrayList<Entry>();
+		while (!closed || !queue.isEmpty()) {
+			try {
+				Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				group.add(first);
+				long deadline = System.nanoTime() + windowNanos;
+				while (group.size() < maxBatch) {
+					queue.drainTo(group, maxBatch - group.size());
+					long left = deadline - System.nanoTime();
+					if (group.size() >= maxBatch || left <= 0) {
+						break;
+					}
+					Entry next = queue.poll(left, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					group.add(next);
+				}
+			} catch (InterruptedException e) {
+				// close() wants the queue written out without waiting
+				closed = true;
+			}
+			if (group.isEmpty()) {
+				continue;
+			}
+			try {
+				write(group);
+			} catch (RuntimeException e) {
+				// never leave a caller waiting for a writer that is gone
+				failAll(group, e);
+			} catch (Error e) {
+				failAll(group, e);
+				throw e;
+			} finally {
+				group.clear();
+			}
+		}
+	}// end drain
+
+	/**
+	 * Writes and commits a group, then completes its entries.
+	 */
+	private void write(List<Entry> group) {
+		ConnectionPool.Pooled conn;
+		try {
+			conn = pool.borrow();
+		} catch (SQLException e) {
+			failAll(group, e);
+			return;
+		}
+		int[] rows = null;
+		boolean committed = false;
+		try {
+			long now = System.nanoTime();
+			for (Entry entry : group) {
+				entry.writtenAt = now;
+			}
+			conn.connection.setAutoCommit(false);
+			try {
+				rows = insert(conn, group);
+			} catch (SQLException e) {
+				// rolls the group back
+				pool.release(conn, true);
+				conn = null;
+				if (group.size() == 1) {
+					group.get(0).fail(e);
+					return;
+				}
+				// find the failing inserts by writing the others one by one
+				retried.addAndGet(group.size());
+				for (Entry entry : group) {
+					write(Collections.singletonList(entry));
+				}
+				return;
+			}
+			conn.connection.commit();
+			committed = true;
+		} catch (SQLException e) {
+			// the commit may have reached the server; writing the group again
+			// could insert it twice
+			failAll(group, e);
+			return;
+		} finally {
+			if (conn != null && !committed) {
+				pool.release(conn, true);
+			}
+		}
+		groups.incrementAndGet();
+		inserts.addAndGet(group.size());
+		try {
+			conn.connection.setAutoCommit(true);
+			List<ReplicaRouter.Session> sessions = new ArrayList<ReplicaRouter.Session>(group.size());
+			for (Entry entry : group) {
+				sessions.add(entry.session);
+			}
+			router.afterWrite(conn, sessions);
+		} catch (SQLException e) {
+			// committed all the same; the reads may just go to the replica too early
+		} finally {
+			pool.release(conn);
+		}
+		for (int i = 0; i < group.size(); i++) {
+			group.get(i).complete(rows[i]);
+		}
+	}// end write
+
+	private static void failAll(List<Entry> group, Throwable t) {
+		for (Entry entry : group) {
+			// entries already completed keep their result
+			entry.fail(t);
+		}
+	}// end failAll
+
+	/**
+	 * Executes the inserts of the group in order, batching consecutive inserts
+	 * of the same statement, and returns their row counts.
+	 */
+	private static int[] insert(ConnectionPool.Pooled conn, List<Entry> group) throws SQLException {
+		int[] rows = new int[group.size()];
+		int from = 0;
+		while (from < group.size()) {
+			String sql = group.get(from).sql;
+			int to = from + 1;
+			while (to < group.size() && group.get(to).sql.equals(sql)) {
+				to++;
+			}
+			PreparedStatement ps = conn.statements.prepare(sql);
+			if (to - from == 1) {
+				StatementCache.bind(ps, group.get(from).params);
+				rows[from] = ps.executeUpdate();
+			} else {
+				try {
+					for (int i = from; i < to; i++) {
+						StatementCache.bind(ps, group.get(i).params);
+						ps.addBatch();
+					}
+					int[] counts = ps.executeBatch();
+					for (int i = 0; i < counts.length; i++) {
+						// a driver that does not report the count wrote the row
+						rows[from + i] = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+					}
+				} finally {
+					// the statement stays cached
+					ps.clearBatch();
+				}
+			}
+			from = to;
+		}
+		return rows;
+	}// end insert
+
+	public String stats() {
+		long n = groups.get();
+		return String.format("groupCommit[window=%dms maxBatch=%d] groups=%d inserts=%d avgGroup=%.1f retried=%d",
+				TimeUnit.NANOSECONDS.toMillis(windowNanos), maxBatch, n, inserts.get(),
+				n == 0 ? 0.0 : (double) inserts.get() / n, retried.get());
+	}// end stats
+
+	/**
+	 * Writes out the queued inserts and stops the writer thread.
+	 */
+	public void close() {
+		closed = true;
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Entry e;
+		while ((e = queue.poll()) != null) {
+			e.fail(new SQLException("The group commit queue is closed"));
+		}
+	}// end close
+
+}// end GroupCommit
@@ -0,0 +1,329 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Occupancy and revenue report of every hotel over a range of nights.
+ *
+ * The hotel id space is split into ranges of dbproject.report.rangeSize ids
+ * (default 50) by a fork-join task; every range reads the room counts and the
+ * bookings of its hotels with two grouped queries. At most
+ * dbproject.report.connections ranges (default: half of the connection pool)
+ * query the database at the same time. The results are merged into one
+ * report ranked by revenue:
+ *
+ * occupancy  booked room nights / (rooms x nights in the range)
+ * ADR        average daily rate, revenue / booked room nights
+ * revenue    sum of the booking prices
+ *
+ * Progress is printed to standard error every dbproject.report.progressMs
+ * milliseconds (default 1000). cancel() stops the ranges that have not
+ * started and cancels the statements of those that are running.
+ *
+ * java DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --report
+ * &lt;from&gt;,&lt;until&gt; (MM/dd/yyyy, both nights included; press Enter
+ * to cancel)
+ */
+public class HotelReport {
+
+	private static final String SQL_HOTEL_IDS = "SELECT MIN(hotelID), MAX(hotelID), COUNT(*) FROM hotel";
+	private static final String SQL_ROOMS = "SELECT hotelID, COUNT(*) FROM room WHERE hotelID >= ? AND hotelID < ? GROUP BY hotelID";
+	private static final String SQL_BOOKINGS = "SELECT hotelID, COUNT(*), SUM(price_cents) FROM booking WHERE hotelID >= ? AND hotelID < ? AND bookingDate BETWEEN ? AND ? GROUP BY hotelID";
+
+	/**
+	 * The figures of one hotel.
+	 */
+	static class Row {
+		final long hotel;
+		long rooms;
+		long roomNights;
+		long revenueCents;
+
+		Row(long hotel) {
+			this.hotel = hotel;
+		}
+
+		double occupancy(int nights) {
+			return rooms == 0 ? 0 : 100.0 * roomNights / (rooms * (long) nights);
+		}
+
+		double adr() {
+			return roomNights == 0 ? 0 : revenueCents / 100.0 / roomNights;
+		}
+	}// end Row
+
+	/**
+	 * The hotels with an id in [from, to), split in halves until a range is
+	 * small enough to query.
+	 */
+	class Range extends RecursiveTask<List<Row>> {
+		private static final long serialVersionUID = 1L;
+
+		final long from;
+		final long to;
+
+		Range(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected List<Row> compute() {
+			if (to - from > rangeSize) {
+				long mid = from + (to - from) / 2;
+				Range left = new Range(from, mid);
+				left.fork();
+				List<Row> rows = new Range(mid, to).compute();
+				rows.addAll(left.join());
+				return rows;
+			}
+			try {
+				return query(from, to);
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+		}
+	}// end Range
+
+	private final DBProject esql;
+	private final java.sql.Date from;
+	private final java.sql.Date until;
+	private final int nights;
+	private final int rangeSize;
+	private final Semaphore connections;
+	private final ForkJoinPool pool;
+	private final AtomicLong idsDone = new AtomicLong();
+	private volatile boolean cancelled = false;
+	private volatile long ids = 0;
+
+	public HotelReport(DBProject esql, java.sql.Date from, java.sql.Date until) {
+		this.esql = esql;
+		this.from = from;
+		this.until = until;
+		this.nights = Math.max(0, OccupancyIndex.epochDay(until) - OccupancyIndex.epochDay(from) + 1);
+		this.rangeSize = Math.max(1, Integer.getInteger("dbproject.report.rangeSize", 50));
+		int n = Math.max(1, Integer.getInteger("dbproject.report.connections",
+				Math.max(1, esql.getPool().getMaxSize() / 2)));
+		this.connections = new Semaphore(n);
+		this.pool = new ForkJoinPool(n);
+	}// end HotelReport
+
+	/**
+	 * Runs the report and returns the hotels ranked by revenue, highest first.
+	 *
+	 * @throws java.sql.SQLException                   when a range cannot be
+	 *                                                 read
+	 * @throws java.util.concurrent.CancellationException when the report was
+	 *                                                 cancelled
+	 */
+	public List<Row> run() throws SQLException {
+		ResultSet rs = esql.executeQuery(SQL_HOTEL_IDS);
+		if (!rs.next() || rs.getLong(3) == 0) {
+			return new ArrayList<Row>();
+		}
+		long lo = rs.getLong(1);
+		long hi = rs.getLong(2) + 1;
+		ids = hi - lo;
+		List<Row> rows;
+		try {
+			rows = pool.invoke(new Range(lo, hi));
+		} catch (IllegalStateException e) {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pool.shutdown();
+		}
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		Collections.sort(rows, new Comparator<Row>() {
+			public int compare(Row a, Row b) {
+				if (a.revenueCents != b.revenueCents) {
+					return a.revenueCents > b.revenueCents ? -1 : 1;
+				}
+				return a.hotel < b.hotel ? -1 : (a.hotel == b.hotel ? 0 : 1);
+			}
+		});
+		return rows;
+	}// end run
+
+	/**
+	 * Stops the report: ranges that have not started are skipped and the
+	 * statements of the running ones are cancelled.
+	 */
+	public void cancel() {
+		cancelled = true;
+		try {
+			esql.cancel(this);
+		} catch (SQLException e) {
+			// the running ranges finish on their own
+		}
+	}// end cancel
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns how many of the hotel ids between the lowest and the highest
+	 * have been reported on, and how many there are.
+	 */
+	public long[] progress() {
+		return new long[] { idsDone.get(), ids };
+	}// end progress
+
+	private List<Row> query(long lo, long hi) throws SQLException, InterruptedException {
+		List<Row> rows = new ArrayList<Row>();
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		connections.acquire();
+		// lets cancel() find the statements of this report
+		ConnectionPool.setOwner(this);
+		Metrics.setOperation("hotelReport");
+		try {
+			Map<Long, Row> byHotel = new TreeMap<Long, Row>();
+			ResultSet rs = esql.executeQuery(SQL_ROOMS, Long.valueOf(lo), Long.valueOf(hi));
+			while (rs.next()) {
+				Row row = new Row(rs.getLong(1));
+				row.rooms = rs.getLong(2);
+				byHotel.put(row.hotel, row);
+			}
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			rs = esql.executeQuery(SQL_BOOKINGS, Long.valueOf(lo), Long.valueOf(hi), from, until);
+			while (rs.next()) {
+				Row row = byHotel.get(rs.getLong(1));
+				if (row == null) {
+					// bookings of a hotel without rooms
+					row = new Row(rs.getLong(1));
+					byHotel.put(row.hotel, row);
+				}
+				row.roomNights = rs.getLong(2);
+				row.revenueCents = rs.getLong(3);
+			}
+			rows.addAll(byHotel.values());
+		} catch (SQLException e) {
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			throw e;
+		} finally {
+			ConnectionPool.setOwner(null);
+			Metrics.setOperation(null);
+			connections.release();
+		}
+		idsDone.addAndGet(hi - lo);
+		return rows;
+	}// end query
+
+	/**
+	 * Prints the ranked report and a total line.
+	 */
+	public void print(List<Row> rows) {
+		System.out.println(String.format("Occupancy and revenue from %s to %s (%d nights)", from, until, nights));
+		System.out.println(String.format("%5s %8s %6s %12s %11s %10s %14s", "rank", "hotel", "rooms", "room nights",
+				"occupancy", "ADR", "revenue"));
+		long rooms = 0;
+		long roomNights = 0;
+		long revenue = 0;
+		int rank = 0;
+		for (Row r : rows) {
+			System.out.println(String.format("%5d %8d %6d %12d %10.1f%% %10.2f %14.2f", ++rank, r.hotel, r.rooms,
+					r.roomNights, r.occupancy(nights), r.adr(), r.revenueCents / 100.0));
+			rooms += r.rooms;
+			roomNights += r.roomNights;
+			revenue += r.revenueCents;
+		}
+		Row total = new Row(0);
+		total.rooms = rooms;
+		total.roomNights = roomNights;
+		total.revenueCents = revenue;
+		System.out.println(String.format("%5s %8s %6d %12d %10.1f%% %10.2f %14.2f", "", "all", rooms, roomNights,
+				total.occupancy(nights), total.adr(), revenue / 100.0));
+	}// end print
+
+	/**
+	 * Entry point of the --report mode.
+	 *
+	 * @return false when the report was cancelled
+	 */
+	public static boolean run(DBProject esql, String range) throws Exception {
+		String[] dates = range.split(",");
+		if (dates.length != 2) {
+			throw new IllegalArgumentException("Expected <from>,<until> but got: " + range);
+		}
+		final HotelReport report = new HotelReport(esql, DBProject.parseDate(dates[0]),
+				DBProject.parseDate(dates[1]));
+
+		Thread progress = new Thread(new Runnable() {
+			public void run() {
+				long interval = Long.getLong("dbproject.report.progressMs", 1000);
+				try {
+					while (true) {
+						TimeUnit.MILLISECONDS.sleep(interval);
+						long[] p = report.progress();
+						if (p[1] > 0) {
+							System.err.println(String.format("Report: %d/%d hotel ids (%.0f%%)", p[0], p[1],
+									100.0 * p[0] / p[1]));
+						}
+					}
+				} catch (InterruptedException e) {
+					// done
+				}
+			}
+		}, "dbproject-report-progress");
+		progress.setDaemon(true);
+		Thread canceller = new Thread(new Runnable() {
+			public void run() {
+				try {
+					if (new BufferedReader(new InputStreamReader(System.in)).readLine() != null) {
+						System.err.println("Cancelling the report...");
+						report.cancel();
+					}
+				} catch (IOException e) {
+					// no console; the report cannot be cancelled from it
+				}
+			}
+		}, "dbproject-report-cancel");
+		canceller.setDaemon(true);
+		progress.start();
+		canceller.start();
+
+		long start = System.nanoTime();
+		try {
+			List<Row> rows = report.run();
+			report.print(rows);
+			System.out.println(String.format("%d hotels in %.2f s", rows.size(), (System.nanoTime() - start) / 1e9));
+			return true;
+		} catch (CancellationException e) {
+			System.out.println("Report cancelled");
+			return false;
+		} finally {
+			progress.interrupt();
+		}
+	}// end run
+
+}// end HotelReport
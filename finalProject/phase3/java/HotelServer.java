@@ -0,0 +1,517 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server mode exposing the menu operations as JSON endpoints.
+ *
+ * --serve &lt;port&gt; starts the JDK's built-in HTTP server. Every request is
+ * handled on a virtual thread when the JVM has them (Java 21) and on one of
+ * dbproject.http.threads pooled threads otherwise, so thousands of open
+ * client connections cost little. The operations themselves run through an
+ * AsyncDBProject over the one connection pool of the process: at most
+ * dbproject.pool.max statements run at once, requests beyond
+ * dbproject.async.queueSize waiting ones are answered 503, and requests that
+ * take longer than dbproject.async.timeoutMs are cancelled and answered 504.
+ *
+ * Parameters come from the query string or, for POST, from a form encoded
+ * body of at most dbproject.http.maxBodyBytes bytes (default 65536; larger
+ * bodies are answered 413). Dates are yyyy-MM-dd or MM/dd/yyyy. Every response is a JSON object;
+ * failures carry an "error" member. GET /metrics returns the statement and
+ * request metrics in the Prometheus text format.
+ *
+ * Routes:
+ * POST /customers        fName lName address phone dob gender
+ * POST /rooms            hotel roomNo type
+ * POST /companies        name address certified
+ * POST /repairs          hotel roomNo company date description type
+ * POST /bookings         customer hotel roomNo date people price (409 when taken)
+ * POST /assignments      staff hotel roomNo
+ * POST /requests         manager repair date description
+ * GET  /rooms/available  hotel date
+ * GET  /rooms/booked     hotel
+ * GET  /rooms/free       hotel from (the week starting on from)
+ * GET  /bookings/top     from to k
+ * GET  /customers/price  fName lName k (k-th highest price, 0 the highest)
+ * GET  /customers/cost   fName lName hotel from to
+ * GET  /repairs          company
+ * GET  /companies/top    k
+ * GET  /repairs/per-year hotel roomNo
+ */
+public class HotelServer {
+
+	private static final String JSON = "application/json; charset=utf-8";
+
+	/**
+	 * One route: the menu operation it runs and the name of its result in the
+	 * response.
+	 */
+	abstract class Route {
+		final String method;
+		final String path;
+		final String result;
+
+		Route(String method, String path, String result) {
+			this.method = method;
+			this.path = path;
+			this.result = result;
+		}
+
+		abstract AsyncDBProject.Operation<?> start(Params p) throws Exception;
+
+		/**
+		 * Returns the HTTP status of a successful operation.
+		 */
+		int status(Object value) {
+			return method.equals("POST") ? 201 : 200;
+		}
+	}// end Route
+
+	/**
+	 * The request parameters.
+	 */
+	static class Params {
+		final Map<String, String> values;
+
+		Params(Map<String, String> values) {
+			this.values = values;
+		}
+
+		String string(String name) {
+			String v = values.get(name);
+			if (v == null || v.trim().length() == 0) {
+				throw new IllegalArgumentException("missing parameter " + name);
+			}
+			return v.trim();
+		}
+
+		long id(String name) {
+			try {
+				return Long.parseLong(string(name));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("parameter " + name + " is not a number");
+			}
+		}
+
+		int number(String name) {
+			long v = id(name);
+			if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("parameter " + name + " is out of range");
+			}
+			return (int) v;
+		}
+
+		BigDecimal decimal(String name) {
+			try {
+				return new BigDecimal(string(name));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("parameter " + name + " is not a number");
+			}
+		}
+
+		java.sql.Date date(String name) {
+			String v = string(name);
+			try {
+				return v.indexOf('-') >= 0 ? java.sql.Date.valueOf(v) : DBProject.parseDate(v);
+			} catch (Exception e) {
+				throw new IllegalArgumentException("parameter " + name + " is not a date");
+			}
+		}
+	}// end Params
+
+	/**
+	 * Thrown when a request body exceeds MAX_BODY bytes.
+	 */
+	static class BodyTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		BodyTooLargeException() {
+			super("request body larger than " + MAX_BODY + " bytes");
+		}
+	}// end BodyTooLargeException
+
+	static final int MAX_BODY = Integer.getInteger("dbproject.http.maxBodyBytes", 64 * 1024);
+
+	private final DBProject esql;
+	private final AsyncDBProject async;
+	private final Map<String, Route> routes = new LinkedHashMap<String, Route>();
+	private HttpServer server;
+
+	public HotelServer(DBProject esql) {
+		this.esql = esql;
+		this.async = new AsyncDBProject(esql);
+		routes();
+	}// end HotelServer
+
+	/**
+	 * Starts serving on the port.
+	 */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("dbproject.http.backlog", 1024));
+		server.setExecutor(executor());
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		server.start();
+	}// end start
+
+	/**
+	 * Stops accepting requests, giving the running ones a second to finish.
+	 */
+	public void stop() {
+		server.stop(1);
+		async.shutdown();
+	}// end stop
+
+	private void routes() {
+		add(new Route("POST", "/customers", "customerID") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.addCustomer(p.string("fName"), p.string("lName"), p.string("address"),
+						p.decimal("phone"), p.date("dob"), p.string("gender"));
+			}
+		});
+		add(new Route("POST", "/rooms", "roomNo") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.addRoom(p.id("hotel"), p.id("roomNo"), p.string("type"));
+			}
+		});
+		add(new Route("POST", "/companies", "cmpID") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.addMaintenanceCompany(p.string("name"), p.string("address"),
+						"Y".equalsIgnoreCase(p.string("certified")) || "true".equalsIgnoreCase(p.string("certified")));
+			}
+		});
+		add(new Route("POST", "/repairs", "rID") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.addRepair(p.id("hotel"), p.id("roomNo"), p.id("company"), p.date("date"),
+						p.string("description"), p.string("type"));
+			}
+		});
+		add(new Route("POST", "/bookings", "bID") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.bookRoom(p.id("customer"), p.id("hotel"), p.id("roomNo"), p.date("date"),
+						p.id("people"), p.decimal("price"));
+			}
+
+			int status(Object value) {
+				return value == null ? 409 : 201;
+			}
+		});
+		add(new Route("POST", "/assignments", "asgID") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.assignHouseCleaningToRoom(p.id("staff"), p.id("hotel"), p.id("roomNo"));
+			}
+		});
+		add(new Route("POST", "/requests", "reqID") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.repairRequest(p.id("manager"), p.id("repair"), p.date("date"), p.string("description"));
+			}
+		});
+		add(new Route("GET", "/rooms/available", "available") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.numberOfAvailableRooms(p.id("hotel"), p.date("date"));
+			}
+		});
+		add(new Route("GET", "/rooms/booked", "booked") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.numberOfBookedRooms(p.id("hotel"));
+			}
+		});
+		add(new Route("GET", "/rooms/free", "rooms") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.listHotelRoomBookingsForAWeek(p.id("hotel"), p.date("from"));
+			}
+		});
+		add(new Route("GET", "/bookings/top", "bookings") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.topKHighestRoomPriceForADateRange(p.date("from"), p.date("to"), p.number("k"));
+			}
+		});
+		add(new Route("GET", "/customers/price", "prices") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.topKHighestPriceBookingsForACustomer(p.string("fName"), p.string("lName"),
+						p.number("k"));
+			}
+		});
+		add(new Route("GET", "/customers/cost", "totals") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.totalCostForCustomer(p.string("fName"), p.string("lName"), p.id("hotel"), p.date("from"),
+						p.date("to"));
+			}
+		});
+		add(new Route("GET", "/repairs", "repairs") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.listRepairsMade(p.string("company"));
+			}
+		});
+		add(new Route("GET", "/companies/top", "companies") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.topKMaintenanceCompany(p.number("k"));
+			}
+		});
+		add(new Route("GET", "/repairs/per-year", "years") {
+			AsyncDBProject.Operation<?> start(Params p) {
+				return async.numberOfRepairsForEachRoomPerYear(p.id("hotel"), p.id("roomNo"));
+			}
+		});
+	}// end routes
+
+	private void add(Route route) {
+		routes.put(route.method + " " + route.path, route);
+	}// end add
+
+	/**
+	 * Answers one request and records its latency.
+	 */
+	void serve(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		String key = method + " " + path;
+		int status = 500;
+		try {
+			if (method.equals("GET") && path.equals("/metrics")) {
+				StringWriter out = new StringWriter();
+				esql.getMetrics().writePrometheus(out);
+				status = 200;
+				send(exchange, status, "text/plain; version=0.0.4; charset=utf-8", out.toString());
+				return;
+			}
+			Route route = routes.get(key);
+			if (route == null) {
+				key = "unknown";
+				status = pathExists(path) ? 405 : 404;
+				send(exchange, status, JSON, error(status == 405 ? "method not allowed" : "no such route"));
+				return;
+			}
+			status = answer(exchange, route);
+		} finally {
+			exchange.close();
+			esql.getMetrics().recordRequest(key, System.nanoTime() - start, status);
+		}
+	}// end serve
+
+	private int answer(HttpExchange exchange, Route route) throws IOException {
+		int status;
+		String body;
+		try {
+			Object value = route.start(params(exchange)).get();
+			status = route.status(value);
+			StringWriter out = new StringWriter();
+			if (status == 409) {
+				out.write("{\"error\":\"room taken\"}");
+			} else {
+				out.write('{');
+				ResultFormat.writeJsonString(route.result, out);
+				out.write(':');
+				writeJson(value, out);
+				out.write('}');
+			}
+			body = out.toString();
+		} catch (IllegalArgumentException e) {
+			status = 400;
+			body = error(e.getMessage());
+		} catch (BodyTooLargeException e) {
+			status = 413;
+			body = error(e.getMessage());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TimeoutException) {
+				status = 504;
+			} else if (cause instanceof RejectedExecutionException) {
+				status = 503;
+			} else {
+				status = 500;
+			}
+			body = error(String.valueOf(cause.getMessage()));
+		} catch (Exception e) {
+			status = 500;
+			body = error(String.valueOf(e.getMessage()));
+		}
+		send(exchange, status, JSON, body);
+		return status;
+	}// end answer
+
+	private boolean pathExists(String path) {
+		for (Route r : routes.values()) {
+			if (r.path.equals(path)) {
+				return true;
+			}
+		}
+		return false;
+	}// end pathExists
+
+	/**
+	 * Returns the query string parameters and, for POST, the form parameters
+	 * of the body.
+	 */
+	private static Params params(HttpExchange exchange) throws IOException {
+		Map<String, String> values = new HashMap<String, String>();
+		decodeForm(exchange.getRequestURI().getRawQuery(), values);
+		if (exchange.getRequestMethod().equals("POST")) {
+			String length = exchange.getRequestHeaders().getFirst("Content-Length");
+			try {
+				if (length != null && Long.parseLong(length.trim()) > MAX_BODY) {
+					throw new BodyTooLargeException();
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid Content-Length");
+			}
+			decodeForm(readBody(exchange.getRequestBody()), values);
+		}
+		return new Params(values);
+	}// end params
+
+	static void decodeForm(String form, Map<String, String> values) throws IOException {
+		if (form == null || form.length() == 0) {
+			return;
+		}
+		for (String pair : form.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			values.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+	}// end decodeForm
+
+	/**
+	 * Reads the request body, failing once it exceeds MAX_BODY bytes; a
+	 * chunked body has no Content-Length to check up front.
+	 */
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			if (body.size() + n > MAX_BODY) {
+				throw new BodyTooLargeException();
+			}
+			body.write(buf, 0, n);
+		}
+		return body.toString("UTF-8");
+	}// end readBody
+
+	/**
+	 * Writes an operation result as JSON: numbers, strings, lists, arrays of
+	 * longs and result sets (as an array of objects, like the jsonl format).
+	 */
+	static void writeJson(Object value, Writer out) throws IOException, SQLException {
+		if (value == null) {
+			out.write("null");
+		} else if (value instanceof Number || value instanceof Boolean) {
+			out.write(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+		} else if (value instanceof long[]) {
+			out.write('[');
+			long[] values = (long[]) value;
+			for (int i = 0; i < values.length; i++) {
+				out.write(i > 0 ? "," : "");
+				out.write(Long.toString(values[i]));
+			}
+			out.write(']');
+		} else if (value instanceof List) {
+			out.write('[');
+			boolean first = true;
+			for (Object v : (List<?>) value) {
+				out.write(first ? "" : ",");
+				writeJson(v, out);
+				first = false;
+			}
+			out.write(']');
+		} else if (value instanceof ResultSet) {
+			ResultSet rs = (ResultSet) value;
+			out.write('[');
+			int rowNo = 0;
+			while (rs.next()) {
+				ResultSetMetaData md = rs.getMetaData();
+				out.write(rowNo > 0 ? "," : "");
+				ResultFormat.JSON_LINES.row(md, rs, rowNo++, out);
+			}
+			out.write(']');
+		} else {
+			ResultFormat.writeJsonString(value.toString(), out);
+		}
+	}// end writeJson
+
+	private static String error(String message) throws IOException {
+		StringWriter out = new StringWriter();
+		out.write("{\"error\":");
+		ResultFormat.writeJsonString(message, out);
+		out.write('}');
+		return out.toString();
+	}// end error
+
+	private static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.flush();
+	}// end send
+
+	/**
+	 * Returns a virtual thread per task executor when the JVM supports them,
+	 * and a fixed pool of dbproject.http.threads threads otherwise.
+	 */
+	private static ExecutorService executor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newFixedThreadPool(Integer.getInteger("dbproject.http.threads", 200),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "dbproject-http-" + count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+	}// end executor
+
+	/**
+	 * Entry point of the --serve mode. Serves until the process is stopped.
+	 */
+	public static void run(final DBProject esql, String port) throws Exception {
+		final HotelServer server = new HotelServer(esql);
+		server.start(Integer.parseInt(port.trim()));
+		System.out.println("Serving on port " + port.trim() + "; stop with Ctrl-C");
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				server.stop();
+				// main never gets to its cleanup; flush the group commit queue and close the pool
+				esql.cleanup();
+			}
+		}, "dbproject-http-shutdown"));
+		new CountDownLatch(1).await();
+	}// end run
+
+}// end HotelServer
@@ -0,0 +1,351 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Daily housekeeping rota: assigns a HouseCleaning staff member to every room
+ * booked for a night, for one hotel or all of them at once.
+ *
+ * The planner reads the housekeepers of every hotel (Staff.employerID), the
+ * rooms with a booking on the night and the current Assigned rows, and plans
+ * every hotel as a separate task on a pool of dbproject.rota.parallelism
+ * threads (default: one per processor). Each plan is balanced: every booked
+ * room gets exactly one housekeeper and the room counts of the housekeepers of
+ * a hotel differ by at most one. A current assignment of a booked room is kept
+ * when its housekeeper still works there and is not over the share; the other
+ * rooms go to the least loaded housekeepers. Assignments of rooms that are not
+ * booked that night are removed. A hotel with booked rooms but no housekeeper
+ * keeps its assignments and is reported.
+ *
+ * The mode prints the difference between the current and the planned
+ * assignments. It is a dry run unless dbproject.rota.apply=true, in which case
+ * the removed rows are deleted and the new ones inserted as two JDBC batches in
+ * one transaction. The transaction holds a SHARE ROW EXCLUSIVE lock on
+ * Assigned from the reading of the current rows to the commit, so an
+ * assignment made meanwhile from the menu waits rather than being lost.
+ *
+ * java [-Ddbproject.rota.apply=true] DBProject &lt;dbname&gt; &lt;port&gt;
+ * &lt;user&gt; --rota &lt;MM/dd/yyyy&gt;[,&lt;hotelID&gt;]
+ */
+public class HousekeepingPlanner {
+
+	private static final String SQL_LOCK = "LOCK TABLE assigned IN SHARE ROW EXCLUSIVE MODE";
+	private static final String SQL_STAFF = "SELECT employerID, SSN FROM staff WHERE role = 'HouseCleaning' AND employerID >= ? AND employerID <= ?";
+	private static final String SQL_BOOKED = "SELECT DISTINCT hotelID, roomNo FROM booking WHERE bookingDate = ? AND hotelID >= ? AND hotelID <= ?";
+	private static final String SQL_ASSIGNED = "SELECT asgID, hotelID, roomNo, staffID FROM assigned WHERE hotelID >= ? AND hotelID <= ? ORDER BY asgID";
+	private static final String SQL_UNASSIGN = "DELETE FROM assigned WHERE asgID = ?";
+
+	/**
+	 * One Assigned row; id is 0 for a planned row that is not written yet.
+	 */
+	static class Assignment {
+		final long id;
+		final long hotel;
+		final long room;
+		final long staff;
+
+		Assignment(long id, long hotel, long room, long staff) {
+			this.id = id;
+			this.hotel = hotel;
+			this.room = room;
+			this.staff = staff;
+		}
+	}// end Assignment
+
+	/**
+	 * What the planner reads about one hotel.
+	 */
+	static class Hotel {
+		final long id;
+		final TreeSet<Long> staff = new TreeSet<Long>();
+		final TreeSet<Long> rooms = new TreeSet<Long>();
+		final List<Assignment> current = new ArrayList<Assignment>();
+
+		Hotel(long id) {
+			this.id = id;
+		}
+	}// end Hotel
+
+	/**
+	 * The planned changes of one hotel.
+	 */
+	static class Plan {
+		final Hotel hotel;
+		final List<Assignment> kept = new ArrayList<Assignment>();
+		final List<Assignment> added = new ArrayList<Assignment>();
+		final List<Assignment> removed = new ArrayList<Assignment>();
+		int minLoad = 0;
+		int maxLoad = 0;
+
+		Plan(Hotel hotel) {
+			this.hotel = hotel;
+		}
+
+		boolean isUnstaffed() {
+			return hotel.staff.isEmpty() && !hotel.rooms.isEmpty();
+		}
+	}// end Plan
+
+	private final DBProject esql;
+	private final java.sql.Date night;
+	private final long fromHotel;
+	private final long toHotel;
+	private final int parallelism;
+
+	/**
+	 * Plans the rota of one hotel, or of every hotel when hotel is null.
+	 */
+	public HousekeepingPlanner(DBProject esql, java.sql.Date night, Long hotel) {
+		this.esql = esql;
+		this.night = night;
+		// hotel 0 is the default row of create.sql
+		this.fromHotel = hotel == null ? 1 : hotel.longValue();
+		this.toHotel = hotel == null ? Integer.MAX_VALUE : hotel.longValue();
+		this.parallelism = Math.max(1,
+				Integer.getInteger("dbproject.rota.parallelism", Runtime.getRuntime().availableProcessors()));
+	}// end HousekeepingPlanner
+
+	/**
+	 * Reads the hotels in range on the given connection.
+	 */
+	Map<Long, Hotel> read(ConnectionPool.Pooled conn) throws SQLException {
+		Map<Long, Hotel> hotels = new TreeMap<Long, Hotel>();
+		ResultSet rs = query(conn, SQL_STAFF, Long.valueOf(fromHotel), Long.valueOf(toHotel));
+		while (rs.next()) {
+			hotel(hotels, rs.getLong(1)).staff.add(rs.getLong(2));
+		}
+		rs.close();
+		rs = query(conn, SQL_BOOKED, night, Long.valueOf(fromHotel), Long.valueOf(toHotel));
+		while (rs.next()) {
+			hotel(hotels, rs.getLong(1)).rooms.add(rs.getLong(2));
+		}
+		rs.close();
+		rs = query(conn, SQL_ASSIGNED, Long.valueOf(fromHotel), Long.valueOf(toHotel));
+		while (rs.next()) {
+			long hotel = rs.getLong(2);
+			hotel(hotels, hotel).current.add(new Assignment(rs.getLong(1), hotel, rs.getLong(3), rs.getLong(4)));
+		}
+		rs.close();
+		return hotels;
+	}// end read
+
+	private static ResultSet query(ConnectionPool.Pooled conn, String sql, Object... params) throws SQLException {
+		PreparedStatement ps = conn.statements.prepare(sql);
+		StatementCache.bind(ps, params);
+		return ps.executeQuery();
+	}// end query
+
+	private static Hotel hotel(Map<Long, Hotel> hotels, long id) {
+		Hotel h = hotels.get(id);
+		if (h == null) {
+			h = new Hotel(id);
+			hotels.put(id, h);
+		}
+		return h;
+	}// end hotel
+
+	/**
+	 * Plans every hotel in parallel and returns the plans in hotel order.
+	 */
+	List<Plan> plan(Map<Long, Hotel> hotels) throws SQLException {
+		List<Callable<Plan>> tasks = new ArrayList<Callable<Plan>>();
+		for (final Hotel h : hotels.values()) {
+			tasks.add(new Callable<Plan>() {
+				public Plan call() {
+					return plan(h);
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Plan> plans = new ArrayList<Plan>();
+			for (Future<Plan> f : pool.invokeAll(tasks)) {
+				plans.add(f.get());
+			}
+			return plans;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while planning the rota");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}// end plan
+
+	/**
+	 * Plans one hotel: keeps what can be kept, then hands the other booked
+	 * rooms to the least loaded housekeeper (the lowest SSN on a tie).
+	 */
+	static Plan plan(Hotel h) {
+		Plan plan = new Plan(h);
+		if (h.staff.isEmpty()) {
+			// nobody to assign; leave the hotel as it is
+			plan.kept.addAll(h.current);
+			return plan;
+		}
+		// keeping at most the floor of the share leaves room to even out
+		int share = Math.max(1, h.rooms.size() / h.staff.size());
+		Map<Long, int[]> load = new TreeMap<Long, int[]>();
+		for (Long s : h.staff) {
+			load.put(s, new int[1]);
+		}
+		TreeSet<Long> open = new TreeSet<Long>(h.rooms);
+		for (Assignment a : h.current) {
+			int[] l = load.get(a.staff);
+			if (open.contains(a.room) && l != null && l[0] < share) {
+				open.remove(a.room);
+				l[0]++;
+				plan.kept.add(a);
+			} else {
+				plan.removed.add(a);
+			}
+		}
+		PriorityQueue<long[]> least = new PriorityQueue<long[]>(load.size(), new java.util.Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				if (a[0] != b[0]) {
+					return a[0] < b[0] ? -1 : 1;
+				}
+				return a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1);
+			}
+		});
+		for (Map.Entry<Long, int[]> e : load.entrySet()) {
+			least.add(new long[] { e.getValue()[0], e.getKey() });
+		}
+		for (Long room : open) {
+			long[] s = least.poll();
+			plan.added.add(new Assignment(0, h.id, room, s[1]));
+			s[0]++;
+			least.add(s);
+		}
+		plan.minLoad = Integer.MAX_VALUE;
+		for (long[] s : least) {
+			plan.minLoad = Math.min(plan.minLoad, (int) s[0]);
+			plan.maxLoad = Math.max(plan.maxLoad, (int) s[0]);
+		}
+		return plan;
+	}// end plan
+
+	/**
+	 * Deletes the removed rows and inserts the added ones, as two batches on
+	 * the connection of the open transaction.
+	 */
+	void write(ConnectionPool.Pooled conn, List<Plan> plans) throws SQLException {
+		PreparedStatement delete = conn.statements.prepare(SQL_UNASSIGN);
+		PreparedStatement insert = conn.statements.prepare(DBProject.SQL_ASSIGN_STAFF);
+		try {
+			for (Plan p : plans) {
+				for (Assignment a : p.removed) {
+					StatementCache.bind(delete, Long.valueOf(a.id));
+					delete.addBatch();
+				}
+				for (Assignment a : p.added) {
+					StatementCache.bind(insert, Long.valueOf(esql.nextId(IdAllocator.ASSIGNED)), Long.valueOf(a.staff),
+							Long.valueOf(a.hotel), Long.valueOf(a.room));
+					insert.addBatch();
+				}
+			}
+			delete.executeBatch();
+			insert.executeBatch();
+		} finally {
+			// both statements stay cached
+			delete.clearBatch();
+			insert.clearBatch();
+		}
+	}// end write
+
+	/**
+	 * Prints the changes of every hotel and a summary line per hotel.
+	 */
+	static void print(List<Plan> plans) {
+		int kept = 0;
+		int added = 0;
+		int removed = 0;
+		for (Plan p : plans) {
+			if (p.isUnstaffed()) {
+				System.out.println(String.format("hotel %d: %d booked rooms but no HouseCleaning staff, left as is",
+						p.hotel.id, p.hotel.rooms.size()));
+				continue;
+			}
+			for (Assignment a : p.removed) {
+				System.out.println(String.format("- hotel %d room %d staff %d (assignment %d)", a.hotel, a.room,
+						a.staff, a.id));
+			}
+			for (Assignment a : p.added) {
+				System.out.println(String.format("+ hotel %d room %d staff %d", a.hotel, a.room, a.staff));
+			}
+			if (!p.hotel.staff.isEmpty()) {
+				System.out.println(String.format(
+						"hotel %d: %d booked rooms, %d housekeepers with %d to %d rooms each; %d kept, %d added, %d removed",
+						p.hotel.id, p.hotel.rooms.size(), p.hotel.staff.size(), p.minLoad, p.maxLoad, p.kept.size(),
+						p.added.size(), p.removed.size()));
+			}
+			kept += p.kept.size();
+			added += p.added.size();
+			removed += p.removed.size();
+		}
+		System.out.println(String.format("%d hotels: %d assignments kept, %d added, %d removed", plans.size(), kept,
+				added, removed));
+	}// end print
+
+	/**
+	 * Plans the rota and, when apply is set, writes it in one transaction.
+	 *
+	 * @return the plans of the hotels in range
+	 * @throws java.sql.SQLException when the data cannot be read or the rota
+	 *                               cannot be written; nothing is written then
+	 */
+	public List<Plan> run(boolean apply) throws SQLException {
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		try {
+			conn.connection.setAutoCommit(false);
+			if (apply) {
+				Statement lock = conn.connection.createStatement();
+				try {
+					lock.execute(SQL_LOCK);
+				} finally {
+					ConnectionPool.closeQuietly(lock);
+				}
+			}
+			List<Plan> plans = plan(read(conn));
+			if (apply) {
+				write(conn, plans);
+				conn.connection.commit();
+			}
+			return plans;
+		} finally {
+			// rolls back a dry run and a failed write
+			esql.getPool().release(conn);
+		}
+	}// end run
+
+	/**
+	 * Entry point of the --rota mode.
+	 */
+	public static void run(DBProject esql, String arg) throws Exception {
+		String[] parts = arg.split(",");
+		if (parts.length > 2) {
+			throw new IllegalArgumentException("Expected <date>[,<hotelID>] but got: " + arg);
+		}
+		boolean apply = Boolean.getBoolean("dbproject.rota.apply");
+		HousekeepingPlanner planner = new HousekeepingPlanner(esql, DBProject.parseDate(parts[0]),
+				parts.length == 2 ? DBProject.parseId(parts[1]) : null);
+		long start = System.nanoTime();
+		List<Plan> plans = planner.run(apply);
+		print(plans);
+		System.out.println(String.format("%s in %.2f s", apply ? "Rota written" : "Dry run, nothing written",
+				(System.nanoTime() - start) / 1e9));
+	}// end run
+
+}// end HousekeepingPlanner
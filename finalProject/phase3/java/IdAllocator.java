@@ -0,0 +1,137 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates primary keys for the tables DBProject inserts into.
+ *
+ * Every table has a database sequence created by create.sql with an increment
+ * of BLOCK_SIZE. One nextval() call therefore leases a whole block of ids
+ * [n, n + BLOCK_SIZE) for this process, and the ids of the block are handed
+ * out from memory with an atomic increment. Only the thread that finds the
+ * current block exhausted goes back to the database for a new one.
+ *
+ * Because the blocks come from sequences, concurrent clerks and separate
+ * processes never receive the same id, and a restarted process simply leases
+ * a new block. The ids left over in a block when the process exits are lost,
+ * so the keys have gaps but are never reused.
+ */
+public class IdAllocator {
+
+	// must match the INCREMENT BY of the sequences in create.sql
+	public static final int BLOCK_SIZE = 50;
+
+	public static final String CUSTOMER = "customer_id_seq";
+	public static final String BOOKING = "booking_id_seq";
+	public static final String REPAIR = "repair_id_seq";
+	public static final String REQUEST = "request_id_seq";
+	public static final String ASSIGNED = "assigned_id_seq";
+	public static final String MAINTENANCE_COMPANY = "maintenancecompany_id_seq";
+
+	private static final String SQL_NEXT_BLOCK = "SELECT nextval(?::regclass)";
+
+	// {sequence, table, key column} of every allocated key
+	private static final String[][] KEYS = { { CUSTOMER, "Customer", "customerID" }, { BOOKING, "Booking", "bID" },
+			{ REPAIR, "Repair", "rID" }, { REQUEST, "Request", "reqID" }, { ASSIGNED, "Assigned", "asgID" },
+			{ MAINTENANCE_COMPANY, "MaintenanceCompany", "cmpID" } };
+
+	/**
+	 * A leased range of ids. next runs past end once the block is used up.
+	 */
+	private static class Block {
+		final AtomicLong next;
+		final long end;
+
+		Block(long start, long end) {
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}// end Block
+
+	/**
+	 * The current block of one sequence.
+	 */
+	private class Sequence {
+		final String name;
+		volatile Block current = new Block(0, 0);
+
+		Sequence(String name) {
+			this.name = name;
+		}
+
+		long next() throws SQLException {
+			while (true) {
+				Block block = current;
+				long id = block.next.getAndIncrement();
+				if (id < block.end) {
+					return id;
+				}
+				synchronized (this) {
+					// another thread may have refilled while we waited
+					if (current == block) {
+						current = lease(name);
+					}
+				}
+			} // end while
+		}
+	}// end Sequence
+
+	private final DBProject esql;
+	private final ConcurrentMap<String, Sequence> sequences = new ConcurrentHashMap<String, Sequence>();
+	private final AtomicLong leases = new AtomicLong();
+
+	public IdAllocator(DBProject esql) {
+		this.esql = esql;
+	}// end IdAllocator
+
+	/**
+	 * Returns the next unused id of the given sequence.
+	 *
+	 * @param sequence one of the sequence name constants of this class
+	 * @throws java.sql.SQLException when a new block cannot be leased
+	 */
+	public long next(String sequence) throws SQLException {
+		Sequence seq = sequences.get(sequence);
+		if (seq == null) {
+			Sequence created = new Sequence(sequence);
+			seq = sequences.putIfAbsent(sequence, created);
+			if (seq == null) {
+				seq = created;
+			}
+		}
+		return seq.next();
+	}// end next
+
+	/**
+	 * Returns the number of blocks leased from the database so far.
+	 */
+	public long getLeaseCount() {
+		return leases.get();
+	}
+
+	/**
+	 * Moves every sequence past the largest key in its table, e.g. after a bulk
+	 * load inserted rows with explicit keys.
+	 *
+	 * @throws java.sql.SQLException when a sequence cannot be updated
+	 */
+	public static void resync(DBProject esql) throws SQLException {
+		for (String[] key : KEYS) {
+			esql.executeQuery("SELECT setval('" + key[0] + "', (SELECT COALESCE(MAX(" + key[2] + "), 0) + 1 FROM "
+					+ key[1] + "), false)");
+		}
+	}// end resync
+
+	private Block lease(String sequence) throws SQLException {
+		ResultSet rs = esql.executeQuery(SQL_NEXT_BLOCK, sequence);
+		if (!rs.next()) {
+			throw new SQLException("nextval returned no row for " + sequence);
+		}
+		long start = rs.getLong(1);
+		leases.incrementAndGet();
+		return new Block(start, start + BLOCK_SIZE);
+	}// end lease
+
+}// end IdAllocator
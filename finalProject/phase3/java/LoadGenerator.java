@@ -0,0 +1,759 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic workload generator and trace replay.
+ *
+ * --loadgen &lt;dataDir&gt; learns the distributions of the bundled data from
+ * booking.csv, customer.csv, repair.csv, room.csv, staff.csv and
+ * maintenanceCompany.csv: which hotels, rooms and customers are booked how
+ * often, the booking prices, dates and party sizes, and the companies, rooms
+ * and dates of the repairs. Every generated operation draws its arguments from
+ * these empirical distributions, so hot hotels stay hot and prices keep their
+ * spread. The operations are picked by the weights of dbproject.loadgen.mix
+ * ("bookRoom=20,numberOfAvailableRooms=25,..."; operations left out are not
+ * run) and executed through the same paths as the menu and the batch mode.
+ *
+ * With dbproject.loadgen.rate set, the load is open loop: operations arrive
+ * as a Poisson process at that many per second whether or not earlier ones
+ * have finished, and latency is measured from the scheduled arrival, so a
+ * backlog shows up in the percentiles instead of lowering the rate. Each
+ * arrival runs on a virtual thread when the JVM has them (Java 21) and on a
+ * pooled thread otherwise; at most dbproject.loadgen.maxInFlight operations
+ * run at once and arrivals beyond that are dropped and reported. Without a
+ * rate, dbproject.loadgen.threads workers run back to back (closed loop).
+ * The run lasts dbproject.loadgen.durationMs and dbproject.loadgen.seed makes
+ * the generated sequence repeatable.
+ *
+ * With dbproject.loadgen.record=&lt;file&gt; every operation is written to a
+ * trace as "offsetMicros,operation,arguments..." and --replay &lt;file&gt;
+ * runs a trace again, open loop at the recorded offsets divided by
+ * dbproject.loadgen.replaySpeed, with the recorded arguments.
+ *
+ * Bookings and repairs are dated like the data, shifted by
+ * dbproject.loadgen.shiftYears years, so run it against a scratch database:
+ * java -Ddbproject.loadgen.rate=200 DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --loadgen ../data
+ */
+public class LoadGenerator {
+
+	private static final String DEFAULT_MIX = "addCustomer=2,addRoom=1,addMaintenanceCompany=1,addRepair=3,bookRoom=20,"
+			+ "assignHouseCleaningToRoom=2,repairRequest=2,numberOfAvailableRooms=25,numberOfBookedRooms=5,"
+			+ "listHotelRoomBookingsForAWeek=10,topKHighestRoomPriceForADateRange=5,topKHighestPriceBookingsForACustomer=5,"
+			+ "totalCostForCustomer=8,listRepairsMade=4,topKMaintenanceCompany=3,numberOfRepairsForEachRoomPerYear=4";
+
+	/**
+	 * One generated operation: the menu operation name and its arguments as
+	 * they appear in a trace.
+	 */
+	static class Call {
+		final String operation;
+		final String[] args;
+
+		Call(String operation, String... args) {
+			this.operation = operation;
+			this.args = args;
+		}
+	}// end Call
+
+	/**
+	 * The outcome counters of one operation.
+	 */
+	static class Stats {
+		final Metrics.Histogram latency = new Metrics.Histogram();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong taken = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+	}// end Stats
+
+	/**
+	 * The empirical distributions of the bundled data. Every array holds one
+	 * entry per row it was read from, so picking an entry uniformly follows
+	 * the distribution of the column.
+	 */
+	static class Model {
+		final List<Long> bookingHotels = new ArrayList<Long>();
+		final List<Long> bookingCustomers = new ArrayList<Long>();
+		final List<String> bookingDates = new ArrayList<String>();
+		final List<String> partySizes = new ArrayList<String>();
+		final List<String> prices = new ArrayList<String>();
+		final Map<Long, List<Long>> roomsByHotel = new HashMap<Long, List<Long>>();
+		final List<long[]> rooms = new ArrayList<long[]>();
+		final List<String> roomTypes = new ArrayList<String>();
+		final Map<Long, String[]> customerNames = new HashMap<Long, String[]>();
+		final List<String[]> customers = new ArrayList<String[]>();
+		final List<long[]> repairRooms = new ArrayList<long[]>();
+		final List<Long> repairCompanies = new ArrayList<Long>();
+		final List<String> repairDates = new ArrayList<String>();
+		final List<String> repairDescriptions = new ArrayList<String>();
+		final List<String> repairTypes = new ArrayList<String>();
+		final List<Long> repairIds = new ArrayList<Long>();
+		final Map<Long, String> companyNames = new HashMap<Long, String>();
+		final List<String[]> companies = new ArrayList<String[]>();
+		final List<Long> managers = new ArrayList<Long>();
+		final List<Long> housekeepers = new ArrayList<Long>();
+	}// end Model
+
+	private final DBProject esql;
+	private final long durationMillis;
+	private final double rate;
+	private final int threads;
+	private final int maxInFlight;
+	private final long seed;
+	private final String record;
+	private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+	private final AtomicLong nextRoomNo = new AtomicLong();
+
+	private Model model;
+	private String[] mixNames;
+	private int[] mixWeights;
+	private int mixTotal;
+	private Writer trace = null;
+	private long startNanos;
+
+	public LoadGenerator(DBProject esql) {
+		this.esql = esql;
+		this.durationMillis = Long.getLong("dbproject.loadgen.durationMs", 60000);
+		this.rate = Double.parseDouble(System.getProperty("dbproject.loadgen.rate", "0"));
+		this.threads = Integer.getInteger("dbproject.loadgen.threads", 8);
+		this.maxInFlight = Integer.getInteger("dbproject.loadgen.maxInFlight", 256);
+		this.seed = Long.getLong("dbproject.loadgen.seed", 42);
+		this.record = System.getProperty("dbproject.loadgen.record");
+	}// end LoadGenerator
+
+	/**
+	 * Generates load from the distributions of the data in dataDir.
+	 *
+	 * @return the number of failed operations
+	 */
+	public long generate(String dataDir) throws Exception {
+		model = learn(new File(dataDir), Integer.getInteger("dbproject.loadgen.shiftYears", 0));
+		parseMix(System.getProperty("dbproject.loadgen.mix", DEFAULT_MIX));
+		prepare();
+		try {
+			if (rate > 0) {
+				System.out.println(String.format(Locale.ROOT, "Open loop at %.1f operations/s for %d ms", rate,
+						durationMillis));
+				openLoop();
+			} else {
+				System.out.println("Closed loop with " + threads + " threads for " + durationMillis + " ms");
+				closedLoop();
+			}
+		} finally {
+			if (trace != null) {
+				trace.close();
+			}
+		}
+		return report();
+	}// end generate
+
+	/**
+	 * Runs the operations of a trace at their recorded offsets.
+	 *
+	 * @return the number of failed operations
+	 */
+	public long replay(String traceFile) throws Exception {
+		double speed = Double.parseDouble(System.getProperty("dbproject.loadgen.replaySpeed", "1"));
+		prepare();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile), "UTF-8"));
+		ExecutorService executor = executor();
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = splitTraceLine(line);
+				long offset = (long) (Long.parseLong(fields[0]) * 1000 / speed);
+				String[] args = new String[fields.length - 2];
+				System.arraycopy(fields, 2, args, 0, args.length);
+				submit(executor, inFlight, new Call(fields[1], args), startNanos + offset);
+			}
+		} finally {
+			in.close();
+			drain(executor);
+			if (trace != null) {
+				trace.close();
+			}
+		}
+		return report();
+	}// end replay
+
+	private void prepare() throws Exception {
+		// added rooms are numbered past every existing room
+		ResultSet rs = esql.executeQuery("SELECT COALESCE(MAX(roomNo), 0) FROM room", new Object[0]);
+		rs.next();
+		nextRoomNo.set(Math.max(rs.getLong(1), 1000000));
+		if (record != null) {
+			trace = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(record), "UTF-8"));
+		}
+		startNanos = System.nanoTime();
+	}// end prepare
+
+	private void openLoop() throws InterruptedException {
+		Random rnd = new Random(seed);
+		ExecutorService executor = executor();
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		long end = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		double meanGapNanos = 1e9 / rate;
+		long at = startNanos;
+		try {
+			while (true) {
+				// exponential gaps make Poisson arrivals
+				at += (long) (-Math.log(1 - rnd.nextDouble()) * meanGapNanos);
+				if (at >= end) {
+					break;
+				}
+				submit(executor, inFlight, next(rnd), at);
+			}
+		} finally {
+			drain(executor);
+		}
+	}// end openLoop
+
+	private void closedLoop() throws InterruptedException {
+		final long end = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final Random rnd = new Random(seed + t);
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					long now;
+					while ((now = System.nanoTime()) < end) {
+						Call call = next(rnd);
+						traceCall(call, now);
+						execute(call, now);
+					}
+				}
+			}, "dbproject-loadgen-" + t);
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+	}// end closedLoop
+
+	/**
+	 * Waits for the scheduled time and hands the call to the executor, or
+	 * drops it when maxInFlight calls are still running.
+	 */
+	private void submit(ExecutorService executor, final Semaphore inFlight, final Call call, final long at)
+			throws InterruptedException {
+		long wait;
+		while ((wait = at - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(wait);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		// dropped arrivals are traced too, a replay offers the same load
+		traceCall(call, at);
+		if (!inFlight.tryAcquire()) {
+			stats(call.operation).dropped.incrementAndGet();
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					execute(call, at);
+				} finally {
+					inFlight.release();
+				}
+			}
+		});
+	}// end submit
+
+	/**
+	 * Returns an executor that starts a virtual thread per task when the JVM
+	 * supports them, and a pool of daemon threads otherwise. Both are bounded
+	 * by the in-flight semaphore of the caller.
+	 */
+	private static ExecutorService executor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicLong count = new AtomicLong();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "dbproject-loadgen-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}// end executor
+
+	private static void drain(ExecutorService executor) throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			System.err.println("Operations still running after one minute; not waiting for them");
+		}
+	}// end drain
+
+	/**
+	 * Runs one call, scheduled at the given time, and records its outcome.
+	 */
+	void execute(Call call, long scheduledNanos) {
+		Stats s = stats(call.operation);
+		Metrics.setOperation(call.operation);
+		try {
+			if (!run(call)) {
+				s.taken.incrementAndGet();
+			}
+		} catch (Exception e) {
+			if (s.errors.getAndIncrement() == 0) {
+				System.err.println(call.operation + ": " + e.getMessage());
+			}
+		} finally {
+			Metrics.setOperation(null);
+			s.latency.record(System.nanoTime() - scheduledNanos);
+		}
+	}// end execute
+
+	/**
+	 * Executes one call.
+	 *
+	 * @return false when a booking found the room taken
+	 */
+	boolean run(Call call) throws Exception {
+		String op = call.operation;
+		String[] a = call.args;
+		if (op.equals("addCustomer")) {
+			Object[] params = write("customer", a);
+			esql.getCustomers().add((String) params[1], (String) params[2], (Long) params[0]);
+		} else if (op.equals("addRoom")) {
+			Long hotel = DBProject.parseId(a[0]);
+			long roomNo = nextRoomNo.incrementAndGet();
+			write("room", a[0], String.valueOf(roomNo), a[1]);
+			esql.getOccupancy().recordRoom(hotel, roomNo);
+		} else if (op.equals("addMaintenanceCompany")) {
+			Object[] params = write("company", a);
+			esql.getLeaderboard().recordCompany((Long) params[0], (String) params[1]);
+		} else if (op.equals("addRepair")) {
+			Object[] params = params("repair", a);
+			DBProject.repair(esql, (Long) params[0], (Long) params[1], (Long) params[2], (Long) params[3],
+					(java.sql.Date) params[4], (String) params[5], (String) params[6]);
+		} else if (op.equals("bookRoom")) {
+			return DBProject.book(esql, esql.nextId(IdAllocator.BOOKING), DBProject.parseId(a[0]),
+					DBProject.parseId(a[1]), DBProject.parseId(a[2]), DBProject.parseDate(a[3]),
+					DBProject.parseId(a[4]), new BigDecimal(a[5]));
+		} else if (op.equals("assignHouseCleaningToRoom")) {
+			insert("assign", a);
+		} else if (op.equals("repairRequest")) {
+			insert("request", a);
+		} else if (op.equals("numberOfAvailableRooms")) {
+			java.sql.Date from = DBProject.parseDate(a[1]);
+			DBProject.countAvailableRooms(esql, DBProject.parseId(a[0]), from,
+					new java.sql.Date(DBProject.addDays(from, 1).getTime()));
+		} else if (op.equals("numberOfBookedRooms")) {
+			DBProject.bookedRooms(esql, DBProject.parseId(a[0]));
+		} else if (op.equals("listHotelRoomBookingsForAWeek")) {
+			java.sql.Date from = DBProject.parseDate(a[1]);
+			DBProject.freeRooms(esql, DBProject.parseId(a[0]), from,
+					new java.sql.Date(DBProject.addDays(from, 7).getTime()));
+		} else if (op.equals("topKHighestRoomPriceForADateRange")) {
+			DBProject.topKBookings(esql, DBProject.parseDate(a[0]), DBProject.parseDate(a[1]),
+					Integer.parseInt(a[2]));
+		} else if (op.equals("topKHighestPriceBookingsForACustomer")) {
+			for (long customer : esql.getCustomers().resolve(a[0], a[1])) {
+				DBProject.kthPrice(esql, customer, Integer.parseInt(a[2]));
+			}
+		} else if (op.equals("totalCostForCustomer")) {
+			for (long customer : esql.getCustomers().resolve(a[0], a[1])) {
+				DBProject.totalCost(esql, customer, DBProject.parseDate(a[3]), DBProject.parseDate(a[4]),
+						DBProject.parseId(a[2]));
+			}
+		} else if (op.equals("listRepairsMade")) {
+			esql.executeQuery(DBProject.SQL_REPAIRS_MADE, a[0]);
+		} else if (op.equals("topKMaintenanceCompany")) {
+			esql.getLeaderboard().topK(Integer.parseInt(a[0]));
+		} else if (op.equals("numberOfRepairsForEachRoomPerYear")) {
+			esql.executeQuery(DBProject.SQL_REPAIRS_PER_YEAR, DBProject.parseId(a[0]), DBProject.parseId(a[1]));
+		} else {
+			throw new IllegalArgumentException("Unknown operation " + op);
+		}
+		return true;
+	}// end run
+
+	/**
+	 * Applies one write through the record types of the batch mode and
+	 * returns the bound parameters.
+	 */
+	private Object[] write(String type, String... fields) throws Exception {
+		Object[] params = params(type, fields);
+		esql.executeUpdate(BatchRunner.TYPES.get(type).sql, params);
+		return params;
+	}// end write
+
+	/**
+	 * Like write, for the inserts that go through the group commit queue when
+	 * it is enabled.
+	 */
+	private Object[] insert(String type, String... fields) throws Exception {
+		Object[] params = params(type, fields);
+		esql.executeInsert(BatchRunner.TYPES.get(type).sql, params);
+		return params;
+	}// end insert
+
+	/**
+	 * Checks the fields of a write and returns its parameters.
+	 */
+	private Object[] params(String type, String... fields) throws Exception {
+		BatchRunner.RecordType t = BatchRunner.TYPES.get(type);
+		if (fields.length != t.fields || !t.isValid(fields)) {
+			throw new IllegalArgumentException("Invalid " + type + " record");
+		}
+		return t.params(esql, fields);
+	}// end params
+
+	/**
+	 * Draws the next call from the operation mix and the data distributions.
+	 */
+	Call next(Random rnd) {
+		int w = rnd.nextInt(mixTotal);
+		int i = 0;
+		while (w >= mixWeights[i]) {
+			w -= mixWeights[i++];
+		}
+		String op = mixNames[i];
+		Model m = model;
+		if (op.equals("addCustomer")) {
+			// every field from a different customer, so the new ones are not copies
+			return new Call(op, pick(rnd, m.customers)[1], pick(rnd, m.customers)[2], pick(rnd, m.customers)[3],
+					pick(rnd, m.customers)[4], pick(rnd, m.customers)[5], pick(rnd, m.customers)[6]);
+		} else if (op.equals("addRoom")) {
+			return new Call(op, String.valueOf(pick(rnd, m.bookingHotels)), pick(rnd, m.roomTypes));
+		} else if (op.equals("addMaintenanceCompany")) {
+			return new Call(op, pick(rnd, m.companies)[1], pick(rnd, m.companies)[2], "Y");
+		} else if (op.equals("addRepair")) {
+			long[] room = pick(rnd, m.repairRooms);
+			return new Call(op, String.valueOf(room[0]), String.valueOf(room[1]),
+					String.valueOf(pick(rnd, m.repairCompanies)), pick(rnd, m.repairDates),
+					pick(rnd, m.repairDescriptions), pick(rnd, m.repairTypes));
+		} else if (op.equals("bookRoom")) {
+			long hotel = bookedHotel(rnd);
+			return new Call(op, String.valueOf(pick(rnd, m.bookingCustomers)), String.valueOf(hotel),
+					String.valueOf(pick(rnd, m.roomsByHotel.get(hotel))), pick(rnd, m.bookingDates),
+					pick(rnd, m.partySizes), pick(rnd, m.prices));
+		} else if (op.equals("assignHouseCleaningToRoom")) {
+			long[] room = pick(rnd, m.rooms);
+			return new Call(op, String.valueOf(pick(rnd, m.housekeepers)), String.valueOf(room[0]),
+					String.valueOf(room[1]));
+		} else if (op.equals("repairRequest")) {
+			return new Call(op, String.valueOf(pick(rnd, m.managers)), String.valueOf(pick(rnd, m.repairIds)),
+					pick(rnd, m.repairDates), pick(rnd, m.repairDescriptions));
+		} else if (op.equals("numberOfAvailableRooms") || op.equals("listHotelRoomBookingsForAWeek")) {
+			return new Call(op, String.valueOf(bookedHotel(rnd)), pick(rnd, m.bookingDates));
+		} else if (op.equals("numberOfBookedRooms")) {
+			return new Call(op, String.valueOf(bookedHotel(rnd)));
+		} else if (op.equals("topKHighestRoomPriceForADateRange")) {
+			String from = pick(rnd, m.bookingDates);
+			return new Call(op, from, plusDays(from, 30), String.valueOf(1 + rnd.nextInt(10)));
+		} else if (op.equals("topKHighestPriceBookingsForACustomer")) {
+			String[] name = bookingCustomerName(rnd);
+			return new Call(op, name[0], name[1], String.valueOf(rnd.nextInt(3)));
+		} else if (op.equals("totalCostForCustomer")) {
+			String[] name = bookingCustomerName(rnd);
+			String from = pick(rnd, m.bookingDates);
+			return new Call(op, name[0], name[1], String.valueOf(bookedHotel(rnd)), from, plusDays(from, 365));
+		} else if (op.equals("listRepairsMade")) {
+			return new Call(op, m.companyNames.get(pick(rnd, m.repairCompanies)));
+		} else if (op.equals("topKMaintenanceCompany")) {
+			return new Call(op, String.valueOf(1 + rnd.nextInt(10)));
+		} else {
+			long[] room = pick(rnd, m.repairRooms);
+			return new Call(op, String.valueOf(room[0]), String.valueOf(room[1]));
+		}
+	}// end next
+
+	/**
+	 * Returns a hotel drawn by how often it is booked, skipping hotels
+	 * without rooms.
+	 */
+	private long bookedHotel(Random rnd) {
+		while (true) {
+			long hotel = pick(rnd, model.bookingHotels);
+			if (model.roomsByHotel.containsKey(hotel)) {
+				return hotel;
+			}
+		}
+	}// end bookedHotel
+
+	/**
+	 * Returns the first and last name of a customer drawn by how often they
+	 * book.
+	 */
+	private String[] bookingCustomerName(Random rnd) {
+		while (true) {
+			String[] name = model.customerNames.get(pick(rnd, model.bookingCustomers));
+			if (name != null) {
+				return name;
+			}
+		}
+	}// end bookingCustomerName
+
+	private void traceCall(Call call, long scheduledNanos) {
+		if (trace == null) {
+			return;
+		}
+		StringBuilder line = new StringBuilder();
+		line.append(TimeUnit.NANOSECONDS.toMicros(scheduledNanos - startNanos)).append(',').append(call.operation);
+		for (String arg : call.args) {
+			line.append(',').append(arg.replace("\\", "\\\\").replace(",", "\\,"));
+		}
+		line.append('\n');
+		try {
+			synchronized (trace) {
+				trace.write(line.toString());
+			}
+		} catch (IOException e) {
+			System.err.println("Trace write failed: " + e.getMessage());
+		}
+	}// end traceCall
+
+	/**
+	 * Splits a trace line on the commas that are not escaped by a backslash.
+	 */
+	static String[] splitTraceLine(String line) throws IOException {
+		int columns = 1;
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) == '\\') {
+				i++;
+			} else if (line.charAt(i) == ',') {
+				columns++;
+			}
+		}
+		if (columns < 2) {
+			throw new IOException("Not a trace line: " + line);
+		}
+		return BulkLoader.splitCopyLine(line, columns);
+	}// end splitTraceLine
+
+	private Stats stats(String operation) {
+		Stats s = stats.get(operation);
+		if (s == null) {
+			Stats created = new Stats();
+			s = stats.putIfAbsent(operation, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		return s;
+	}// end stats
+
+	/**
+	 * Prints throughput, latency and outcome of every operation and of the
+	 * whole run.
+	 *
+	 * @return the number of failed operations
+	 */
+	long report() {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		System.out.println(String.format("%-36s %8s %9s %9s %9s %9s %9s %7s %7s %7s", "operation", "ops", "ops/s",
+				"p50 ms", "p90 ms", "p99 ms", "max ms", "errors", "taken", "dropped"));
+		Metrics.Histogram all = new Metrics.Histogram();
+		long errors = 0;
+		long dropped = 0;
+		for (String op : DBProject.OPERATIONS) {
+			Stats s = stats.get(op);
+			if (s == null) {
+				continue;
+			}
+			Metrics.Histogram h = s.latency;
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d %9.1f %9.3f %9.3f %9.3f %9.3f %7d %7d %7d", op,
+					h.getCount(), h.getCount() / seconds, h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6,
+					h.quantile(0.99) / 1e6, h.getMax() / 1e6, s.errors.get(), s.taken.get(), s.dropped.get()));
+			errors += s.errors.get();
+			dropped += s.dropped.get();
+		}
+		long ops = 0;
+		for (Stats s : stats.values()) {
+			ops += s.latency.getCount();
+		}
+		System.out.println(String.format(Locale.ROOT, "%d operations in %.1f s: %.1f ops/s, %d errors (%.2f%%), %d dropped",
+				ops, seconds, ops / seconds, errors, ops == 0 ? 0 : 100.0 * errors / ops, dropped));
+		System.out.println(esql.getPool().stats());
+		return errors;
+	}// end report
+
+	private void parseMix(String mix) {
+		Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+		for (String part : mix.split(",")) {
+			String[] kv = part.split("=");
+			String op = kv[0].trim();
+			if (!java.util.Arrays.asList(DBProject.OPERATIONS).contains(op) || kv.length != 2) {
+				throw new IllegalArgumentException("Invalid dbproject.loadgen.mix entry: " + part);
+			}
+			int weight = Integer.parseInt(kv[1].trim());
+			if (weight > 0) {
+				weights.put(op, weight);
+			}
+		}
+		if (weights.isEmpty()) {
+			throw new IllegalArgumentException("dbproject.loadgen.mix selects no operation");
+		}
+		mixNames = new String[weights.size()];
+		mixWeights = new int[weights.size()];
+		int i = 0;
+		for (Map.Entry<String, Integer> e : weights.entrySet()) {
+			mixNames[i] = e.getKey();
+			mixWeights[i++] = e.getValue();
+			mixTotal += e.getValue();
+		}
+	}// end parseMix
+
+	/**
+	 * Reads the distributions of the data files. Rows with id 0 are the
+	 * defaults that foreign keys fall back to and are skipped.
+	 */
+	static Model learn(File dir, int shiftYears) throws IOException, ParseException {
+		Model m = new Model();
+		for (String[] f : rows(dir, "room.csv", 3)) {
+			long hotel = Long.parseLong(f[0]);
+			long room = Long.parseLong(f[1]);
+			if (hotel == 0) {
+				continue;
+			}
+			List<Long> rooms = m.roomsByHotel.get(hotel);
+			if (rooms == null) {
+				rooms = new ArrayList<Long>();
+				m.roomsByHotel.put(hotel, rooms);
+			}
+			rooms.add(room);
+			m.rooms.add(new long[] { hotel, room });
+			m.roomTypes.add(f[2]);
+		}
+		for (String[] f : rows(dir, "customer.csv", 7)) {
+			if (!f[0].equals("0")) {
+				f[5] = date(f[5], 0);
+				m.customers.add(f);
+				m.customerNames.put(Long.parseLong(f[0]), new String[] { f[1], f[2] });
+			}
+		}
+		for (String[] f : rows(dir, "booking.csv", 7)) {
+			if (!f[0].equals("0")) {
+				m.bookingCustomers.add(Long.parseLong(f[1]));
+				m.bookingHotels.add(Long.parseLong(f[2]));
+				m.bookingDates.add(date(f[4], shiftYears));
+				m.partySizes.add(f[5]);
+				m.prices.add(f[6]);
+			}
+		}
+		for (String[] f : rows(dir, "maintenanceCompany.csv", 4)) {
+			if (!f[0].equals("0")) {
+				m.companyNames.put(Long.parseLong(f[0]), f[1]);
+				m.companies.add(f);
+			}
+		}
+		for (String[] f : rows(dir, "repair.csv", 7)) {
+			if (!f[0].equals("0")) {
+				m.repairIds.add(Long.parseLong(f[0]));
+				m.repairRooms.add(new long[] { Long.parseLong(f[1]), Long.parseLong(f[2]) });
+				m.repairCompanies.add(Long.parseLong(f[3]));
+				m.repairDates.add(date(f[4], shiftYears));
+				m.repairDescriptions.add(f[5]);
+				m.repairTypes.add(f[6]);
+			}
+		}
+		for (String[] f : rows(dir, "staff.csv", 6)) {
+			if (f[4].equals("Manager") && !f[0].equals("0")) {
+				m.managers.add(Long.parseLong(f[0]));
+			} else if (f[4].equals("HouseCleaning")) {
+				m.housekeepers.add(Long.parseLong(f[0]));
+			}
+		}
+		if (m.bookingHotels.isEmpty() || m.customers.isEmpty() || m.repairIds.isEmpty() || m.companies.isEmpty()
+				|| m.managers.isEmpty() || m.housekeepers.isEmpty()) {
+			throw new IOException("The load generator needs the bundled data files in " + dir);
+		}
+		System.out.println(String.format("Learned %d bookings of %d hotels, %d customers, %d repairs, %d rooms",
+				m.bookingHotels.size(), m.roomsByHotel.size(), m.customers.size(), m.repairIds.size(),
+				m.rooms.size()));
+		return m;
+	}// end learn
+
+	private static List<String[]> rows(File dir, String file, int columns) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, file)),
+				"UTF-8"));
+		List<String[]> rows = new ArrayList<String[]>();
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.length() > 0) {
+					rows.add(BulkLoader.splitCopyLine(line, columns));
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return rows;
+	}// end rows
+
+	/**
+	 * Converts a M/d/yyyy date of the data files to the MM/dd/yyyy of the
+	 * menu, shifted by whole years.
+	 */
+	private static String date(String value, int shiftYears) throws ParseException {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(new SimpleDateFormat("M/d/yyyy").parse(value));
+		cal.add(Calendar.YEAR, shiftYears);
+		return new SimpleDateFormat("MM/dd/yyyy").format(cal.getTime());
+	}// end date
+
+	private static String plusDays(String day, int days) {
+		try {
+			return new SimpleDateFormat("MM/dd/yyyy").format(DBProject.addDays(DBProject.parseDate(day), days));
+		} catch (ParseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}// end plusDays
+
+	private static <T> T pick(Random rnd, List<T> values) {
+		return values.get(rnd.nextInt(values.size()));
+	}// end pick
+
+	/**
+	 * Entry point of the --loadgen mode.
+	 */
+	public static long run(DBProject esql, String dataDir) throws Exception {
+		return new LoadGenerator(esql).generate(dataDir);
+	}// end run
+
+	/**
+	 * Entry point of the --replay mode.
+	 */
+	public static long replay(DBProject esql, String traceFile) throws Exception {
+		return new LoadGenerator(esql).replay(traceFile);
+	}// end replay
+
+}// end LoadGenerator
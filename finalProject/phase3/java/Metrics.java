@@ -0,0 +1,377 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-operation latency histograms of the SQL statements DBProject executes.
+ *
+ * executeUpdate, executeQuery and runQuery record the time spent waiting for
+ * a pooled connection, the time spent executing the statement, the number of
+ * rows and whether it failed, under the menu operation the calling thread is
+ * running (see setOperation); statements outside of a menu operation are
+ * recorded under "other". Recording is a few atomic increments into
+ * fixed-size log-scale histograms, so it is cheap enough to stay on.
+ *
+ * The server mode also records the latency of every HTTP request by route
+ * (see recordRequest), counting responses with a 5xx status as errors.
+ *
+ * The numbers are shown by the "Show operation metrics" menu entry and, when
+ * dbproject.metrics.file is set, written to that file in the Prometheus text
+ * format every dbproject.metrics.intervalMs milliseconds for a node exporter
+ * textfile collector or any other scraper.
+ */
+public class Metrics {
+
+	private static final ThreadLocal<String> OPERATION = new ThreadLocal<String>();
+
+	private static final String OTHER = "other";
+
+	/**
+	 * A latency histogram with 8 linear sub-buckets per power of two, i.e. a
+	 * relative error of at most 12.5%, covering up to 2^63 ns.
+	 */
+	static class Histogram {
+		private static final int SUB_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long nanos) {
+			if (nanos < 0) {
+				nanos = 0;
+			}
+			buckets.incrementAndGet(index(nanos));
+			count.incrementAndGet();
+			sum.addAndGet(nanos);
+			long m;
+			while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+				// retry
+			}
+		}
+
+		static int index(long nanos) {
+			if (nanos < SUB_BUCKETS) {
+				return (int) nanos;
+			}
+			int exp = 63 - Long.numberOfLeadingZeros(nanos);
+			int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		/**
+		 * Returns the upper bound of a bucket in nanoseconds.
+		 */
+		static long upperBound(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+			long sub = index % SUB_BUCKETS;
+			return ((SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+		}
+
+		long getCount() {
+			return count.get();
+		}
+
+		long getSum() {
+			return sum.get();
+		}
+
+		long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the latency at or below which the given fraction of the
+		 * recorded values lie, in nanoseconds.
+		 */
+		long quantile(double q) {
+			long total = count.get();
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(q * total));
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(upperBound(i), max.get());
+				}
+			}
+			return max.get();
+		}
+	}// end Histogram
+
+	/**
+	 * The statistics of one operation.
+	 */
+	static class OperationStats {
+		final String name;
+		final Histogram latency = new Histogram();
+		final Histogram connectionWait = new Histogram();
+		final AtomicLong rows = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+
+		OperationStats(String name) {
+			this.name = name;
+		}
+	}// end OperationStats
+
+	private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+	private final ConcurrentMap<String, OperationStats> requests = new ConcurrentHashMap<String, OperationStats>();
+	private final ConnectionPool pool;
+	private final String file;
+	private ScheduledExecutorService dumper = null;
+
+	public Metrics(ConnectionPool pool) {
+		this.pool = pool;
+		this.file = System.getProperty("dbproject.metrics.file");
+		if (file != null) {
+			long interval = Long.getLong("dbproject.metrics.intervalMs", 15000);
+			dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "dbproject-metrics-dump");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			dumper.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					dumpQuietly();
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}// end Metrics
+
+	/**
+	 * Sets the menu operation the statements of the calling thread are
+	 * recorded under; null records them under "other".
+	 */
+	public static void setOperation(String operation) {
+		if (operation == null) {
+			OPERATION.remove();
+		} else {
+			OPERATION.set(operation);
+		}
+	}// end setOperation
+
+	/**
+	 * Returns the menu operation of the calling thread, "other" outside of one.
+	 */
+	static String getOperation() {
+		String operation = OPERATION.get();
+		return operation == null ? OTHER : operation;
+	}// end getOperation
+
+	/**
+	 * Records one statement of the current operation.
+	 *
+	 * @param waitNanos time spent waiting for a pooled connection
+	 * @param execNanos time spent executing the statement and reading its rows
+	 * @param rows      rows returned or affected, or -1 if the statement failed
+	 */
+	public void record(long waitNanos, long execNanos, long rows) {
+		OperationStats s = stats(OPERATION.get());
+		s.connectionWait.record(waitNanos);
+		s.latency.record(execNanos);
+		if (rows < 0) {
+			s.errors.incrementAndGet();
+		} else {
+			s.rows.addAndGet(rows);
+		}
+	}// end record
+
+	/**
+	 * Records one HTTP request of the server mode.
+	 *
+	 * @param route  the route that handled the request
+	 * @param nanos  time from reading the request to sending the response
+	 * @param status the HTTP status of the response
+	 */
+	public void recordRequest(String route, long nanos, int status) {
+		OperationStats s = stats(requests, route);
+		s.latency.record(nanos);
+		if (status >= 500) {
+			s.errors.incrementAndGet();
+		}
+	}// end recordRequest
+
+	private OperationStats stats(String operation) {
+		return stats(operations, operation == null ? OTHER : operation);
+	}// end stats
+
+	private static OperationStats stats(ConcurrentMap<String, OperationStats> map, String name) {
+		OperationStats s = map.get(name);
+		if (s == null) {
+			OperationStats created = new OperationStats(name);
+			s = map.putIfAbsent(name, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		return s;
+	}// end stats
+
+	private static List<OperationStats> sorted(ConcurrentMap<String, OperationStats> map) {
+		List<OperationStats> list = new ArrayList<OperationStats>(map.values());
+		Collections.sort(list, new java.util.Comparator<OperationStats>() {
+			public int compare(OperationStats a, OperationStats b) {
+				return a.name.compareTo(b.name);
+			}
+		});
+		return list;
+	}// end sorted
+
+	/**
+	 * Prints a table of the per-operation statistics to standard out.
+	 */
+	public void print() {
+		System.out.println(String.format("%-36s %8s %9s %9s %9s %9s %9s %8s %6s", "operation", "calls", "p50 ms",
+				"p90 ms", "p99 ms", "max ms", "wait p99", "rows", "errors"));
+		for (OperationStats s : sorted(operations)) {
+			Histogram h = s.latency;
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d %9.3f %9.3f %9.3f %9.3f %9.3f %8d %6d", s.name,
+					h.getCount(), h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6, h.quantile(0.99) / 1e6,
+					h.getMax() / 1e6, s.connectionWait.quantile(0.99) / 1e6, s.rows.get(), s.errors.get()));
+		}
+		if (!requests.isEmpty()) {
+			System.out.println(String.format("%-36s %8s %9s %9s %9s %9s %6s", "route", "requests", "p50 ms", "p90 ms",
+					"p99 ms", "max ms", "5xx"));
+			for (OperationStats s : sorted(requests)) {
+				Histogram h = s.latency;
+				System.out.println(String.format(Locale.ROOT, "%-36s %8d %9.3f %9.3f %9.3f %9.3f %6d", s.name,
+						h.getCount(), h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6, h.quantile(0.99) / 1e6,
+						h.getMax() / 1e6, s.errors.get()));
+			}
+		}
+		System.out.println(pool.stats());
+	}// end print
+
+	/**
+	 * Writes every metric in the Prometheus text exposition format.
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		List<OperationStats> all = sorted(operations);
+		summary(out, all, "dbproject_statement_seconds", "Time spent executing the SQL statements of each operation.",
+				false);
+		summary(out, all, "dbproject_connection_wait_seconds",
+				"Time the statements of each operation waited for a pooled connection.", true);
+		out.write("# HELP dbproject_statement_max_seconds Slowest SQL statement of each operation.\n");
+		out.write("# TYPE dbproject_statement_max_seconds gauge\n");
+		for (OperationStats s : all) {
+			sample(out, "dbproject_statement_max_seconds", s.name, null, s.latency.getMax() / 1e9);
+		}
+		out.write("# HELP dbproject_rows_total Rows returned or affected by the statements of each operation.\n");
+		out.write("# TYPE dbproject_rows_total counter\n");
+		for (OperationStats s : all) {
+			sample(out, "dbproject_rows_total", s.name, null, s.rows.get());
+		}
+		out.write("# HELP dbproject_errors_total Failed SQL statements of each operation.\n");
+		out.write("# TYPE dbproject_errors_total counter\n");
+		for (OperationStats s : all) {
+			sample(out, "dbproject_errors_total", s.name, null, s.errors.get());
+		}
+		List<OperationStats> routes = sorted(requests);
+		if (!routes.isEmpty()) {
+			summary(out, routes, "dbproject_http_request_seconds", "Time taken to answer the HTTP requests of each route.",
+					false);
+			out.write("# HELP dbproject_http_errors_total HTTP requests of each route answered with a 5xx status.\n");
+			out.write("# TYPE dbproject_http_errors_total counter\n");
+			for (OperationStats s : routes) {
+				sample(out, "dbproject_http_errors_total", s.name, null, s.errors.get());
+			}
+		}
+		out.write("# HELP dbproject_pool_connections Open connections of the pool.\n");
+		out.write("# TYPE dbproject_pool_connections gauge\n");
+		out.write("dbproject_pool_connections " + pool.getTotalConnections() + "\n");
+		out.write("# HELP dbproject_pool_borrow_timeouts_total Borrows that timed out waiting for a connection.\n");
+		out.write("# TYPE dbproject_pool_borrow_timeouts_total counter\n");
+		out.write("dbproject_pool_borrow_timeouts_total " + pool.getBorrowTimeoutCount() + "\n");
+	}// end writePrometheus
+
+	private static void summary(Writer out, List<OperationStats> all, String name, String help, boolean wait)
+			throws IOException {
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " summary\n");
+		for (OperationStats s : all) {
+			Histogram h = wait ? s.connectionWait : s.latency;
+			sample(out, name, s.name, "0.5", h.quantile(0.5) / 1e9);
+			sample(out, name, s.name, "0.9", h.quantile(0.9) / 1e9);
+			sample(out, name, s.name, "0.99", h.quantile(0.99) / 1e9);
+			sample(out, name + "_sum", s.name, null, h.getSum() / 1e9);
+			sample(out, name + "_count", s.name, null, h.getCount());
+		}
+	}// end summary
+
+	private static void sample(Writer out, String name, String operation, String quantile, double value)
+			throws IOException {
+		out.write(name);
+		out.write("{operation=\"");
+		out.write(operation);
+		if (quantile != null) {
+			out.write("\",quantile=\"");
+			out.write(quantile);
+		}
+		out.write("\"} ");
+		out.write(value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+				: String.format(Locale.ROOT, "%.9f", value));
+		out.write('\n');
+	}// end sample
+
+	/**
+	 * Writes the metrics file. The file is replaced atomically so that a
+	 * scraper never reads a partial dump.
+	 *
+	 * @throws java.io.IOException when the file cannot be written
+	 */
+	public void dump() throws IOException {
+		File target = new File(file);
+		File tmp = new File(target.getPath() + ".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+		try {
+			writePrometheus(out);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(target)) {
+			throw new IOException("Unable to replace " + target);
+		}
+	}// end dump
+
+	private void dumpQuietly() {
+		try {
+			dump();
+		} catch (IOException e) {
+			System.err.println("Metrics dump failed: " + e.getMessage());
+		}
+	}// end dumpQuietly
+
+	/**
+	 * Stops the periodic dump after writing the file one last time.
+	 */
+	public void close() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumpQuietly();
+		}
+	}// end close
+
+}// end Metrics
@@ -0,0 +1,301 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory room x day occupancy bitmap used to answer availability queries.
+ *
+ * For every hotel that has been loaded, the index keeps the sorted room
+ * numbers and one BitSet per room with a bit set for every booked night,
+ * counted in days from the earliest booking of the hotel. "Which rooms are
+ * free for [from, to)" is then one nextSetBit() per room, independent of the
+ * length of the range.
+ *
+ * Hotels are loaded from the Room and Booking tables on first use on a
+ * background thread; until then (and after dbproject.occupancy.ttlMs has
+ * passed, to pick up bookings made by other processes) the index reports the
+ * hotel as cold and callers fall back to SQL. Bookings and rooms added through
+ * this process are applied to loaded hotels immediately. Those recorded while
+ * a hotel is being (re)loaded are also logged and replayed onto the new
+ * bitmap before it replaces the old one, since the load may have read the
+ * tables before they were written.
+ */
+public class OccupancyIndex {
+
+	private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+	private static final String SQL_ROOMS = "SELECT roomNo FROM room WHERE hotelID = ?";
+	private static final String SQL_BOOKINGS = "SELECT roomNo, bookingDate FROM booking WHERE hotelID = ?";
+
+	/**
+	 * The occupancy of one hotel. All access is synchronized on the instance.
+	 */
+	static class HotelOccupancy {
+		final long loadedAt;
+		long[] rooms;
+		BitSet[] nights;
+		int baseDay;
+
+		HotelOccupancy(long[] rooms, int baseDay) {
+			this.loadedAt = System.currentTimeMillis();
+			this.rooms = rooms;
+			this.baseDay = baseDay;
+			this.nights = new BitSet[rooms.length];
+			for (int i = 0; i < rooms.length; i++) {
+				nights[i] = new BitSet();
+			}
+		}
+
+		synchronized void book(long roomNo, int day) {
+			int slot = Arrays.binarySearch(rooms, roomNo);
+			if (slot < 0) {
+				// booking of a room added behind our back
+				addRoom(roomNo);
+				slot = Arrays.binarySearch(rooms, roomNo);
+			}
+			if (day < baseDay) {
+				rebase(day);
+			}
+			nights[slot].set(day - baseDay);
+		}
+
+		synchronized void addRoom(long roomNo) {
+			int slot = Arrays.binarySearch(rooms, roomNo);
+			if (slot >= 0) {
+				return;
+			}
+			int at = -slot - 1;
+			long[] r = new long[rooms.length + 1];
+			BitSet[] n = new BitSet[rooms.length + 1];
+			System.arraycopy(rooms, 0, r, 0, at);
+			System.arraycopy(nights, 0, n, 0, at);
+			r[at] = roomNo;
+			n[at] = new BitSet();
+			System.arraycopy(rooms, at, r, at + 1, rooms.length - at);
+			System.arraycopy(nights, at, n, at + 1, rooms.length - at);
+			rooms = r;
+			nights = n;
+		}
+
+		/**
+		 * Moves the base day back so that earlier nights can be recorded.
+		 */
+		private void rebase(int day) {
+			int shift = baseDay - day;
+			for (int i = 0; i < nights.length; i++) {
+				BitSet moved = new BitSet();
+				BitSet old = nights[i];
+				for (int b = old.nextSetBit(0); b >= 0; b = old.nextSetBit(b + 1)) {
+					moved.set(b + shift);
+				}
+				nights[i] = moved;
+			}
+			baseDay = day;
+		}
+
+		/**
+		 * Returns the rooms without a booked night in [fromDay, toDay).
+		 */
+		synchronized long[] freeRooms(int fromDay, int toDay) {
+			long[] free = new long[rooms.length];
+			int n = 0;
+			int from = Math.max(fromDay - baseDay, 0);
+			int to = toDay - baseDay;
+			for (int i = 0; i < rooms.length; i++) {
+				int next = to <= 0 ? -1 : nights[i].nextSetBit(from);
+				if (next < 0 || next >= to) {
+					free[n++] = rooms[i];
+				}
+			}
+			return Arrays.copyOf(free, n);
+		}
+	}// end HotelOccupancy
+
+	private final DBProject esql;
+	private final long ttlMillis;
+	private final ConcurrentMap<Long, HotelOccupancy> hotels = new ConcurrentHashMap<Long, HotelOccupancy>();
+	private final ConcurrentMap<Long, Boolean> loading = new ConcurrentHashMap<Long, Boolean>();
+	private final ExecutorService loader;
+
+	// {roomNo} or {roomNo, day} recorded during the load of a hotel, guarded
+	// by itself
+	private final Map<Long, List<long[]>> pending = new HashMap<Long, List<long[]>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public OccupancyIndex(DBProject esql) {
+		this.esql = esql;
+		this.ttlMillis = Long.getLong("dbproject.occupancy.ttlMs", TimeUnit.MINUTES.toMillis(5));
+		this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "dbproject-occupancy-loader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}// end OccupancyIndex
+
+	/**
+	 * Returns the room numbers of the hotel that are free for every night in
+	 * [from, to), or null when the hotel is not loaded yet. In that case a
+	 * background load is started and the caller should ask the database.
+	 */
+	public long[] freeRooms(long hotelId, Date from, Date to) {
+		HotelOccupancy h = warmOrNull(hotelId);
+		if (h == null) {
+			return null;
+		}
+		return h.freeRooms(epochDay(from), epochDay(to));
+	}// end freeRooms
+
+	/**
+	 * Records a booking written by this process.
+	 */
+	public void recordBooking(long hotelId, long roomNo, Date night) {
+		int day = epochDay(night);
+		synchronized (pending) {
+			List<long[]> log = pending.get(hotelId);
+			if (log != null) {
+				log.add(new long[] { roomNo, day });
+			}
+		}
+		HotelOccupancy h = hotels.get(hotelId);
+		if (h != null) {
+			h.book(roomNo, day);
+		}
+	}// end recordBooking
+
+	/**
+	 * Records a room added by this process.
+	 */
+	public void recordRoom(long hotelId, long roomNo) {
+		synchronized (pending) {
+			List<long[]> log = pending.get(hotelId);
+			if (log != null) {
+				log.add(new long[] { roomNo });
+			}
+		}
+		HotelOccupancy h = hotels.get(hotelId);
+		if (h != null) {
+			h.addRoom(roomNo);
+		}
+	}// end recordRoom
+
+	/**
+	 * Loads (or reloads) the occupancy of one hotel from the database.
+	 *
+	 * @throws java.sql.SQLException when the rooms or bookings cannot be read
+	 */
+	public void load(long hotelId) throws SQLException {
+		synchronized (pending) {
+			pending.put(hotelId, new ArrayList<long[]>());
+		}
+		try {
+			HotelOccupancy h = read(hotelId);
+			synchronized (pending) {
+				// writes recorded after this point go to h directly
+				for (long[] w : pending.get(hotelId)) {
+					if (w.length == 1) {
+						h.addRoom(w[0]);
+					} else {
+						h.book(w[0], (int) w[1]);
+					}
+				}
+				hotels.put(hotelId, h);
+			}
+		} finally {
+			synchronized (pending) {
+				pending.remove(hotelId);
+			}
+		}
+	}// end load
+
+	private HotelOccupancy read(long hotelId) throws SQLException {
+		ResultSet rs = esql.executeQuery(SQL_ROOMS, Long.valueOf(hotelId));
+		long[] rooms = new long[16];
+		int n = 0;
+		while (rs.next()) {
+			if (n == rooms.length) {
+				rooms = Arrays.copyOf(rooms, n * 2);
+			}
+			rooms[n++] = rs.getLong(1);
+		}
+		rooms = Arrays.copyOf(rooms, n);
+		Arrays.sort(rooms);
+
+		rs = esql.executeQuery(SQL_BOOKINGS, Long.valueOf(hotelId));
+		HotelOccupancy h = null;
+		while (rs.next()) {
+			int day = epochDay(rs.getDate(2));
+			if (h == null) {
+				h = new HotelOccupancy(rooms, day);
+			}
+			h.book(rs.getLong(1), day);
+		}
+		if (h == null) {
+			h = new HotelOccupancy(rooms, 0);
+		}
+		return h;
+	}// end read
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getLoadedHotels() {
+		return hotels.size();
+	}
+
+	private HotelOccupancy warmOrNull(final long hotelId) {
+		HotelOccupancy h = hotels.get(hotelId);
+		if (h != null && System.currentTimeMillis() - h.loadedAt < ttlMillis) {
+			hits.incrementAndGet();
+			return h;
+		}
+		misses.incrementAndGet();
+		if (loading.putIfAbsent(hotelId, Boolean.TRUE) == null) {
+			loader.execute(new Runnable() {
+				public void run() {
+					try {
+						load(hotelId);
+					} catch (SQLException e) {
+						// stay cold; the next query will try again
+					} finally {
+						loading.remove(hotelId);
+					}
+				}
+			});
+		}
+		return null;
+	}// end warmOrNull
+
+	/**
+	 * Returns the number of days between 1970-01-01 and the local calendar day
+	 * of the date.
+	 */
+	static int epochDay(Date date) {
+		long millis = date.getTime();
+		millis += TimeZone.getDefault().getOffset(millis);
+		return (int) Math.floor((double) millis / MILLIS_PER_DAY);
+	}// end epochDay
+
+}// end OccupancyIndex
@@ -0,0 +1,208 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Maintenance of the yearly partitions of Booking and Repair created by the
+ * V2 migration.
+ *
+ * For every partitioned table, maintain() creates the partitions of the
+ * current year and the next dbproject.partition.aheadYears years, moves the
+ * rows that landed in the DEFAULT partition into partitions of their own
+ * years, and, when dbproject.partition.retainYears is set, detaches the
+ * partitions of older years and moves them to the
+ * dbproject.partition.archiveSchema schema, where they stay queryable but are
+ * no longer part of the table. Tables that are not partitioned are skipped,
+ * so it is safe to run against a database without the migration; once a
+ * table is partitioned, the triggers of migration V5 are required, see
+ * createPartition.
+ *
+ * Run it periodically, e.g. from cron:
+ * java DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --partitions
+ */
+public class PartitionManager {
+
+	// partitioned table and its partition key
+	static final String[][] TABLES = { { "booking", "bookingdate" }, { "repair", "repairdate" } };
+
+	private static final String SQL_IS_PARTITIONED = "SELECT 1 FROM pg_class WHERE oid = to_regclass(?) AND relkind = 'p'";
+	private static final String SQL_PARTITIONS = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)";
+
+	private final DBProject esql;
+	private final int aheadYears;
+	private final int retainYears;
+	private final String archiveSchema;
+
+	public PartitionManager(DBProject esql) {
+		this.esql = esql;
+		this.aheadYears = Integer.getInteger("dbproject.partition.aheadYears", 2);
+		this.retainYears = Integer.getInteger("dbproject.partition.retainYears", 0);
+		this.archiveSchema = System.getProperty("dbproject.partition.archiveSchema", "archive");
+	}// end PartitionManager
+
+	/**
+	 * Creates, fills and archives the partitions of every partitioned table.
+	 *
+	 * @return the number of partitions created or archived
+	 * @throws java.sql.SQLException when a partition cannot be changed; the
+	 *                               change is rolled back
+	 */
+	public int maintain() throws SQLException {
+		for (String[] t : TABLES) {
+			if (isPartitioned(t[0])) {
+				SchemaMigrator.requireVersion(esql, 5);
+				break;
+			}
+		}
+		int changes = 0;
+		int currentYear = Calendar.getInstance().get(Calendar.YEAR);
+		for (String[] t : TABLES) {
+			String table = t[0];
+			String column = t[1];
+			if (!isPartitioned(table)) {
+				continue;
+			}
+			List<String> partitions = partitions(table);
+			TreeSet<Integer> years = new TreeSet<Integer>();
+			for (int y = currentYear; y <= currentYear + aheadYears; y++) {
+				years.add(y);
+			}
+			boolean hasDefault = partitions.contains(table + "_default");
+			if (hasDefault) {
+				ResultSet rs = esql.executeQuery("SELECT DISTINCT EXTRACT(YEAR FROM " + column + ")::integer FROM "
+						+ table + "_default", new Object[0]);
+				while (rs.next()) {
+					years.add(rs.getInt(1));
+				}
+			}
+			for (int year : years) {
+				if (!partitions.contains(partitionName(table, year))) {
+					createPartition(table, column, year, hasDefault);
+					System.out.println("Created partition " + partitionName(table, year));
+					changes++;
+				}
+			}
+			if (retainYears > 0) {
+				for (int year = firstYear(partitions, table); year <= currentYear - retainYears; year++) {
+					if (partitions.contains(partitionName(table, year))) {
+						archive(table, year);
+						System.out.println("Archived partition " + partitionName(table, year) + " to "
+								+ archiveSchema);
+						changes++;
+					}
+				}
+			}
+		} // end for
+		return changes;
+	}// end maintain
+
+	/**
+	 * Returns whether the table is range partitioned.
+	 */
+	boolean isPartitioned(String table) throws SQLException {
+		return esql.executeQuery(SQL_IS_PARTITIONED, table).next();
+	}// end isPartitioned
+
+	/**
+	 * Returns the names of the partitions of the table.
+	 */
+	List<String> partitions(String table) throws SQLException {
+		ResultSet rs = esql.executeQuery(SQL_PARTITIONS, table);
+		List<String> names = new ArrayList<String>();
+		while (rs.next()) {
+			names.add(rs.getString(1));
+		}
+		return names;
+	}// end partitions
+
+	/**
+	 * Creates the partition of one year. Rows of that year in the DEFAULT
+	 * partition would violate the new bounds, so the DEFAULT partition is
+	 * detached while they are moved.
+	 *
+	 * The repairDeleted trigger of Repair may fire for the rows deleted from
+	 * the detached DEFAULT partition. The rows are copied into the new
+	 * partition first, so the trigger still finds their rID in Repair and,
+	 * since migration V5, leaves the requests of the repairs alone.
+	 */
+	private void createPartition(String table, String column, int year, boolean hasDefault) throws SQLException {
+		String name = partitionName(table, year);
+		String range = column + " >= '" + year + "-01-01' AND " + column + " < '" + (year + 1) + "-01-01'";
+		List<String> statements = new ArrayList<String>();
+		if (hasDefault) {
+			statements.add("ALTER TABLE " + table + " DETACH PARTITION " + table + "_default");
+		}
+		statements.add("CREATE TABLE " + name + " PARTITION OF " + table + " FOR VALUES FROM ('" + year
+				+ "-01-01') TO ('" + (year + 1) + "-01-01')");
+		if (hasDefault) {
+			statements.add("INSERT INTO " + name + " SELECT * FROM " + table + "_default WHERE " + range);
+			statements.add("DELETE FROM " + table + "_default WHERE " + range);
+			statements.add("ALTER TABLE " + table + " ATTACH PARTITION " + table + "_default DEFAULT");
+		}
+		executeInTransaction(statements);
+	}// end createPartition
+
+	/**
+	 * Detaches the partition of one year and moves it to the archive schema.
+	 */
+	private void archive(String table, int year) throws SQLException {
+		String name = partitionName(table, year);
+		List<String> statements = new ArrayList<String>();
+		statements.add("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+		statements.add("ALTER TABLE " + table + " DETACH PARTITION " + name);
+		statements.add("ALTER TABLE " + name + " SET SCHEMA " + archiveSchema);
+		executeInTransaction(statements);
+	}// end archive
+
+	private void executeInTransaction(List<String> statements) throws SQLException {
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		Statement stmt = null;
+		try {
+			conn.connection.setAutoCommit(false);
+			stmt = conn.connection.createStatement();
+			for (String sql : statements) {
+				stmt.execute(sql);
+			}
+			conn.connection.commit();
+		} finally {
+			ConnectionPool.closeQuietly(stmt);
+			// rolls back when the statements did not commit
+			esql.getPool().release(conn);
+		}
+	}// end executeInTransaction
+
+	static String partitionName(String table, int year) {
+		return table + "_y" + year;
+	}// end partitionName
+
+	/**
+	 * Returns the earliest year that has a partition, or Integer.MAX_VALUE.
+	 */
+	private static int firstYear(List<String> partitions, String table) {
+		int first = Integer.MAX_VALUE;
+		String prefix = table + "_y";
+		for (String p : partitions) {
+			if (p.startsWith(prefix)) {
+				try {
+					first = Math.min(first, Integer.parseInt(p.substring(prefix.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		return first;
+	}// end firstYear
+
+	/**
+	 * Entry point of the --partitions mode.
+	 */
+	public static void run(DBProject esql) throws SQLException {
+		int changes = new PartitionManager(esql).maintain();
+		System.out.println(changes == 0 ? "Partitions are up to date" : changes + " partition(s) changed");
+	}// end run
+
+}// end PartitionManager
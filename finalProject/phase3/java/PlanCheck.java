@@ -0,0 +1,235 @@
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plan regression check of the DBProject menu queries.
+ *
+ * Runs EXPLAIN (ANALYZE, BUFFERS) for the statement behind each of the 16
+ * menu operations with parameters picked from the loaded data, and fails an
+ * operation when its plan falls back to a sequential scan of one of the large
+ * tables or its execution time exceeds the budget of dbproject.explain.budgetMs
+ * milliseconds. Writes are explained inside a transaction that is rolled back.
+ *
+ * Run it after loading the bundled data and applying the migrations:
+ * java DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --explain
+ */
+public class PlanCheck {
+
+	// tables that must never be read with a sequential scan by a menu query
+	static final Set<String> LARGE_TABLES = new HashSet<String>(Arrays.asList("booking", "repair", "customer",
+			"room", "staff", "request", "assigned"));
+
+	private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+	private static final Pattern EXECUTION_TIME = Pattern.compile("(?:Execution Time|Total runtime): ([0-9.]+) ms");
+
+	/**
+	 * One explained statement.
+	 */
+	static class Check {
+		final String operation;
+		final String sql;
+		final Object[] params;
+		final Set<String> allowedSeqScans;
+
+		Check(String operation, String sql, Object[] params, String... allowedSeqScans) {
+			this.operation = operation;
+			this.sql = sql;
+			this.params = params;
+			this.allowedSeqScans = new HashSet<String>(Arrays.asList(allowedSeqScans));
+		}
+	}// end Check
+
+	private final DBProject esql;
+	private final double budgetMillis;
+
+	public PlanCheck(DBProject esql) {
+		this.esql = esql;
+		this.budgetMillis = Double.parseDouble(System.getProperty("dbproject.explain.budgetMs", "20"));
+	}// end PlanCheck
+
+	/**
+	 * Builds the checks with sample parameters taken from the loaded data.
+	 */
+	List<Check> checks() throws Exception {
+		long hotel = scalar("SELECT hotelID FROM booking WHERE hotelID <> 0 GROUP BY hotelID ORDER BY COUNT(*) DESC, hotelID LIMIT 1");
+		long room = scalar("SELECT roomNo FROM room WHERE hotelID = ? ORDER BY roomNo LIMIT 1", hotel);
+		long newRoom = scalar("SELECT MAX(roomNo) + 1 FROM room WHERE hotelID = ?", hotel);
+		java.sql.Date day = date("SELECT MAX(bookingDate) FROM booking WHERE hotelID = ?", hotel);
+		java.sql.Date nextDay = new java.sql.Date(DBProject.addDays(day, 1).getTime());
+		java.sql.Date weekEnd = new java.sql.Date(DBProject.addDays(day, 7).getTime());
+		long customer = scalar("SELECT customer FROM booking WHERE customer <> 0 GROUP BY customer ORDER BY COUNT(*) DESC, customer LIMIT 1");
+		String[] name = strings("SELECT fName, lName FROM customer WHERE customerID = ?", customer);
+		long company = scalar("SELECT mCompany FROM repair WHERE mCompany <> 0 GROUP BY mCompany ORDER BY COUNT(*) DESC, mCompany LIMIT 1");
+		String companyName = strings("SELECT name FROM maintenanceCompany WHERE cmpID = ?", company)[0];
+		long[] repaired = pair("SELECT hotelID, roomNo FROM repair WHERE hotelID <> 0 GROUP BY hotelID, roomNo ORDER BY COUNT(*) DESC, hotelID, roomNo LIMIT 1");
+		long manager = scalar("SELECT SSN FROM staff WHERE role = 'Manager' AND SSN <> 0 ORDER BY SSN LIMIT 1");
+		long repair = scalar("SELECT MAX(rID) FROM repair");
+		long staff = scalar("SELECT SSN FROM staff WHERE role = 'HouseCleaning' ORDER BY SSN LIMIT 1");
+		Long none = Long.valueOf(-1);
+
+		List<Check> checks = new ArrayList<Check>();
+		checks.add(new Check("addCustomer", DBProject.SQL_ADD_CUSTOMER, new Object[] { none, "plan", "check",
+				"nowhere", new BigDecimal("5550000000"), day, "Other" }));
+		checks.add(new Check("addRoom", DBProject.SQL_ADD_ROOM, new Object[] { hotel, newRoom, "Suite" }));
+		checks.add(new Check("addMaintenanceCompany", DBProject.SQL_ADD_COMPANY,
+				new Object[] { none, "plan check", "nowhere", Boolean.TRUE }));
+		checks.add(new Check("addRepair", DBProject.SQL_ADD_REPAIR,
+				new Object[] { none, hotel, room, company, day, "plan check", "Small" }));
+		checks.add(new Check("bookRoom", DBProject.SQL_BOOK_ROOM,
+				new Object[] { none, customer, hotel, room, weekEnd, Long.valueOf(1), Long.valueOf(10000) }));
+		checks.add(new Check("assignHouseCleaningToRoom", DBProject.SQL_ASSIGN_STAFF,
+				new Object[] { none, staff, hotel, room }));
+		checks.add(new Check("repairRequest", DBProject.SQL_REPAIR_REQUEST,
+				new Object[] { none, manager, repair, day, "plan check" }));
+		checks.add(new Check("numberOfAvailableRooms", DBProject.SQL_AVAILABLE_ROOMS,
+				new Object[] { hotel, day, nextDay }));
+		checks.add(new Check("numberOfBookedRooms", DBProject.SQL_BOOKED_ROOMS, new Object[] { hotel }));
+		checks.add(new Check("listHotelRoomBookingsForAWeek", DBProject.SQL_ROOMS_FOR_A_WEEK,
+				new Object[] { hotel, day, weekEnd }));
+		checks.add(new Check("topKHighestRoomPriceForADateRange", DBProject.SQL_TOP_K_PRICE_FOR_DATE_RANGE,
+				new Object[] { day, weekEnd, Integer.valueOf(10) }));
+		checks.add(new Check("customerNameLookup", CustomerCache.SQL_CUSTOMER_IDS, new Object[] { name[0], name[1] }));
+		checks.add(new Check("topKHighestPriceBookingsForACustomer", DBProject.SQL_KTH_PRICE_FOR_CUSTOMER,
+				new Object[] { customer, Integer.valueOf(0) }));
+		checks.add(new Check("totalCostForCustomer", DBProject.SQL_TOTAL_COST_FOR_CUSTOMER,
+				new Object[] { customer, java.sql.Date.valueOf("2000-01-01"), weekEnd, hotel }));
+		checks.add(new Check("listRepairsMade", DBProject.SQL_REPAIRS_MADE, new Object[] { companyName },
+				"maintenancecompany"));
+		// counting the repairs of every company reads the whole table
+		checks.add(new Check("topKMaintenanceCompany", DBProject.SQL_TOP_K_COMPANIES,
+				new Object[] { Integer.valueOf(5) }, "repair", "maintenancecompany"));
+		checks.add(new Check("numberOfRepairsForEachRoomPerYear", DBProject.SQL_REPAIRS_PER_YEAR,
+				new Object[] { repaired[0], repaired[1] }));
+		return checks;
+	}// end checks
+
+	/**
+	 * Explains every check and prints the verdicts.
+	 *
+	 * @return the number of failed checks
+	 */
+	public int run() throws Exception {
+		int failures = 0;
+		for (Check check : checks()) {
+			List<String> plan = explain(check);
+			List<String> problems = problems(check, plan);
+			if (problems.isEmpty()) {
+				System.out.println(String.format("PASS %-36s %8.3f ms", check.operation, executionTime(plan)));
+			} else {
+				failures++;
+				System.out.println(String.format("FAIL %-36s %s", check.operation, problems));
+				for (String line : plan) {
+					System.out.println("     " + line);
+				}
+			}
+		}
+		System.out.println(failures == 0 ? "All plans OK" : failures + " plan check(s) failed");
+		return failures;
+	}// end run
+
+	List<String> problems(Check check, List<String> plan) {
+		List<String> problems = new ArrayList<String>();
+		for (String line : plan) {
+			Matcher m = SEQ_SCAN.matcher(line);
+			while (m.find()) {
+				// a partition counts as its table
+				String table = m.group(1).toLowerCase().replaceFirst("_(y\\d{4}|default)$", "");
+				if (LARGE_TABLES.contains(table) && !check.allowedSeqScans.contains(table)) {
+					problems.add("sequential scan on " + table);
+				}
+			}
+		}
+		double millis = executionTime(plan);
+		if (millis > budgetMillis) {
+			problems.add(String.format("%.3f ms over the %.3f ms budget", millis, budgetMillis));
+		}
+		return problems;
+	}// end problems
+
+	static double executionTime(List<String> plan) {
+		for (String line : plan) {
+			Matcher m = EXECUTION_TIME.matcher(line);
+			if (m.find()) {
+				return Double.parseDouble(m.group(1));
+			}
+		}
+		return 0;
+	}// end executionTime
+
+	private List<String> explain(Check check) throws SQLException {
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			// writes are executed for real by ANALYZE, so never commit
+			conn.connection.setAutoCommit(false);
+			ps = conn.connection.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + check.sql);
+			StatementCache.bind(ps, check.params);
+			rs = ps.executeQuery();
+			List<String> plan = new ArrayList<String>();
+			while (rs.next()) {
+				plan.add(rs.getString(1));
+			}
+			return plan;
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			ConnectionPool.closeQuietly(ps);
+			esql.getPool().release(conn);
+		}
+	}// end explain
+
+	private long scalar(String sql, Object... params) throws SQLException {
+		ResultSet rs = esql.executeQuery(sql, params);
+		if (!rs.next()) {
+			throw new SQLException("No sample data for: " + sql);
+		}
+		return rs.getLong(1);
+	}// end scalar
+
+	private java.sql.Date date(String sql, Object... params) throws SQLException {
+		ResultSet rs = esql.executeQuery(sql, params);
+		if (!rs.next() || rs.getDate(1) == null) {
+			throw new SQLException("No sample data for: " + sql);
+		}
+		return rs.getDate(1);
+	}// end date
+
+	private String[] strings(String sql, Object... params) throws SQLException {
+		ResultSet rs = esql.executeQuery(sql, params);
+		if (!rs.next()) {
+			throw new SQLException("No sample data for: " + sql);
+		}
+		String[] values = new String[rs.getMetaData().getColumnCount()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rs.getString(i + 1).trim();
+		}
+		return values;
+	}// end strings
+
+	private long[] pair(String sql) throws SQLException {
+		ResultSet rs = esql.executeQuery(sql, new Object[0]);
+		if (!rs.next()) {
+			throw new SQLException("No sample data for: " + sql);
+		}
+		return new long[] { rs.getLong(1), rs.getLong(2) };
+	}// end pair
+
+	/**
+	 * Entry point of the --explain mode.
+	 *
+	 * @return the number of failed checks
+	 */
+	public static int run(DBProject esql) throws Exception {
+		return new PlanCheck(esql).run();
+	}// end run
+
+}// end PlanCheck
@@ -0,0 +1,386 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Precomputed top-K price index of the bookings.
+ *
+ * The index keeps bounded heaps of the dbproject.priceIndex.cap most expensive
+ * bookings of every month, of every day and of every customer. A date range
+ * query merges the month buckets the range covers completely with the day
+ * buckets of the partial months at either end, so it never sorts the bookings
+ * of the range. Because every bucket holds its cap best bookings, the answer
+ * is exact for any K up to the cap; larger K, like a cold index, is answered
+ * by the database.
+ *
+ * The index is loaded with one scan of the Booking table on a background
+ * thread on first use and reloaded once it is older than
+ * dbproject.priceIndex.ttlMs, to pick up bookings made by other processes.
+ * Bookings made through this process are added immediately; those made while
+ * a load scans the table are logged and added to the loaded buckets before
+ * they replace the old ones.
+ */
+public class PriceIndex {
+
+	private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private static final String SQL_BOOKINGS = "SELECT bID, customer, bookingDate, price_cents FROM booking";
+
+	/**
+	 * One booking as seen by the index. The natural order is cheapest first,
+	 * ties broken by the higher booking id, so a PriorityQueue is a min-heap
+	 * whose head is the first booking to drop out of a bucket.
+	 */
+	static class Priced implements Comparable<Priced> {
+		final long bid;
+		final long cents;
+
+		Priced(long bid, long cents) {
+			this.bid = bid;
+			this.cents = cents;
+		}
+
+		public int compareTo(Priced o) {
+			if (cents != o.cents) {
+				return cents < o.cents ? -1 : 1;
+			}
+			return bid > o.bid ? -1 : (bid == o.bid ? 0 : 1);
+		}
+
+		BigDecimal price() {
+			return BigDecimal.valueOf(cents, 2);
+		}
+	}// end Priced
+
+	/**
+	 * The cap most expensive bookings of one bucket.
+	 */
+	static class TopN {
+		final PriorityQueue<Priced> heap;
+		final int cap;
+
+		TopN(int cap) {
+			this.cap = cap;
+			this.heap = new PriorityQueue<Priced>(Math.min(cap, 16));
+		}
+
+		/**
+		 * Offers a booking that the bucket may already hold.
+		 */
+		void offerOnce(Priced p) {
+			for (Priced q : heap) {
+				if (q.bid == p.bid) {
+					return;
+				}
+			}
+			offer(p);
+		}
+
+		void offer(Priced p) {
+			if (heap.size() < cap) {
+				heap.add(p);
+			} else if (heap.peek().compareTo(p) < 0) {
+				heap.poll();
+				heap.add(p);
+			}
+		}
+
+		/**
+		 * Returns the bookings of the bucket, most expensive first.
+		 */
+		Priced[] descending() {
+			Priced[] all = heap.toArray(new Priced[heap.size()]);
+			Arrays.sort(all, Collections.reverseOrder());
+			return all;
+		}
+	}// end TopN
+
+	/**
+	 * All buckets of one load of the index.
+	 */
+	static class Buckets {
+		final long loadedAt = System.currentTimeMillis();
+		final Map<Integer, TopN> months = new HashMap<Integer, TopN>();
+		final Map<Integer, TopN> days = new HashMap<Integer, TopN>();
+		final Map<Long, TopN> customers = new HashMap<Long, TopN>();
+	}// end Buckets
+
+	private final DBProject esql;
+	private final int cap;
+	private final long ttlMillis;
+	private final ExecutorService loader;
+	private final AtomicBoolean loading = new AtomicBoolean();
+
+	// guarded by this
+	private Buckets buckets = null;
+	private long hits = 0;
+	private long misses = 0;
+	// {bid, customer, day, cents} recorded while a load scans the table; null
+	// when no load is running or the running one was invalidated
+	private List<long[]> pending = null;
+
+	public PriceIndex(DBProject esql) {
+		this.esql = esql;
+		this.cap = Math.max(1, Integer.getInteger("dbproject.priceIndex.cap", 100));
+		this.ttlMillis = Long.getLong("dbproject.priceIndex.ttlMs", TimeUnit.MINUTES.toMillis(5));
+		this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "dbproject-price-loader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}// end PriceIndex
+
+	/**
+	 * Returns the ids of the k most expensive bookings with a booking date in
+	 * [from, to] (both inclusive, like BETWEEN), most expensive first, or null
+	 * when the index cannot answer and the caller should ask the database.
+	 */
+	public synchronized long[] topKForDateRange(Date from, Date to, int k) {
+		Buckets b = warmOrNull(k);
+		if (b == null) {
+			return null;
+		}
+		int toDay = OccupancyIndex.epochDay(to);
+		PriorityQueue<Priced> best = new PriorityQueue<Priced>(Math.max(1, k));
+		int day = OccupancyIndex.epochDay(from);
+		while (day <= toDay && k > 0) {
+			int month = monthOf(day);
+			int next = firstDayOf(month + 1);
+			TopN bucket;
+			if (day == firstDayOf(month) && next - 1 <= toDay) {
+				// the whole month is in the range
+				bucket = b.months.get(month);
+				day = next;
+			} else {
+				bucket = b.days.get(day);
+				day++;
+			}
+			if (bucket == null) {
+				continue;
+			}
+			for (Priced p : bucket.heap) {
+				if (best.size() < k) {
+					best.add(p);
+				} else if (best.peek().compareTo(p) < 0) {
+					best.poll();
+					best.add(p);
+				}
+			}
+		} // end while
+		Priced[] top = best.toArray(new Priced[best.size()]);
+		Arrays.sort(top, Collections.reverseOrder());
+		long[] ids = new long[top.length];
+		for (int i = 0; i < top.length; i++) {
+			ids[i] = top[i].bid;
+		}
+		return ids;
+	}// end topKForDateRange
+
+	/**
+	 * Returns the k-th highest booking price of the customer (0 being the
+	 * highest): an array holding the price, an empty array when the customer
+	 * has no k-th booking, or null when the index cannot answer and the caller
+	 * should ask the database.
+	 */
+	public synchronized BigDecimal[] kthPriceForCustomer(long customer, int k) {
+		Buckets b = warmOrNull(k + 1);
+		if (b == null) {
+			return null;
+		}
+		TopN bucket = b.customers.get(customer);
+		if (bucket == null) {
+			return new BigDecimal[0];
+		}
+		if (k >= bucket.heap.size()) {
+			// k < cap, so a bucket holding fewer than k + 1 bookings is complete
+			return new BigDecimal[0];
+		}
+		return new BigDecimal[] { bucket.descending()[k].price() };
+	}// end kthPriceForCustomer
+
+	/**
+	 * Records a booking written by this process.
+	 */
+	public synchronized void recordBooking(long bid, long customer, Date night, BigDecimal price) {
+		int day = OccupancyIndex.epochDay(night);
+		long cents = toCents(price);
+		if (pending != null) {
+			pending.add(new long[] { bid, customer, day, cents });
+		}
+		if (buckets != null) {
+			add(buckets, bid, customer, day, cents);
+		}
+	}// end recordBooking
+
+	/**
+	 * Drops the index so that the next query reloads it, e.g. after a batch of
+	 * bookings that were not recorded one by one.
+	 */
+	public synchronized void invalidate() {
+		buckets = null;
+		// a load in progress may have missed the writes; drop its result too
+		pending = null;
+	}// end invalidate
+
+	/**
+	 * Loads (or reloads) the index from the Booking table.
+	 *
+	 * @throws java.sql.SQLException when the bookings cannot be read
+	 */
+	public void load() throws SQLException {
+		Buckets b = new Buckets();
+		List<long[]> log = new ArrayList<long[]>();
+		synchronized (this) {
+			pending = log;
+		}
+		try {
+			ConnectionPool.Pooled conn = esql.getPool().borrow();
+			ResultSet rs = null;
+			try {
+				// the driver only streams through a cursor inside a transaction
+				conn.connection.setAutoCommit(false);
+				PreparedStatement ps = conn.statements.prepare(SQL_BOOKINGS);
+				DBProject.setFetchSize(ps);
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					add(b, rs.getLong(1), rs.getLong(2), OccupancyIndex.epochDay(rs.getDate(3)),
+							rs.getLong(4));
+				}
+			} finally {
+				ConnectionPool.closeQuietly(rs);
+				esql.getPool().release(conn);
+			}
+			synchronized (this) {
+				if (pending == log) {
+					// writes recorded after this point go to b directly
+					for (long[] w : log) {
+						Priced p = new Priced(w[0], w[3]);
+						// the scan may have seen the booking already
+						bucket(b.months, monthOf((int) w[2])).offerOnce(p);
+						bucket(b.days, (int) w[2]).offerOnce(p);
+						bucket(b.customers, w[1]).offerOnce(p);
+					}
+					buckets = b;
+				}
+			}
+		} finally {
+			synchronized (this) {
+				if (pending == log) {
+					pending = null;
+				}
+			}
+		}
+	}// end load
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private void add(Buckets b, long bid, long customer, int day, long cents) {
+		Priced p = new Priced(bid, cents);
+		bucket(b.months, monthOf(day)).offer(p);
+		bucket(b.days, day).offer(p);
+		bucket(b.customers, customer).offer(p);
+	}// end add
+
+	private <K> TopN bucket(Map<K, TopN> map, K key) {
+		TopN t = map.get(key);
+		if (t == null) {
+			t = new TopN(cap);
+			map.put(key, t);
+		}
+		return t;
+	}// end bucket
+
+	/**
+	 * Returns the loaded buckets if they can answer a top-k query, starting a
+	 * background load when they are missing or stale.
+	 */
+	private Buckets warmOrNull(int k) {
+		Buckets b = buckets;
+		if (b == null || System.currentTimeMillis() - b.loadedAt >= ttlMillis) {
+			misses++;
+			if (loading.compareAndSet(false, true)) {
+				loader.execute(new Runnable() {
+					public void run() {
+						try {
+							load();
+						} catch (SQLException e) {
+							// stay cold; the next query will try again
+							System.err.println("Could not load the price index: " + e.getMessage());
+						} finally {
+							loading.set(false);
+						}
+					}
+				});
+			}
+			return null;
+		}
+		if (k > cap) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return b;
+	}// end warmOrNull
+
+	static long toCents(BigDecimal price) {
+		return price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}// end toCents
+
+	/**
+	 * Returns the month of an epoch day as year * 12 + month (0 based).
+	 */
+	static int monthOf(int epochDay) {
+		Calendar cal = new GregorianCalendar(UTC);
+		cal.setTimeInMillis(epochDay * MILLIS_PER_DAY);
+		return cal.get(Calendar.YEAR) * 12 + cal.get(Calendar.MONTH);
+	}// end monthOf
+
+	/**
+	 * Returns the epoch day of the first day of a month returned by monthOf.
+	 */
+	static int firstDayOf(int month) {
+		Calendar cal = new GregorianCalendar(UTC);
+		cal.clear();
+		cal.set(month / 12, month % 12, 1);
+		return (int) (cal.getTimeInMillis() / MILLIS_PER_DAY);
+	}// end firstDayOf
+
+	/**
+	 * Renders booking ids as an array literal, bound to a bigint[] parameter.
+	 */
+	static String idList(long[] ids) {
+		StringBuilder sb = new StringBuilder("{");
+		for (long id : ids) {
+			sb.append(sb.length() > 1 ? "," : "").append(id);
+		}
+		return sb.append('}').toString();
+	}// end idList
+
+}// end PriceIndex
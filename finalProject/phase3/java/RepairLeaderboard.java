@@ -0,0 +1,270 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Incrementally maintained repair count of every maintenance company, ordered
+ * by count, used to answer topKMaintenanceCompany without aggregating the
+ * whole Repair table.
+ *
+ * The counts are loaded with one GROUP BY on first use and then kept up to
+ * date by the repairs added through this process: an increment moves one
+ * company in the ordered set (O(log n)) and top-K walks the first K entries
+ * (O(K)). Writes made by other processes are picked up when the counts are
+ * older than dbproject.leaderboard.ttlMs and reloaded; after a bulk load the
+ * counts are rebuilt explicitly. check() compares the counts with the full
+ * aggregate of the table.
+ *
+ * A repair of this process is announced with beginRepair before its insert
+ * and counted by recordRepair once it has been written. A rebuild leaves the
+ * announced repairs out of its aggregate, so a repair committed just before
+ * a rebuild is counted once, by recordRepair, and not once more by the
+ * rebuild.
+ *
+ * Like the other in-memory indexes it reads from the primary, never from a
+ * replica, whose counts may not include the repairs of this process yet.
+ */
+public class RepairLeaderboard {
+
+	private static final String SQL_REPAIR_COUNTS = "SELECT mCompany, COUNT(*) FROM repair WHERE rID <> ALL(CAST(? AS bigint[])) GROUP BY mCompany";
+	private static final String SQL_COMPANY_NAMES = "SELECT cmpID, name FROM maintenanceCompany";
+	private static final String SQL_COMPANY_NAME = "SELECT name FROM maintenanceCompany WHERE cmpID = ?";
+
+	/**
+	 * The repair count of one company. Ordered by descending count, then by
+	 * ascending company id.
+	 */
+	static class CompanyCount implements Comparable<CompanyCount> {
+		final long cmpId;
+		final long count;
+
+		CompanyCount(long cmpId, long count) {
+			this.cmpId = cmpId;
+			this.count = count;
+		}
+
+		public int compareTo(CompanyCount o) {
+			if (count != o.count) {
+				return count > o.count ? -1 : 1;
+			}
+			return cmpId < o.cmpId ? -1 : (cmpId == o.cmpId ? 0 : 1);
+		}
+	}// end CompanyCount
+
+	private final DBProject esql;
+	private final long ttlMillis;
+
+	// companies with at least one repair, both views hold the same entries
+	private final Map<Long, CompanyCount> counts = new HashMap<Long, CompanyCount>();
+	private final TreeSet<CompanyCount> ranking = new TreeSet<CompanyCount>();
+	private final Map<Long, String> names = new HashMap<Long, String>();
+	// repairs of this process announced but not recorded yet
+	private final Set<Long> unrecorded = new HashSet<Long>();
+	private long loadedAt = -1;
+
+	private long rebuilds = 0;
+
+	public RepairLeaderboard(DBProject esql) {
+		this.esql = esql;
+		this.ttlMillis = Long.getLong("dbproject.leaderboard.ttlMs", TimeUnit.MINUTES.toMillis(5));
+	}// end RepairLeaderboard
+
+	/**
+	 * Returns the names of the k companies with the most repairs, most
+	 * repairs first. A company added by another process since the last load
+	 * has its name read on the way; repairs of a company that does not exist
+	 * are skipped, as the join of the SQL query skips them.
+	 *
+	 * @throws java.sql.SQLException when the counts have to be loaded and
+	 *                               cannot be read
+	 */
+	public synchronized List<String> topK(int k) throws SQLException {
+		if (loadedAt < 0 || System.currentTimeMillis() - loadedAt >= ttlMillis) {
+			rebuild();
+		}
+		List<String> top = new ArrayList<String>(Math.max(0, Math.min(k, ranking.size())));
+		Iterator<CompanyCount> it = ranking.iterator();
+		while (top.size() < k && it.hasNext()) {
+			String name = name(it.next().cmpId);
+			if (name != null) {
+				top.add(name);
+			}
+		}
+		return top;
+	}// end topK
+
+	private String name(long cmpId) throws SQLException {
+		String name = names.get(cmpId);
+		if (name == null) {
+			ResultSet rs = query(SQL_COMPANY_NAME, Long.valueOf(cmpId));
+			if (rs.next()) {
+				name = rs.getString(1);
+				names.put(cmpId, name);
+			}
+		}
+		return name;
+	}// end name
+
+	/**
+	 * Announces a repair this process is about to write; it must be followed
+	 * by recordRepair once written or abortRepair when the write failed.
+	 */
+	public synchronized void beginRepair(long rid) {
+		unrecorded.add(rid);
+	}// end beginRepair
+
+	/**
+	 * Forgets an announced repair that was not written.
+	 */
+	public synchronized void abortRepair(long rid) {
+		unrecorded.remove(rid);
+	}// end abortRepair
+
+	/**
+	 * Records a repair written by this process.
+	 */
+	public synchronized void recordRepair(long rid, long cmpId) {
+		unrecorded.remove(rid);
+		if (loadedAt < 0) {
+			return;
+		}
+		CompanyCount old = counts.get(cmpId);
+		if (old != null) {
+			ranking.remove(old);
+		}
+		CompanyCount now = new CompanyCount(cmpId, old == null ? 1 : old.count + 1);
+		counts.put(cmpId, now);
+		ranking.add(now);
+	}// end recordRepair
+
+	/**
+	 * Records a maintenance company written by this process.
+	 */
+	public synchronized void recordCompany(long cmpId, String name) {
+		if (loadedAt >= 0) {
+			names.put(cmpId, name);
+		}
+	}// end recordCompany
+
+	/**
+	 * Drops the counts so that the next top-K reloads them, e.g. after a batch
+	 * of writes that were not recorded one by one.
+	 */
+	public synchronized void invalidate() {
+		loadedAt = -1;
+	}// end invalidate
+
+	/**
+	 * Reloads the counts and names from the database.
+	 *
+	 * @throws java.sql.SQLException when the repairs cannot be read
+	 */
+	public synchronized void rebuild() throws SQLException {
+		long[] skipped = new long[unrecorded.size()];
+		int i = 0;
+		for (long rid : unrecorded) {
+			skipped[i++] = rid;
+		}
+		Map<Long, Long> fresh = aggregate(skipped);
+		ResultSet rs = query(SQL_COMPANY_NAMES);
+		names.clear();
+		while (rs.next()) {
+			names.put(rs.getLong(1), rs.getString(2));
+		}
+		counts.clear();
+		ranking.clear();
+		for (Map.Entry<Long, Long> e : fresh.entrySet()) {
+			CompanyCount c = new CompanyCount(e.getKey(), e.getValue());
+			counts.put(c.cmpId, c);
+			ranking.add(c);
+		}
+		loadedAt = System.currentTimeMillis();
+		rebuilds++;
+	}// end rebuild
+
+	/**
+	 * Compares the maintained counts with the full aggregate of the Repair
+	 * table and prints every company that differs. Loads the counts first if
+	 * they are not loaded.
+	 *
+	 * @return the number of companies whose count differs
+	 * @throws java.sql.SQLException when the repairs cannot be read
+	 */
+	public synchronized int check() throws SQLException {
+		if (loadedAt < 0) {
+			rebuild();
+		}
+		Map<Long, Long> expected = aggregate(new long[0]);
+		int mismatches = 0;
+		for (Map.Entry<Long, Long> e : expected.entrySet()) {
+			CompanyCount c = counts.get(e.getKey());
+			long actual = c == null ? 0 : c.count;
+			if (actual != e.getValue()) {
+				mismatches++;
+				System.out.println("company " + e.getKey() + ": leaderboard " + actual + ", repair table " + e.getValue());
+			}
+		}
+		for (CompanyCount c : counts.values()) {
+			if (!expected.containsKey(c.cmpId)) {
+				mismatches++;
+				System.out.println("company " + c.cmpId + ": leaderboard " + c.count + ", repair table 0");
+			}
+		}
+		System.out.println(mismatches == 0 ? "Repair leaderboard OK (" + counts.size() + " companies)"
+				: mismatches + " company count(s) differ");
+		return mismatches;
+	}// end check
+
+	public synchronized long getRebuilds() {
+		return rebuilds;
+	}
+
+	public synchronized int size() {
+		return counts.size();
+	}
+
+	/**
+	 * Returns the repair count of every company, leaving out the given
+	 * repairs.
+	 */
+	private Map<Long, Long> aggregate(long[] skipped) throws SQLException {
+		ResultSet rs = query(SQL_REPAIR_COUNTS, PriceIndex.idList(skipped));
+		Map<Long, Long> result = new HashMap<Long, Long>();
+		while (rs.next()) {
+			result.put(rs.getLong(1), rs.getLong(2));
+		}
+		return result;
+	}// end aggregate
+
+	/**
+	 * Runs a query on the primary and returns a disconnected copy of the rows.
+	 */
+	private ResultSet query(String sql, Object... params) throws SQLException {
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		ResultSet rs = null;
+		try {
+			PreparedStatement ps = conn.statements.prepare(sql);
+			StatementCache.bind(ps, params);
+			rs = ps.executeQuery();
+			CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+			rows.populate(rs);
+			return rows;
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			esql.getPool().release(conn);
+		}
+	}// end query
+
+}// end RepairLeaderboard
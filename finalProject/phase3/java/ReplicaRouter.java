@@ -0,0 +1,273 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes the queries of the read-only operations to a streaming replica.
+ *
+ * The reporting operations (menu entries 8 to 16 and the hotel report) only
+ * read, so their queries can run on a hot standby instead of competing with
+ * the writes on the primary. A query goes to the replica when all of these
+ * hold, and to the primary otherwise:
+ *
+ * - dbproject.replica.url names the replica (same user and password as the
+ *   primary unless dbproject.replica.user and dbproject.replica.password are
+ *   set; dbproject.replica.pool.max connections, default dbproject.pool.max)
+ * - the calling thread runs a read-only operation (see Metrics.setOperation)
+ * - the last lag check, every dbproject.replica.checkMs milliseconds (default
+ *   1000), found a standby less than dbproject.replica.maxLagMs (default 5000)
+ *   behind
+ * - the replica has replayed the last write of the session
+ *
+ * The last condition gives read-your-writes: after every write the primary's
+ * WAL position is remembered in the session, and the session's reads stay on
+ * the primary until the replica has replayed past it. A session is the
+ * calling thread unless another one is bound with setSession, as the
+ * asynchronous facade does for the operations of one caller.
+ *
+ * To try it with two local instances, start a primary on port 5432, create a
+ * standby with `pg_basebackup -D standby -R -p 5432`, start it on port 5433,
+ * and run with -Ddbproject.replica.url=jdbc:postgresql://localhost:5433/&lt;dbname&gt;.
+ * The --replica mode prints the routing status.
+ */
+public class ReplicaRouter {
+
+	// the operations that never write
+	static final Set<String> READS = new HashSet<String>(Arrays.asList(
+			Arrays.copyOfRange(DBProject.OPERATIONS, 7, DBProject.OPERATIONS.length)));
+	static {
+		READS.add("hotelReport");
+	}
+
+	private static final String SQL_PRIMARY_LSN = "SELECT pg_current_wal_lsn()::text";
+	private static final String SQL_REPLICA_STATUS = "SELECT pg_is_in_recovery(), pg_last_wal_replay_lsn()::text, CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+	/**
+	 * The writes of one client: the primary's WAL position after its last
+	 * write.
+	 */
+	static class Session {
+		final AtomicLong lastWriteLsn = new AtomicLong();
+
+		void wrote(long lsn) {
+			long last;
+			while (lsn > (last = lastWriteLsn.get()) && !lastWriteLsn.compareAndSet(last, lsn)) {
+				// retry
+			}
+		}
+	}// end Session
+
+	private static final ThreadLocal<Session> THREAD_SESSION = new ThreadLocal<Session>() {
+		protected Session initialValue() {
+			return new Session();
+		}
+	};
+	private static final ThreadLocal<Session> BOUND_SESSION = new ThreadLocal<Session>();
+
+	private final ConnectionPool primary;
+	private final ConnectionPool replica;
+	private final long maxLagMillis;
+	private final ScheduledExecutorService checker;
+
+	// written by the checker
+	private volatile boolean standby = false;
+	private volatile long replayLsn = 0;
+	private volatile long lagMillis = Long.MAX_VALUE;
+	private volatile String lastError = null;
+
+	private final AtomicLong toReplica = new AtomicLong();
+	private final AtomicLong lagged = new AtomicLong();
+	private final AtomicLong ownWrites = new AtomicLong();
+
+	/**
+	 * Creates a router; without a replica every query goes to the primary.
+	 */
+	public ReplicaRouter(ConnectionPool primary, ConnectionPool replica) {
+		this.primary = primary;
+		this.replica = replica;
+		this.maxLagMillis = Long.getLong("dbproject.replica.maxLagMs", 5000);
+		if (replica == null) {
+			this.checker = null;
+			return;
+		}
+		long interval = Math.max(1, Long.getLong("dbproject.replica.checkMs", 1000));
+		this.checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "dbproject-replica-check");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		checker.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				check();
+			}
+		}, 0, interval, TimeUnit.MILLISECONDS);
+	}// end ReplicaRouter
+
+	/**
+	 * Binds the session the calling thread works for; null goes back to the
+	 * thread's own session.
+	 */
+	public static void setSession(Session session) {
+		if (session == null) {
+			BOUND_SESSION.remove();
+		} else {
+			BOUND_SESSION.set(session);
+		}
+	}// end setSession
+
+	/**
+	 * Returns the session the calling thread works for.
+	 */
+	public static Session currentSession() {
+		Session s = BOUND_SESSION.get();
+		return s != null ? s : THREAD_SESSION.get();
+	}// end currentSession
+
+	/**
+	 * Returns the pool the next query of the calling thread should run on.
+	 */
+	public ConnectionPool forQuery() {
+		if (replica == null || !READS.contains(Metrics.getOperation())) {
+			return primary;
+		}
+		if (!standby || lagMillis > maxLagMillis) {
+			lagged.incrementAndGet();
+			return primary;
+		}
+		if (replayLsn < currentSession().lastWriteLsn.get()) {
+			ownWrites.incrementAndGet();
+			return primary;
+		}
+		toReplica.incrementAndGet();
+		return replica;
+	}// end forQuery
+
+	/**
+	 * Records a write committed on the connection of the primary, so that the
+	 * session reads it back from the primary until the replica has it.
+	 */
+	public void afterWrite(ConnectionPool.Pooled conn) throws SQLException {
+		afterWrite(conn, Collections.singletonList(currentSession()));
+	}// end afterWrite
+
+	/**
+	 * Records a write committed on behalf of several sessions at once, as the
+	 * group commit does.
+	 */
+	public void afterWrite(ConnectionPool.Pooled conn, List<Session> sessions) throws SQLException {
+		if (replica == null) {
+			return;
+		}
+		Statement stmt = conn.connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery(SQL_PRIMARY_LSN);
+			if (rs.next()) {
+				long lsn = parseLsn(rs.getString(1));
+				for (Session s : sessions) {
+					s.wrote(lsn);
+				}
+			}
+		} finally {
+			ConnectionPool.closeQuietly(stmt);
+		}
+	}// end afterWrite
+
+	/**
+	 * Reads the replay position and lag of the replica.
+	 */
+	void check() {
+		ConnectionPool.Pooled conn = null;
+		Statement stmt = null;
+		try {
+			conn = replica.borrow();
+			stmt = conn.connection.createStatement();
+			ResultSet rs = stmt.executeQuery(SQL_REPLICA_STATUS);
+			rs.next();
+			if (!rs.getBoolean(1)) {
+				standby = false;
+				lastError = "not a standby (pg_is_in_recovery() is false)";
+				return;
+			}
+			replayLsn = parseLsn(rs.getString(2));
+			lagMillis = (long) rs.getDouble(3);
+			standby = true;
+			lastError = null;
+		} catch (SQLException e) {
+			standby = false;
+			lastError = e.getMessage();
+		} finally {
+			ConnectionPool.closeQuietly(stmt);
+			if (conn != null) {
+				replica.release(conn);
+			}
+		}
+	}// end check
+
+	/**
+	 * Parses a WAL position such as 16/B374D848 into a comparable number.
+	 */
+	static long parseLsn(String lsn) {
+		if (lsn == null) {
+			return 0;
+		}
+		int slash = lsn.indexOf('/');
+		return (Long.parseLong(lsn.substring(0, slash), 16) << 32) | Long.parseLong(lsn.substring(slash + 1), 16);
+	}// end parseLsn
+
+	/**
+	 * Returns the replica pool, or null when there is none.
+	 */
+	public ConnectionPool getReplica() {
+		return replica;
+	}// end getReplica
+
+	/**
+	 * Prints the state of the replica and how the queries were routed.
+	 */
+	public void printStatus() {
+		if (replica == null) {
+			System.out.println("No replica configured (set dbproject.replica.url)");
+			return;
+		}
+		System.out.println(String.format("Replica: %s, lag %s ms, replayed up to %X/%X",
+				standby ? "streaming" : "unavailable (" + lastError + ")",
+				lagMillis == Long.MAX_VALUE ? "?" : String.valueOf(lagMillis), replayLsn >>> 32,
+				replayLsn & 0xFFFFFFFFL));
+		System.out.println(String.format(
+				"Read queries: %d on the replica, %d on the primary for lag, %d on the primary for own writes",
+				toReplica.get(), lagged.get(), ownWrites.get()));
+	}// end printStatus
+
+	/**
+	 * Stops the lag checks.
+	 */
+	public void close() {
+		if (checker != null) {
+			checker.shutdownNow();
+		}
+	}// end close
+
+	/**
+	 * Entry point of the --replica mode.
+	 */
+	public static void run(DBProject esql) {
+		ReplicaRouter router = esql.getRouter();
+		if (router.getReplica() != null) {
+			router.check();
+		}
+		router.printStatus();
+	}// end run
+
+}// end ReplicaRouter
@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Renders the rows of a query result to a writer, one row at a time.
+ *
+ * runQuery streams its results through the format selected with the
+ * dbproject.output.format system property: "tab" (the default, the classic
+ * tab separated console output), "csv" or "jsonl" (one JSON object per line).
+ */
+public abstract class ResultFormat {
+
+	public static final ResultFormat TAB = new ResultFormat() {
+		void begin(ResultSetMetaData md, Writer out) {
+			// the header is only printed when there is at least one row
+		}
+
+		void row(ResultSetMetaData md, ResultSet rs, int rowNo, Writer out) throws SQLException, IOException {
+			int numCol = md.getColumnCount();
+			if (rowNo == 0) {
+				for (int i = 1; i <= numCol; i++) {
+					out.write(md.getColumnName(i));
+					out.write('\t');
+				}
+				out.write('\n');
+			}
+			for (int i = 1; i <= numCol; i++) {
+				out.write(String.valueOf(rs.getString(i)));
+				out.write('\t');
+			}
+			out.write('\n');
+		}
+	};
+
+	public static final ResultFormat CSV = new ResultFormat() {
+		void begin(ResultSetMetaData md, Writer out) throws SQLException, IOException {
+			int numCol = md.getColumnCount();
+			for (int i = 1; i <= numCol; i++) {
+				if (i > 1) {
+					out.write(',');
+				}
+				writeCsv(md.getColumnName(i), out);
+			}
+			out.write('\n');
+		}
+
+		void row(ResultSetMetaData md, ResultSet rs, int rowNo, Writer out) throws SQLException, IOException {
+			int numCol = md.getColumnCount();
+			for (int i = 1; i <= numCol; i++) {
+				if (i > 1) {
+					out.write(',');
+				}
+				String value = rs.getString(i);
+				if (value != null) {
+					writeCsv(value, out);
+				}
+			}
+			out.write('\n');
+		}
+	};
+
+	public static final ResultFormat JSON_LINES = new ResultFormat() {
+		void begin(ResultSetMetaData md, Writer out) {
+			// every line is self describing
+		}
+
+		void row(ResultSetMetaData md, ResultSet rs, int rowNo, Writer out) throws SQLException, IOException {
+			int numCol = md.getColumnCount();
+			out.write('{');
+			for (int i = 1; i <= numCol; i++) {
+				if (i > 1) {
+					out.write(',');
+				}
+				writeJsonString(md.getColumnName(i), out);
+				out.write(':');
+				String value = rs.getString(i);
+				if (value == null) {
+					out.write("null");
+				} else if (isNumeric(md.getColumnType(i))) {
+					out.write(value);
+				} else if (md.getColumnType(i) == Types.BOOLEAN || md.getColumnType(i) == Types.BIT) {
+					out.write(rs.getBoolean(i) ? "true" : "false");
+				} else {
+					writeJsonString(value, out);
+				}
+			}
+			out.write("}\n");
+		}
+	};
+
+	/**
+	 * Called once before the first row.
+	 */
+	abstract void begin(ResultSetMetaData md, Writer out) throws SQLException, IOException;
+
+	/**
+	 * Called for every row; rowNo counts from 0.
+	 */
+	abstract void row(ResultSetMetaData md, ResultSet rs, int rowNo, Writer out) throws SQLException, IOException;
+
+	/**
+	 * Writes every row of the result set and returns the number of rows.
+	 */
+	public int write(ResultSet rs, Writer out) throws SQLException, IOException {
+		ResultSetMetaData md = rs.getMetaData();
+		begin(md, out);
+		int rowCount = 0;
+		while (rs.next()) {
+			row(md, rs, rowCount, out);
+			++rowCount;
+		}
+		return rowCount;
+	}// end write
+
+	/**
+	 * Returns the format with the given name (tab, csv or jsonl).
+	 */
+	public static ResultFormat forName(String name) {
+		if (name.equalsIgnoreCase("csv")) {
+			return CSV;
+		}
+		if (name.equalsIgnoreCase("jsonl") || name.equalsIgnoreCase("json")) {
+			return JSON_LINES;
+		}
+		if (name.equalsIgnoreCase("tab")) {
+			return TAB;
+		}
+		throw new IllegalArgumentException("Unknown output format: " + name);
+	}// end forName
+
+	static boolean isNumeric(int type) {
+		switch (type) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}// end isNumeric
+
+	static void writeCsv(String value, Writer out) throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				out.write('"');
+			}
+			out.write(c);
+		}
+		out.write('"');
+	}// end writeCsv
+
+	static void writeJsonString(String value, Writer out) throws IOException {
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", (int) c));
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}// end writeJsonString
+
+}// end ResultFormat
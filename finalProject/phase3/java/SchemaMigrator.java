@@ -0,0 +1,272 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the versioned schema migrations in sql/migrations.
+ *
+ * Migrations are plain SQL files named V&lt;version&gt;__&lt;description&gt;.sql.
+ * They are applied in version order, each one in its own transaction, and
+ * recorded in the schema_version table so that every migration runs exactly
+ * once per database. Run create.sql first, then
+ * java DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --migrate ../sql/migrations
+ */
+public class SchemaMigrator {
+
+	private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+	private static final Pattern DOLLAR_TAG = Pattern.compile("\\$[A-Za-z_]*\\$");
+
+	private static final String SQL_CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version(version integer PRIMARY KEY, description text NOT NULL, applied_at timestamp NOT NULL DEFAULT now())";
+	private static final String SQL_APPLIED_VERSIONS = "SELECT version FROM schema_version";
+	private static final String SQL_RECORD_VERSION = "INSERT INTO schema_version(version, description) VALUES(?, ?)";
+	private static final String SQL_HAS_VERSION_TABLE = "SELECT to_regclass('schema_version') IS NOT NULL";
+	private static final String SQL_CURRENT_VERSION = "SELECT COALESCE(MAX(version), 0) FROM schema_version";
+
+	/**
+	 * One migration file.
+	 */
+	static class Migration {
+		final int version;
+		final String description;
+		final File file;
+
+		Migration(int version, String description, File file) {
+			this.version = version;
+			this.description = description;
+			this.file = file;
+		}
+	}// end Migration
+
+	private final DBProject esql;
+	private final File dir;
+
+	public SchemaMigrator(DBProject esql, File dir) {
+		this.esql = esql;
+		this.dir = dir;
+	}// end SchemaMigrator
+
+	/**
+	 * Applies every migration that has not been applied yet.
+	 *
+	 * @return the number of migrations applied
+	 * @throws java.lang.Exception when a migration fails; it is rolled back and
+	 *                             the later ones are not attempted.
+	 */
+	public int migrate() throws Exception {
+		esql.executeUpdate(SQL_CREATE_VERSION_TABLE);
+		Set<Integer> applied = new HashSet<Integer>();
+		ResultSet rs = esql.executeQuery(SQL_APPLIED_VERSIONS);
+		while (rs.next()) {
+			applied.add(rs.getInt(1));
+		}
+		int count = 0;
+		for (Migration m : list()) {
+			if (applied.contains(m.version)) {
+				continue;
+			}
+			long start = System.nanoTime();
+			apply(m);
+			count++;
+			System.out.println(String.format("Applied V%d %s in %.2f s", m.version, m.description,
+					(System.nanoTime() - start) / 1e9));
+		}
+		System.out.println(count == 0 ? "Schema is up to date" : "Applied " + count + " migration(s)");
+		return count;
+	}// end migrate
+
+	/**
+	 * Returns the highest migration applied to the database, 0 when none has
+	 * been.
+	 */
+	static int currentVersion(DBProject esql) throws SQLException {
+		ResultSet rs = esql.executeQuery(SQL_HAS_VERSION_TABLE);
+		if (!rs.next() || !rs.getBoolean(1)) {
+			return 0;
+		}
+		rs = esql.executeQuery(SQL_CURRENT_VERSION);
+		return rs.next() ? rs.getInt(1) : 0;
+	}// end currentVersion
+
+	/**
+	 * Fails unless the migrations up to the given version have been applied.
+	 *
+	 * @throws java.sql.SQLException naming the missing migrations and how to
+	 *                               apply them
+	 */
+	static void requireVersion(DBProject esql, int version) throws SQLException {
+		int current = currentVersion(esql);
+		if (current < version) {
+			throw new SQLException("The database schema is at version " + current + " but this program needs version "
+					+ version + "; apply the migrations first: java DBProject <dbname> <port> <user> --migrate ../sql/migrations");
+		}
+	}// end requireVersion
+
+	/**
+	 * Returns the migration files of the directory in version order.
+	 */
+	List<Migration> list() throws IOException {
+		File[] files = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				return FILE_NAME.matcher(name).matches();
+			}
+		});
+		if (files == null) {
+			throw new IOException("Not a directory: " + dir);
+		}
+		List<Migration> migrations = new ArrayList<Migration>();
+		Set<Integer> versions = new HashSet<Integer>();
+		for (File f : files) {
+			Matcher m = FILE_NAME.matcher(f.getName());
+			m.matches();
+			int version = Integer.parseInt(m.group(1));
+			if (!versions.add(version)) {
+				throw new IOException("Duplicate migration version " + version + " in " + dir);
+			}
+			migrations.add(new Migration(version, m.group(2).replace('_', ' '), f));
+		}
+		Migration[] sorted = migrations.toArray(new Migration[migrations.size()]);
+		Arrays.sort(sorted, new Comparator<Migration>() {
+			public int compare(Migration a, Migration b) {
+				return a.version < b.version ? -1 : (a.version == b.version ? 0 : 1);
+			}
+		});
+		return Arrays.asList(sorted);
+	}// end list
+
+	private void apply(Migration m) throws Exception {
+		List<String> statements = splitStatements(read(m.file));
+		ConnectionPool.Pooled conn = esql.getPool().borrow();
+		Statement stmt = null;
+		try {
+			conn.connection.setAutoCommit(false);
+			stmt = conn.connection.createStatement();
+			for (String sql : statements) {
+				try {
+					stmt.execute(sql);
+				} catch (SQLException e) {
+					throw new SQLException("V" + m.version + " failed at: " + sql + "\n" + e.getMessage());
+				}
+			}
+			PreparedStatement ps = conn.statements.prepare(SQL_RECORD_VERSION);
+			StatementCache.bind(ps, Integer.valueOf(m.version), m.description);
+			ps.executeUpdate();
+			conn.connection.commit();
+		} finally {
+			ConnectionPool.closeQuietly(stmt);
+			// rolls back when the migration did not commit
+			esql.getPool().release(conn);
+		}
+	}// end apply
+
+	private static String read(File file) throws IOException {
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		} finally {
+			in.close();
+		}
+	}// end read
+
+	/**
+	 * Splits an SQL script into statements at the semicolons that are not
+	 * inside quotes, dollar quoted bodies or comments.
+	 */
+	static List<String> splitStatements(String script) {
+		List<String> statements = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		String dollarTag = null;
+		int i = 0;
+		int n = script.length();
+		while (i < n) {
+			char c = script.charAt(i);
+			if (dollarTag != null) {
+				if (script.startsWith(dollarTag, i)) {
+					current.append(dollarTag);
+					i += dollarTag.length();
+					dollarTag = null;
+				} else {
+					current.append(c);
+					i++;
+				}
+			} else if (c == '-' && i + 1 < n && script.charAt(i + 1) == '-') {
+				// line comment
+				while (i < n && script.charAt(i) != '\n') {
+					i++;
+				}
+			} else if (c == '/' && i + 1 < n && script.charAt(i + 1) == '*') {
+				int end = script.indexOf("*/", i + 2);
+				i = end < 0 ? n : end + 2;
+			} else if (c == '\'' || c == '"') {
+				int end = i + 1;
+				while (end < n) {
+					if (script.charAt(end) == c) {
+						if (end + 1 < n && script.charAt(end + 1) == c) {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				end = Math.min(end + 1, n);
+				current.append(script, i, end);
+				i = end;
+			} else if (c == '$') {
+				Matcher m = DOLLAR_TAG.matcher(script).region(i, n);
+				if (m.lookingAt()) {
+					dollarTag = m.group();
+					current.append(dollarTag);
+					i += dollarTag.length();
+				} else {
+					current.append(c);
+					i++;
+				}
+			} else if (c == ';') {
+				addStatement(statements, current);
+				i++;
+			} else {
+				current.append(c);
+				i++;
+			}
+		} // end while
+		addStatement(statements, current);
+		return statements;
+	}// end splitStatements
+
+	private static void addStatement(List<String> statements, StringBuilder current) {
+		String sql = current.toString().trim();
+		if (sql.length() > 0) {
+			statements.add(sql);
+		}
+		current.setLength(0);
+	}// end addStatement
+
+	/**
+	 * Entry point of the --migrate mode.
+	 */
+	public static void run(DBProject esql, String dir) throws Exception {
+		new SchemaMigrator(esql, new File(dir)).migrate();
+	}// end run
+
+}// end SchemaMigrator
@@ -0,0 +1,261 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Log of the statements that took longer than a threshold, with the plan the
+ * server chooses for them.
+ *
+ * DBProject hands every statement to check() once it has run. Statements
+ * faster than dbproject.slowQuery.thresholdMs (default 500) cost a single
+ * comparison. Slower ones are queued, with their parameters, duration, row
+ * count and menu operation, to a background thread that runs a plain EXPLAIN
+ * of the statement on a pooled connection and appends the entry to the file
+ * named by dbproject.slowQuery.file. The statement is not executed again, so
+ * the plan has no timings, and it is the plan at the time of the EXPLAIN,
+ * which may differ from the one that ran if the statistics changed in between.
+ *
+ * The log is off unless dbproject.slowQuery.file is set. When it grows past
+ * dbproject.slowQuery.maxBytes (default 10 MB) it is renamed to file.1, file.1
+ * to file.2 and so on, keeping dbproject.slowQuery.files (default 5) old
+ * files. At most dbproject.slowQuery.queueSize (default 100) entries wait for
+ * their plan; entries beyond that are dropped and counted, so a burst of slow
+ * statements never blocks the caller.
+ */
+public class SlowQueryLog {
+
+	// statements EXPLAIN accepts; everything else is logged without a plan
+	private static final Pattern EXPLAINABLE = Pattern.compile("^\\s*(SELECT|INSERT|UPDATE|DELETE|WITH|VALUES)\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final String NEWLINE = System.getProperty("line.separator");
+
+	/**
+	 * One slow statement waiting for its plan.
+	 */
+	static class Entry implements Runnable {
+		final SlowQueryLog log;
+		final long loggedAt = System.currentTimeMillis();
+		final String operation = Metrics.getOperation();
+		final String sql;
+		final Object[] params;
+		final long nanos;
+		final long rows;
+
+		Entry(SlowQueryLog log, String sql, Object[] params, long nanos, long rows) {
+			this.log = log;
+			this.sql = sql;
+			this.params = params;
+			this.nanos = nanos;
+			this.rows = rows;
+		}
+
+		public void run() {
+			log.write(this, log.explain(sql, params));
+		}
+	}// end Entry
+
+	private final DBProject esql;
+	private final String file;
+	private final long thresholdNanos;
+	private final long maxBytes;
+	private final int files;
+	private final ThreadPoolExecutor writer;
+	private final AtomicLong dropped = new AtomicLong();
+
+	// only touched by the writer thread
+	private Writer out = null;
+	private long written = 0;
+
+	public SlowQueryLog(DBProject esql) {
+		this.esql = esql;
+		this.file = System.getProperty("dbproject.slowQuery.file");
+		this.thresholdNanos = file == null ? Long.MAX_VALUE
+				: TimeUnit.MILLISECONDS.toNanos(Long.getLong("dbproject.slowQuery.thresholdMs", 500));
+		this.maxBytes = Long.getLong("dbproject.slowQuery.maxBytes", 10L << 20);
+		this.files = Math.max(1, Integer.getInteger("dbproject.slowQuery.files", 5));
+		if (file == null) {
+			this.writer = null;
+			return;
+		}
+		this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, Integer.getInteger("dbproject.slowQuery.queueSize", 100))),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "dbproject-slow-query-log");
+						t.setDaemon(true);
+						return t;
+					}
+				}, new RejectedExecutionHandler() {
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						dropped.incrementAndGet();
+					}
+				});
+	}// end SlowQueryLog
+
+	/**
+	 * Logs the statement if it ran for at least the threshold.
+	 *
+	 * @param sql    the statement, with ? placeholders when params is not empty
+	 * @param params the values bound to the placeholders
+	 * @param nanos  time spent executing the statement and reading its rows
+	 * @param rows   rows returned or affected, or -1 if the statement failed
+	 */
+	public void check(String sql, Object[] params, long nanos, long rows) {
+		if (nanos < thresholdNanos) {
+			return;
+		}
+		writer.execute(new Entry(this, sql, params, nanos, rows));
+	}// end check
+
+	/**
+	 * Returns the plan of the statement, or a line saying why there is none.
+	 */
+	private List<String> explain(String sql, Object[] params) {
+		List<String> plan = new ArrayList<String>();
+		if (!EXPLAINABLE.matcher(sql).find()) {
+			plan.add("(no plan for this kind of statement)");
+			return plan;
+		}
+		ConnectionPool.Pooled conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			conn = esql.getPool().borrow();
+			// the statement is not executed, but never commit anything here
+			conn.connection.setAutoCommit(false);
+			ps = conn.connection.prepareStatement("EXPLAIN " + sql);
+			StatementCache.bind(ps, params);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				plan.add(rs.getString(1));
+			}
+		} catch (SQLException e) {
+			plan.add("(no plan: " + e.getMessage() + ")");
+		} finally {
+			ConnectionPool.closeQuietly(rs);
+			ConnectionPool.closeQuietly(ps);
+			esql.getPool().release(conn);
+		}
+		return plan;
+	}// end explain
+
+	private void write(Entry e, List<String> plan) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("# ").append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(e.loggedAt)))
+				.append(String.format(" operation=%s duration_ms=%.3f rows=%s", e.operation, e.nanos / 1e6,
+						e.rows < 0 ? "failed" : String.valueOf(e.rows)))
+				.append(NEWLINE);
+		sb.append(e.sql).append(NEWLINE);
+		if (e.params.length > 0) {
+			sb.append("-- parameters:");
+			for (int i = 0; i < e.params.length; i++) {
+				sb.append(" $").append(i + 1).append('=').append(literal(e.params[i]));
+			}
+			sb.append(NEWLINE);
+		}
+		for (String line : plan) {
+			sb.append("-- ").append(line).append(NEWLINE);
+		}
+		long skipped = dropped.getAndSet(0);
+		if (skipped > 0) {
+			sb.append("-- ").append(skipped).append(" slow statement(s) dropped before this one").append(NEWLINE);
+		}
+		sb.append(NEWLINE);
+		try {
+			append(sb.toString());
+		} catch (IOException ex) {
+			System.err.println("Slow query log failed: " + ex.getMessage());
+		}
+	}// end write
+
+	private static String literal(Object value) {
+		if (value == null) {
+			return "NULL";
+		}
+		if (value instanceof String || value instanceof java.sql.Date) {
+			return "'" + value.toString().replace("'", "''") + "'";
+		}
+		return value.toString();
+	}// end literal
+
+	/**
+	 * Appends the text to the log, rotating it first when it would grow past
+	 * maxBytes.
+	 */
+	private void append(String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		if (out == null) {
+			written = new File(file).length();
+		}
+		if (written > 0 && written + bytes.length > maxBytes) {
+			rotate();
+		}
+		if (out == null) {
+			out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+		}
+		out.write(text);
+		out.flush();
+		written += bytes.length;
+	}// end append
+
+	private void rotate() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+		new File(file + "." + files).delete();
+		for (int i = files - 1; i >= 1; i--) {
+			File older = new File(file + "." + i);
+			if (older.exists() && !older.renameTo(new File(file + "." + (i + 1)))) {
+				throw new IOException("Unable to rotate " + older);
+			}
+		}
+		if (!new File(file).renameTo(new File(file + ".1"))) {
+			throw new IOException("Unable to rotate " + file);
+		}
+		written = 0;
+	}// end rotate
+
+	/**
+	 * Writes the entries still waiting for their plan, for at most a few
+	 * seconds, and closes the log.
+	 */
+	public void close() {
+		if (writer == null) {
+			return;
+		}
+		writer.shutdown();
+		try {
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer.shutdownNow();
+		try {
+			// a plan still being fetched keeps writing to out
+			if (writer.isTerminated() && out != null) {
+				out.close();
+			}
+		} catch (IOException e) {
+			// ignored.
+		}
+	}// end close
+
+}// end SlowQueryLog
@@ -0,0 +1,142 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.postgresql.PGStatement;
+
+/**
+ * A least recently used cache of prepared statements belonging to one physical
+ * connection.
+ *
+ * Statements are keyed by their SQL template and, when the driver supports it,
+ * prepared on the server so that repeated calls skip parsing and planning. The
+ * cache is owned by a pooled connection and is only ever used by the thread
+ * that has borrowed that connection, so it is not synchronized.
+ *
+ * The cache size can be tuned with the dbproject.statementCache.size system
+ * property, and server side preparation can be turned off with
+ * -Ddbproject.serverPrepare=false.
+ */
+public class StatementCache {
+
+	private static final int DEFAULT_CAPACITY = Integer.getInteger("dbproject.statementCache.size", 64);
+	private static final boolean SERVER_PREPARE = Boolean
+			.parseBoolean(System.getProperty("dbproject.serverPrepare", "true"));
+
+	private final Connection connection;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	public StatementCache(Connection connection) {
+		this(connection, DEFAULT_CAPACITY);
+	}// end StatementCache
+
+	public StatementCache(Connection connection, final int capacity) {
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > capacity) {
+					ConnectionPool.closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}// end StatementCache
+
+	/**
+	 * Returns the prepared statement for the given SQL template, preparing it on
+	 * first use. The returned statement must not be closed by the caller.
+	 *
+	 * @param template the SQL text with ? placeholders
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String template) throws SQLException {
+		PreparedStatement ps = statements.get(template);
+		if (ps != null) {
+			hits++;
+			return ps;
+		}
+		misses++;
+		ps = connection.prepareStatement(template);
+		if (SERVER_PREPARE && ps instanceof PGStatement) {
+			((PGStatement) ps).setUseServerPrepare(true);
+		}
+		statements.put(template, ps);
+		return ps;
+	}// end prepare
+
+	/**
+	 * Drops a statement from the cache, e.g. after it failed in a way that may
+	 * have left it unusable.
+	 */
+	public void evict(String template) {
+		ConnectionPool.closeQuietly(statements.remove(template));
+	}// end evict
+
+	/**
+	 * Closes every cached statement.
+	 */
+	public void clear() {
+		for (PreparedStatement ps : statements.values()) {
+			ConnectionPool.closeQuietly(ps);
+		}
+		statements.clear();
+	}// end clear
+
+	public int size() {
+		return statements.size();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Binds the parameters to the statement in order. Values are bound with the
+	 * most specific setter so that server side prepared statements get the
+	 * right parameter types.
+	 *
+	 * @param ps     the statement to bind
+	 * @param params the values for the ? placeholders, in order
+	 * @throws java.sql.SQLException when a value cannot be bound
+	 */
+	public static void bind(PreparedStatement ps, Object... params) throws SQLException {
+		ps.clearParameters();
+		for (int i = 0; i < params.length; i++) {
+			Object value = params[i];
+			int index = i + 1;
+			if (value == null) {
+				ps.setNull(index, Types.VARCHAR);
+			} else if (value instanceof String) {
+				ps.setString(index, (String) value);
+			} else if (value instanceof Integer) {
+				ps.setInt(index, ((Integer) value).intValue());
+			} else if (value instanceof Long) {
+				ps.setLong(index, ((Long) value).longValue());
+			} else if (value instanceof BigDecimal) {
+				ps.setBigDecimal(index, (BigDecimal) value);
+			} else if (value instanceof java.sql.Date) {
+				ps.setDate(index, (java.sql.Date) value);
+			} else if (value instanceof Boolean) {
+				ps.setBoolean(index, ((Boolean) value).booleanValue());
+			} else {
+				ps.setObject(index, value);
+			}
+		}
+	}// end bind
+
+}// end StatementCache
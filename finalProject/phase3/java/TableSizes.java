@@ -0,0 +1,84 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Report of the on-disk size of the phase3 tables.
+ *
+ * For every table of the data set it prints the heap and index sizes, the
+ * estimated row count and the average number of heap bytes per row; the
+ * partitions of Booking and Repair (migration V2) are summed up into their
+ * table. Run it before and after a schema migration such as V4 to see what
+ * the migration saved, and --bench for the matching latencies:
+ *
+ * java DBProject &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --sizes
+ *
+ * The row counts are the planner estimates of the last ANALYZE.
+ */
+public class TableSizes {
+
+	// a table that is not partitioned is the only leaf of its own tree
+	private static final String SQL_SIZES = "SELECT COALESCE(SUM(pg_table_size(t.relid)), 0), COALESCE(SUM(pg_indexes_size(t.relid)), 0), COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint FROM pg_partition_tree(to_regclass(?)) t JOIN pg_class c ON c.oid = t.relid WHERE t.isleaf";
+
+	/**
+	 * The size of one table.
+	 */
+	static class Size {
+		final String table;
+		final long tableBytes;
+		final long indexBytes;
+		final long rows;
+
+		Size(String table, long tableBytes, long indexBytes, long rows) {
+			this.table = table;
+			this.tableBytes = tableBytes;
+			this.indexBytes = indexBytes;
+			this.rows = rows;
+		}
+
+		double bytesPerRow() {
+			return rows == 0 ? 0 : (double) tableBytes / rows;
+		}
+	}// end Size
+
+	private final DBProject esql;
+
+	public TableSizes(DBProject esql) {
+		this.esql = esql;
+	}// end TableSizes
+
+	/**
+	 * Returns the size of the table, all zero when it does not exist.
+	 *
+	 * @throws java.sql.SQLException when the catalogs cannot be read
+	 */
+	public Size size(String table) throws SQLException {
+		ResultSet rs = esql.executeQuery(SQL_SIZES, table.toLowerCase());
+		rs.next();
+		return new Size(table, rs.getLong(1), rs.getLong(2), rs.getLong(3));
+	}// end size
+
+	private static String mb(long bytes) {
+		return String.format("%10.2f MB", bytes / (1024.0 * 1024.0));
+	}// end mb
+
+	/**
+	 * Entry point of the --sizes mode.
+	 */
+	public static void run(DBProject esql) throws SQLException {
+		TableSizes sizes = new TableSizes(esql);
+		long tableBytes = 0;
+		long indexBytes = 0;
+		System.out.println(String.format("%-20s %13s %13s %13s %12s %10s", "table", "heap", "indexes", "total",
+				"rows", "bytes/row"));
+		for (BulkLoader.Table table : BulkLoader.TABLES) {
+			Size s = sizes.size(table.name);
+			tableBytes += s.tableBytes;
+			indexBytes += s.indexBytes;
+			System.out.println(String.format("%-20s %s %s %s %12d %10.1f", s.table, mb(s.tableBytes),
+					mb(s.indexBytes), mb(s.tableBytes + s.indexBytes), s.rows, s.bytesPerRow()));
+		}
+		System.out.println(String.format("%-20s %s %s %s", "all", mb(tableBytes), mb(indexBytes),
+				mb(tableBytes + indexBytes)));
+	}// end run
+
+}// end TableSizes
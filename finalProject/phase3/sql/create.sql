@@ -1,3 +1,8 @@
+-- The base schema, version 0 of schema_version. DBProject needs the
+-- migrations in sql/migrations on top of it: after loading the data, run
+-- `java DBProject <dbname> <port> <user> --migrate ../sql/migrations`.
+-- DBProject refuses to start against an older schema.
+
 -- The below sql statements drops of the tables if they exist
 DROP TABLE IF EXISTS Hotel CASCADE;
 DROP TABLE IF EXISTS Staff CASCADE;
@@ -9,6 +14,15 @@ DROP TABLE IF EXISTS Booking CASCADE;
 DROP TABLE IF EXISTS Repair CASCADE;
 DROP TABLE IF EXISTS Request CASCADE;
 DROP TABLE IF EXISTS Assigned CASCADE;
+DROP TABLE IF EXISTS schema_version;
+
+-- The below sql statements drops of the id sequences if they exist
+DROP SEQUENCE IF EXISTS customer_id_seq;
+DROP SEQUENCE IF EXISTS booking_id_seq;
+DROP SEQUENCE IF EXISTS repair_id_seq;
+DROP SEQUENCE IF EXISTS request_id_seq;
+DROP SEQUENCE IF EXISTS assigned_id_seq;
+DROP SEQUENCE IF EXISTS maintenancecompany_id_seq;
 
 -- The below sql statements drops of the enum types if they exits
 DROP TYPE IF EXISTS StaffRole CASCADE;
@@ -18,6 +32,8 @@ CREATE TYPE StaffRole AS ENUM('Receptionist','HouseCleaning','Manager'); -- enum
 CREATE TYPE GenderType AS ENUM('Male', 'Female', 'Other'); -- enum for gender
 
 -- The below statements create necessary tables 
+-- migrations/V4 turns the Numeric keys into integer/bigint, the CHAR names into
+-- varchar and Booking.price into Booking.price_cents
 CREATE TABLE Hotel( hotelID Numeric NOT NULL, 
                     address Text, 
 					manager Numeric DEFAULT 0,
@@ -50,6 +66,7 @@ CREATE TABLE MaintenanceCompany( cmpID Numeric NOT NULL,
 								 address TEXT,
 								 isCertified Boolean NOT NULL,
 								 PRIMARY KEY(cmpID));
+-- migrations/V2 range partitions Booking and Repair by year
 CREATE TABLE Booking( bID Numeric NOT NULL,
 					  customer Numeric NOT NULL DEFAULT 0,
 					  hotelID Numeric NOT NULL DEFAULT 0,
@@ -148,84 +165,20 @@ ADD CONSTRAINT assgndRoomConstraint
 FOREIGN KEY(hotelID, roomNo)
 REFERENCES Room(hotelID, roomNo)
 ON DELETE SET DEFAULT; 
--- data copy				 
-COPY Hotel(	hotelID,			 
-			address,	   
-            manager)
-FROM 'hotel.csv'
-WITH DELIMITER ',';
-
-COPY Staff(SSN, 
-			fName, 
-			lName, 
-			address,
-			role,
-			employerID)
-FROM 'staff.csv'
-WITH DELIMITER ',';	
-
-UPDATE hotel 
-SET manager = Staff.ssn
-FROM Staff
-WHERE hotel.hotelID = Staff.employerID AND Staff.role = 'Manager'; 
-
-
-COPY Room(	hotelID,
-		    roomNo,
-			roomType)
-FROM 'room.csv'
-WITH DELIMITER ',';	
-
-COPY Customer(	customerID,
-			    fName,
-			    lName,
-			    Address,
-				phNo,
-				DOB,
-			    gender)
-FROM 'customer.csv'
-WITH DELIMITER ',';	
-
-
-COPY MaintenanceCompany(cmpID,
-						name,
-						address,
-						isCertified)
-FROM 'maintenanceCompany.csv'
-WITH DELIMITER ',';	
-
-COPY Booking( bID,
-			  customer,
-			  hotelID,
-			  roomNo,
-			  bookingDate,
-			  noOfPeople,
-			  price)
-FROM 'booking.csv'
-WITH DELIMITER ',';	
-
-COPY Repair( rID,
-			 hotelID,
-			 roomNo,
-			 mCompany,
-			 repairDate,
-			 description,
-			 repairType)
-FROM 'repair.csv'
-WITH DELIMITER ',';	
-
-COPY Request(reqID,
-			 managerID,
-			 repairID,
-			 requestDate,
-			 description)
-FROM 'request.csv'
-WITH DELIMITER ',';		
-
-COPY Assigned(asgID,
-			  staffID,
-			  hotelID,
-			  roomNo)
-FROM 'assigned.csv'
-WITH DELIMITER ',';		
-	
\ No newline at end of file
+-- The below sql statements create the sequences DBProject allocates ids from.
+-- Each nextval() leases a block of ids, so the increment must match
+-- IdAllocator.BLOCK_SIZE. load.sql and the --load mode of DBProject move them
+-- past the loaded data.
+CREATE SEQUENCE customer_id_seq INCREMENT BY 50;
+CREATE SEQUENCE booking_id_seq INCREMENT BY 50;
+CREATE SEQUENCE repair_id_seq INCREMENT BY 50;
+CREATE SEQUENCE request_id_seq INCREMENT BY 50;
+CREATE SEQUENCE assigned_id_seq INCREMENT BY 50;
+CREATE SEQUENCE maintenancecompany_id_seq INCREMENT BY 50;
+
+SELECT setval('customer_id_seq', (SELECT COALESCE(MAX(customerID), 0) + 1 FROM Customer), false);
+SELECT setval('booking_id_seq', (SELECT COALESCE(MAX(bID), 0) + 1 FROM Booking), false);
+SELECT setval('repair_id_seq', (SELECT COALESCE(MAX(rID), 0) + 1 FROM Repair), false);
+SELECT setval('request_id_seq', (SELECT COALESCE(MAX(reqID), 0) + 1 FROM Request), false);
+SELECT setval('assigned_id_seq', (SELECT COALESCE(MAX(asgID), 0) + 1 FROM Assigned), false);
+SELECT setval('maintenancecompany_id_seq', (SELECT COALESCE(MAX(cmpID), 0) + 1 FROM MaintenanceCompany), false);
@@ -0,0 +1,93 @@
+-- Server side load of the phase3 data set. The csv files must be readable by
+-- the database server; use `java DBProject <dbname> <port> <user> --load <dir>`
+-- to stream them from the client instead. Run create.sql first and apply the
+-- migrations afterwards with `java DBProject <dbname> <port> <user> --migrate
+-- ../sql/migrations`; they convert the loaded rows, e.g. the prices of V4.
+-- data copy				 
+COPY Hotel(	hotelID,			 
+			address,	   
+            manager)
+FROM 'hotel.csv'
+WITH DELIMITER ',';
+
+COPY Staff(SSN, 
+			fName, 
+			lName, 
+			address,
+			role,
+			employerID)
+FROM 'staff.csv'
+WITH DELIMITER ',';	
+
+UPDATE hotel 
+SET manager = Staff.ssn
+FROM Staff
+WHERE hotel.hotelID = Staff.employerID AND Staff.role = 'Manager'; 
+
+
+COPY Room(	hotelID,
+		    roomNo,
+			roomType)
+FROM 'room.csv'
+WITH DELIMITER ',';	
+
+COPY Customer(	customerID,
+			    fName,
+			    lName,
+			    Address,
+				phNo,
+				DOB,
+			    gender)
+FROM 'customer.csv'
+WITH DELIMITER ',';	
+
+
+COPY MaintenanceCompany(cmpID,
+						name,
+						address,
+						isCertified)
+FROM 'maintenanceCompany.csv'
+WITH DELIMITER ',';	
+
+COPY Booking( bID,
+			  customer,
+			  hotelID,
+			  roomNo,
+			  bookingDate,
+			  noOfPeople,
+			  price)
+FROM 'booking.csv'
+WITH DELIMITER ',';	
+
+COPY Repair( rID,
+			 hotelID,
+			 roomNo,
+			 mCompany,
+			 repairDate,
+			 description,
+			 repairType)
+FROM 'repair.csv'
+WITH DELIMITER ',';	
+
+COPY Request(reqID,
+			 managerID,
+			 repairID,
+			 requestDate,
+			 description)
+FROM 'request.csv'
+WITH DELIMITER ',';		
+
+COPY Assigned(asgID,
+			  staffID,
+			  hotelID,
+			  roomNo)
+FROM 'assigned.csv'
+WITH DELIMITER ',';
+
+-- The below sql statements move the id sequences past the loaded data
+SELECT setval('customer_id_seq', (SELECT COALESCE(MAX(customerID), 0) + 1 FROM Customer), false);
+SELECT setval('booking_id_seq', (SELECT COALESCE(MAX(bID), 0) + 1 FROM Booking), false);
+SELECT setval('repair_id_seq', (SELECT COALESCE(MAX(rID), 0) + 1 FROM Repair), false);
+SELECT setval('request_id_seq', (SELECT COALESCE(MAX(reqID), 0) + 1 FROM Request), false);
+SELECT setval('assigned_id_seq', (SELECT COALESCE(MAX(asgID), 0) + 1 FROM Assigned), false);
+SELECT setval('maintenancecompany_id_seq', (SELECT COALESCE(MAX(cmpID), 0) + 1 FROM MaintenanceCompany), false);
@@ -0,0 +1,30 @@
+-- Secondary indexes for the predicates of the DBProject menu operations.
+-- create.sql only defines primary keys, so every lookup below used to scan
+-- the whole table.
+
+-- availability (NOT EXISTS per room and night range), booked room count per
+-- hotel and the per hotel occupancy load
+CREATE INDEX booking_hotel_room_date_idx ON Booking(hotelID, roomNo, bookingDate);
+
+-- top k bookings by price for a date range
+CREATE INDEX booking_date_idx ON Booking(bookingDate);
+
+-- kth highest price and total cost of one customer
+CREATE INDEX booking_customer_date_idx ON Booking(customer, bookingDate);
+
+-- repairs made by one maintenance company and the repair counts per company
+CREATE INDEX repair_company_idx ON Repair(mCompany);
+
+-- repairs per year of one room
+CREATE INDEX repair_hotel_room_date_idx ON Repair(hotelID, roomNo, repairDate);
+
+-- customer name -> customerID resolution
+CREATE INDEX customer_name_idx ON Customer(lName, fName);
+
+-- maintenance company name -> cmpID resolution
+CREATE INDEX maintenancecompany_name_idx ON MaintenanceCompany(name);
+
+ANALYZE Booking;
+ANALYZE Repair;
+ANALYZE Customer;
+ANALYZE MaintenanceCompany;
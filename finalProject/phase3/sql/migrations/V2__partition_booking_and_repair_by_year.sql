@@ -0,0 +1,129 @@
+-- Turns Booking and Repair into tables range partitioned by year of
+-- bookingDate and repairDate (PostgreSQL 11 or later). Queries that bound the
+-- date only touch the partitions of the years in range, and old years can be
+-- detached and archived by `DBProject ... --partitions` without a DELETE.
+--
+-- Every partitioned table has a partition per year of its data, one for each
+-- year up to two years ahead and a DEFAULT partition that catches anything
+-- else; --partitions creates the missing years and moves their rows out of
+-- the DEFAULT partition.
+--
+-- A primary key of a partitioned table must contain the partition key, so the
+-- keys become (bID, bookingDate) and (rID, repairDate). The ids still come
+-- from booking_id_seq and repair_id_seq and stay unique in practice. Request
+-- can no longer reference Repair(rID) with a foreign key; the triggers at the
+-- end enforce the same rule.
+
+-- Booking
+ALTER TABLE Booking RENAME TO booking_unpartitioned;
+ALTER TABLE booking_unpartitioned RENAME CONSTRAINT booking_pkey TO booking_unpartitioned_pkey;
+
+CREATE TABLE Booking( bID Numeric NOT NULL,
+					  customer Numeric NOT NULL DEFAULT 0,
+					  hotelID Numeric NOT NULL DEFAULT 0,
+					  roomNo Numeric NOT NULL DEFAULT 0,
+					  bookingDate Date NOT NULL,
+					  noOfPeople Numeric,
+					  price Numeric(6,2) NOT NULL,
+					  PRIMARY KEY(bID, bookingDate))
+PARTITION BY RANGE (bookingDate);
+
+-- Repair
+ALTER TABLE Request DROP CONSTRAINT requestRepairConstraint;
+ALTER TABLE Repair RENAME TO repair_unpartitioned;
+ALTER TABLE repair_unpartitioned RENAME CONSTRAINT repair_pkey TO repair_unpartitioned_pkey;
+
+CREATE TABLE Repair( rID Numeric NOT NULL,
+					 hotelID Numeric NOT NULL DEFAULT 0,
+					 roomNo Numeric NOT NULL DEFAULT 0,
+					 mCompany Numeric NOT NULL DEFAULT 0,
+					 repairDate Date NOT NULL,
+					 description TEXT,
+					 repairType CHAR(10),
+					 PRIMARY KEY(rID, repairDate))
+PARTITION BY RANGE (repairDate);
+
+-- one partition per year of data and for the next two years, named
+-- <table>_y<year> like the partitions PartitionManager creates
+DO $$
+DECLARE
+	t record;
+	y integer;
+BEGIN
+	FOR t IN SELECT * FROM (VALUES ('booking', 'bookingdate'), ('repair', 'repairdate')) AS v(name, col) LOOP
+		FOR y IN EXECUTE format('SELECT DISTINCT EXTRACT(YEAR FROM %I)::integer FROM %I_unpartitioned
+				UNION SELECT EXTRACT(YEAR FROM current_date)::integer + g FROM generate_series(0, 2) AS g',
+				t.col, t.name) LOOP
+			EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+					t.name || '_y' || y, t.name, make_date(y, 1, 1), make_date(y + 1, 1, 1));
+		END LOOP;
+		EXECUTE format('CREATE TABLE %I PARTITION OF %I DEFAULT', t.name || '_default', t.name);
+	END LOOP;
+END $$;
+
+INSERT INTO Booking SELECT * FROM booking_unpartitioned;
+INSERT INTO Repair SELECT * FROM repair_unpartitioned;
+DROP TABLE booking_unpartitioned;
+DROP TABLE repair_unpartitioned;
+
+-- the foreign keys of create.sql
+ALTER TABLE Booking
+ADD CONSTRAINT bookingCustomerConstraint
+FOREIGN KEY(customer)
+REFERENCES Customer(customerID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairMcmpConstraint
+FOREIGN KEY(mCompany)
+REFERENCES MaintenanceCompany(cmpID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+-- the indexes of V1, now created on every partition
+CREATE INDEX booking_hotel_room_date_idx ON Booking(hotelID, roomNo, bookingDate);
+CREATE INDEX booking_date_idx ON Booking(bookingDate);
+CREATE INDEX booking_customer_date_idx ON Booking(customer, bookingDate);
+CREATE INDEX repair_company_idx ON Repair(mCompany);
+CREATE INDEX repair_hotel_room_date_idx ON Repair(hotelID, roomNo, repairDate);
+
+-- Request.repairID must name an existing repair (was requestRepairConstraint)
+CREATE INDEX request_repair_idx ON Request(repairID);
+
+CREATE OR REPLACE FUNCTION request_repair_exists() RETURNS trigger AS $$
+BEGIN
+	IF NOT EXISTS (SELECT 1 FROM Repair WHERE rID = NEW.repairID) THEN
+		RAISE foreign_key_violation USING MESSAGE = 'repair ' || NEW.repairID || ' does not exist';
+	END IF;
+	RETURN NEW;
+END $$ LANGUAGE plpgsql;
+
+CREATE TRIGGER requestRepairConstraint
+BEFORE INSERT OR UPDATE OF repairID ON Request
+FOR EACH ROW EXECUTE PROCEDURE request_repair_exists();
+
+-- ON DELETE SET DEFAULT
+CREATE OR REPLACE FUNCTION repair_deleted() RETURNS trigger AS $$
+BEGIN
+	UPDATE Request SET repairID = DEFAULT WHERE repairID = OLD.rID;
+	RETURN OLD;
+END $$ LANGUAGE plpgsql;
+
+CREATE TRIGGER repairDeleted
+AFTER DELETE ON Repair
+FOR EACH ROW EXECUTE PROCEDURE repair_deleted();
+
+ANALYZE Booking;
+ANALYZE Repair;
+ANALYZE Request;
@@ -0,0 +1,15 @@
+-- A room can be booked at most once per night. bookRoom inserts with
+-- ON CONFLICT DO NOTHING against this constraint and reports "room taken"
+-- when no row was inserted, so concurrent bookings of the same room and night
+-- need no lock: the unique index lets exactly one of them in.
+--
+-- The constraint fails to build if the table already holds a double booking;
+-- the error names the duplicated key.
+ALTER TABLE Booking
+ADD CONSTRAINT bookingRoomNightConstraint
+UNIQUE(hotelID, roomNo, bookingDate);
+
+-- the unique index covers the same columns
+DROP INDEX IF EXISTS booking_hotel_room_date_idx;
+
+ANALYZE Booking;
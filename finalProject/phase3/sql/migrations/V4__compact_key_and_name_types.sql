@@ -0,0 +1,163 @@
+-- Replaces the arbitrary precision Numeric keys and the blank padded CHAR
+-- names of create.sql with native types:
+--
+--   hotel, room, customer, staff and company keys   integer
+--   booking, repair, request and assignment ids     bigint (they only grow)
+--   phone numbers                                   bigint
+--   party size                                      smallint
+--   CHAR(n) names and types                         varchar(n), unpadded
+--   Booking.price Numeric(6,2)                      Booking.price_cents integer
+--
+-- Integer keys are fixed width and compared with one machine instruction,
+-- so rows, indexes and joins shrink and the driver reads them with
+-- getInt/getLong instead of parsing decimals. Casting CHAR to varchar strips
+-- the padding.
+--
+-- The columns are rewritten in place: every ALTER rewrites its table and
+-- rebuilds its indexes under an exclusive lock, so run it in a maintenance
+-- window. The foreign keys are dropped first and added again at the end
+-- because a key and the column referencing it must have the same type in
+-- between. The request trigger of V2 names Request.repairID and has to be
+-- dropped while that column changes.
+--
+-- Run `DBProject ... --sizes` before and after to compare the table and
+-- index sizes.
+
+ALTER TABLE Hotel DROP CONSTRAINT managerConstraint;
+ALTER TABLE Staff DROP CONSTRAINT employerConstraint;
+ALTER TABLE Room DROP CONSTRAINT weakEntityConstraint;
+ALTER TABLE Booking DROP CONSTRAINT bookingCustomerConstraint;
+ALTER TABLE Booking DROP CONSTRAINT bookingRoomConstraint;
+ALTER TABLE Repair DROP CONSTRAINT repairMcmpConstraint;
+ALTER TABLE Repair DROP CONSTRAINT repairRoomConstraint;
+ALTER TABLE Request DROP CONSTRAINT requestMngrConstraint;
+ALTER TABLE Assigned DROP CONSTRAINT assgndStaffConstraint;
+ALTER TABLE Assigned DROP CONSTRAINT assgndRoomConstraint;
+DROP TRIGGER requestRepairConstraint ON Request;
+
+ALTER TABLE Hotel
+	ALTER COLUMN hotelID TYPE integer,
+	ALTER COLUMN manager TYPE integer;
+
+ALTER TABLE Staff
+	ALTER COLUMN SSN TYPE integer,
+	ALTER COLUMN fName TYPE varchar(30),
+	ALTER COLUMN lName TYPE varchar(30),
+	ALTER COLUMN employerID TYPE integer;
+
+ALTER TABLE Room
+	ALTER COLUMN hotelID TYPE integer,
+	ALTER COLUMN roomNo TYPE integer,
+	ALTER COLUMN roomType TYPE varchar(10);
+
+ALTER TABLE Customer
+	ALTER COLUMN customerID TYPE integer,
+	ALTER COLUMN fName TYPE varchar(30),
+	ALTER COLUMN lName TYPE varchar(30),
+	ALTER COLUMN phNo TYPE bigint;
+
+ALTER TABLE MaintenanceCompany
+	ALTER COLUMN cmpID TYPE integer,
+	ALTER COLUMN name TYPE varchar(30);
+
+ALTER TABLE Booking RENAME COLUMN price TO price_cents;
+ALTER TABLE Booking
+	ALTER COLUMN bID TYPE bigint,
+	ALTER COLUMN customer TYPE integer,
+	ALTER COLUMN hotelID TYPE integer,
+	ALTER COLUMN roomNo TYPE integer,
+	ALTER COLUMN noOfPeople TYPE smallint,
+	ALTER COLUMN price_cents TYPE integer USING round(price_cents * 100);
+
+ALTER TABLE Repair
+	ALTER COLUMN rID TYPE bigint,
+	ALTER COLUMN hotelID TYPE integer,
+	ALTER COLUMN roomNo TYPE integer,
+	ALTER COLUMN mCompany TYPE integer,
+	ALTER COLUMN repairType TYPE varchar(10);
+
+ALTER TABLE Request
+	ALTER COLUMN reqID TYPE bigint,
+	ALTER COLUMN managerID TYPE integer,
+	ALTER COLUMN repairID TYPE bigint;
+
+ALTER TABLE Assigned
+	ALTER COLUMN asgID TYPE bigint,
+	ALTER COLUMN staffID TYPE integer,
+	ALTER COLUMN hotelID TYPE integer,
+	ALTER COLUMN roomNo TYPE integer;
+
+-- the foreign keys of create.sql and V2
+ALTER TABLE Hotel
+ADD CONSTRAINT managerConstraint
+FOREIGN KEY(manager)
+REFERENCES Staff(SSN)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Staff
+ADD CONSTRAINT employerConstraint
+FOREIGN KEY(employerID)
+REFERENCES Hotel(hotelID)
+ON DELETE CASCADE;
+
+ALTER TABLE Room
+ADD CONSTRAINT weakEntityConstraint
+FOREIGN KEY(hotelID)
+REFERENCES Hotel(hotelID)
+ON DELETE CASCADE;
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingCustomerConstraint
+FOREIGN KEY(customer)
+REFERENCES Customer(customerID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairMcmpConstraint
+FOREIGN KEY(mCompany)
+REFERENCES MaintenanceCompany(cmpID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Request
+ADD CONSTRAINT requestMngrConstraint
+FOREIGN KEY(managerID)
+REFERENCES Staff(SSN)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Assigned
+ADD CONSTRAINT assgndStaffConstraint
+FOREIGN KEY(staffID)
+REFERENCES Staff(SSN)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Assigned
+ADD CONSTRAINT assgndRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;
+
+CREATE TRIGGER requestRepairConstraint
+BEFORE INSERT OR UPDATE OF repairID ON Request
+FOR EACH ROW EXECUTE PROCEDURE request_repair_exists();
+
+ANALYZE Hotel;
+ANALYZE Staff;
+ANALYZE Room;
+ANALYZE Customer;
+ANALYZE MaintenanceCompany;
+ANALYZE Booking;
+ANALYZE Repair;
+ANALYZE Request;
+ANALYZE Assigned;
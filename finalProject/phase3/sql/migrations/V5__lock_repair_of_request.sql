@@ -0,0 +1,34 @@
+-- Makes the triggers of V2 that stand in for the Request -> Repair foreign key
+-- safe under concurrent writers, as the foreign key was.
+--
+-- request_repair_exists only looked for the repair. A repair deleted by a
+-- transaction that commits after the check but before the new request could
+-- be seen by its repair_deleted trigger left the request pointing at nothing.
+-- The check now locks the repair row FOR KEY SHARE, the lock a foreign key
+-- check takes: a DELETE of the repair waits until the request has committed,
+-- and its trigger then sees the request; a request for a repair whose DELETE
+-- is in flight waits for it and, once the delete has committed, finds no row.
+--
+-- repair_deleted runs after the DELETE, which already holds the row lock
+-- that conflicts with FOR KEY SHARE. It now also leaves the requests alone
+-- while a repair with the same rID still exists: a row moved to another
+-- partition (an UPDATE of repairDate into another year, or the move out of
+-- the DEFAULT partition by `DBProject ... --partitions`) is deleted from one
+-- partition after it has been inserted into the other, and is not gone.
+
+CREATE OR REPLACE FUNCTION request_repair_exists() RETURNS trigger AS $$
+BEGIN
+	PERFORM 1 FROM Repair WHERE rID = NEW.repairID FOR KEY SHARE;
+	IF NOT FOUND THEN
+		RAISE foreign_key_violation USING MESSAGE = 'repair ' || NEW.repairID || ' does not exist';
+	END IF;
+	RETURN NEW;
+END $$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION repair_deleted() RETURNS trigger AS $$
+BEGIN
+	IF NOT EXISTS (SELECT 1 FROM Repair WHERE rID = OLD.rID) THEN
+		UPDATE Request SET repairID = DEFAULT WHERE repairID = OLD.rID;
+	END IF;
+	RETURN OLD;
+END $$ LANGUAGE plpgsql;